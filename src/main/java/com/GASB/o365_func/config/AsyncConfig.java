@@ -1,18 +1,28 @@
 package com.GASB.o365_func.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 @Configuration
 @EnableAsync
 public class AsyncConfig {
 
+    // 기본 @Async 실행기 (Executor 빈이 여러 개이므로 Primary 로 지정)
+    @Primary
     @Bean(name = "threadPoolTaskExecutor")
-    public Executor getAsyncExecutor() {
+    public Executor getAsyncExecutor(PipelineProperties pipelineProperties) {
+        if (pipelineProperties.isVirtualThreads()) {
+            // 가상 스레드 모드: 작업마다 가상 스레드를 만들고, 동시 실행 수만 제한
+            return virtualThreadExecutor("Executor-", 1000);
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(4);
         executor.setMaxPoolSize(20);
@@ -21,4 +31,83 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    // S3 멀티파트 파트 업로드 전용 풀 (메모리 사용량은 S3MultipartUploader 에서 별도로 제한)
+    @Bean(name = "s3UploadExecutor")
+    public Executor s3UploadExecutor(@Value("${aws.s3.multipart.parallelism:4}") int parallelism,
+                                     PipelineProperties pipelineProperties) {
+        if (pipelineProperties.isVirtualThreads()) {
+            return virtualThreadExecutor("S3Upload-", parallelism);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("S3Upload-");
+        executor.initialize();
+        return executor;
+    }
+
+    // 폴더 목록 조회 전용 풀 (크롤 하나당 동시 조회 수는 MsDriveCrawler 에서 제한)
+    @Bean(name = "graphCrawlExecutor")
+    public Executor graphCrawlExecutor(@Value("${o365.crawl.threads:16}") int threads,
+                                       PipelineProperties pipelineProperties) {
+        if (pipelineProperties.isVirtualThreads()) {
+            return virtualThreadExecutor("GraphCrawl-", threads);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("GraphCrawl-");
+        executor.initialize();
+        return executor;
+    }
+
+    // delta 사이클 전용 풀 (페이지 조회와 처리 엔진 대기열 back-pressure 로 블록되므로 공용 풀을 쓰지 않는다)
+    @Bean(name = "deltaSyncExecutor")
+    public Executor deltaSyncExecutor(@Value("${o365.delta.sync-threads:8}") int threads,
+                                      PipelineProperties pipelineProperties) {
+        if (pipelineProperties.isVirtualThreads()) {
+            return virtualThreadExecutor("DeltaSync-", threads);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("DeltaSync-");
+        executor.initialize();
+        return executor;
+    }
+
+    // 큰 파일의 Range 구간 다운로드 전용 풀 (파일 하나당 동시 구간 수는 RangeDownloader 에서 제한)
+    @Bean(name = "rangeDownloadExecutor")
+    public Executor rangeDownloadExecutor(@Value("${file.download.range.threads:16}") int threads,
+                                          PipelineProperties pipelineProperties) {
+        if (pipelineProperties.isVirtualThreads()) {
+            return virtualThreadExecutor("RangeDownload-", threads);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("RangeDownload-");
+        executor.initialize();
+        return executor;
+    }
+
+    // 작업마다 가상 스레드를 바로 시작하고, 동시 실행 수는 작업 안에서 세마포어로 제한한다.
+    // 제출하는 스레드는 블록되지 않으므로 워커가 같은 실행기에 작업을 넘기고 기다려도 교착되지 않는다.
+    private Executor virtualThreadExecutor(String threadNamePrefix, int concurrencyLimit) {
+        ThreadFactory threadFactory = Thread.ofVirtual().name(threadNamePrefix, 1).factory();
+        Semaphore permits = new Semaphore(concurrencyLimit, true);
+        return task -> threadFactory.newThread(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        }).start();
+    }
 }
@@ -8,6 +8,9 @@ import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.net.URI;
 
 @Configuration
 public class BaseConfig {
@@ -21,6 +24,10 @@ public class BaseConfig {
 
     @Value("${aws.region}")
     private String region;
+
+    // MinIO, LocalStack 같은 로컬 S3 대체 서버를 쓸 때만 지정 (예: http://localhost:9000)
+    @Value("${aws.s3.endpoint:}")
+    private String s3Endpoint;
     //restTemplate
     @Bean
     public RestTemplate restTemplate(){
@@ -31,9 +38,14 @@ public class BaseConfig {
     public S3Client s3Client() {
         AwsBasicCredentials awsCreds = AwsBasicCredentials.create(awsAccessKey, awsSecretKey);
 
-        return S3Client.builder()
+        S3ClientBuilder builder = S3Client.builder()
                 .region(Region.of(region))
-                .credentialsProvider(StaticCredentialsProvider.create(awsCreds))
-                .build();
+                .credentialsProvider(StaticCredentialsProvider.create(awsCreds));
+
+        if (!s3Endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(s3Endpoint))
+                    .forcePathStyle(true);
+        }
+        return builder.build();
     }
 }
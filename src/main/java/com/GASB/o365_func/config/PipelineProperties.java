@@ -0,0 +1,28 @@
+package com.GASB.o365_func.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "o365.pipeline")
+public class PipelineProperties {
+    // true 이면 워커와 @Async 실행기를 가상 스레드로 실행 (I/O 대기 중에 캐리어 스레드를 점유하지 않음)
+    private boolean virtualThreads = false;
+    // 파일 처리 작업을 실행하는 워커 수 (가상 스레드 모드에서는 수천 개까지 늘려도 됨)
+    private int workers = 8;
+    // 전체 대기열 크기 (가득 차면 submit 하는 쪽이 대기)
+    private int queueCapacity = 1000;
+    // 테넌트(workspace) 하나가 차지할 수 있는 대기열 크기
+    private int tenantQueueCapacity = 200;
+    // 단계별 동시 실행 수
+    private int downloadConcurrency = 6;
+    private int scanConcurrency = 8;
+    private int uploadConcurrency = 4;
+    // 공유 자원 보호용 동시 실행 수 (DB 는 커넥션 풀 크기, Graph 는 스로틀링 한도에 맞춤)
+    private int dbConcurrency = 10;
+    private int graphConcurrency = 16;
+}
@@ -11,6 +11,7 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -70,6 +71,11 @@ public class RabbitMQConfig {
         return new Queue(properties.getO365DeleteQueue(), true, false, false);
     }
 
+    @Bean
+    public Queue O365WebhookQueue() {
+        return new Queue(properties.getO365WebhookQueue(), true, false, false);
+    }
+
     // 교환기 설정
     @Bean
     public DirectExchange exchange() {
@@ -107,6 +113,27 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(O365DeleteQueue).to(exchange).with(properties.getO365DeleteRoutingKey());
     }
 
+    @Bean
+    public Binding O365WebhookBinding(@Qualifier("O365WebhookQueue")Queue O365WebhookQueue, DirectExchange exchange) {
+        return BindingBuilder.bind(O365WebhookQueue).to(exchange).with(properties.getO365WebhookRoutingKey());
+    }
+
+    // 웹훅 큐 소비 설정: 동시 소비자 수와 prefetch 로 처리 속도를 제한
+    @Bean
+    public SimpleRabbitListenerContainerFactory webhookListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                                MessageConverter messageConverter,
+                                                                                @Value("${o365.webhook.consumers:2}") int consumers,
+                                                                                @Value("${o365.webhook.max-consumers:4}") int maxConsumers,
+                                                                                @Value("${o365.webhook.prefetch:10}") int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        factory.setConcurrentConsumers(consumers);
+        factory.setMaxConcurrentConsumers(Math.max(consumers, maxConsumers));
+        factory.setPrefetchCount(prefetch);
+        return factory;
+    }
+
     // RabbitTemplate 설정
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
@@ -131,4 +158,13 @@ public class RabbitMQConfig {
         rabbitTemplate.setRoutingKey(properties.getO365RoutingKey());
         return rabbitTemplate;
     }
+
+    @Bean
+    public RabbitTemplate webhookRabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter) {
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        rabbitTemplate.setExchange(properties.getExchange());
+        rabbitTemplate.setRoutingKey(properties.getO365WebhookRoutingKey());
+        rabbitTemplate.setMessageConverter(messageConverter);
+        return rabbitTemplate;
+    }
 }
\ No newline at end of file
@@ -27,4 +27,7 @@ public class RabbitMQProperties {
     private String o365RoutingKey;
     private String o365DeleteRoutingKey;
     private String o365DeleteQueue;
+    // 웹훅 알림을 받아 두는 큐 (컨트롤러가 넣고 MessageReceiver 가 꺼내 처리)
+    private String o365WebhookQueue = "O365_WEBHOOK_QUEUE";
+    private String o365WebhookRoutingKey = "o365_webhook_key";
 }
@@ -0,0 +1,25 @@
+package com.GASB.o365_func.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "o365.spool")
+public class SpoolProperties {
+    // 다운로드 파일을 임시로 두는 로컬 디렉터리
+    private String path = "downloads";
+    // 스풀이 차지할 수 있는 최대 용량 (넘으면 다운로드 단계가 자리가 날 때까지 대기)
+    private long maxBytes = 10L * 1024 * 1024 * 1024;
+    // 크기를 알 수 없는 파일(0 또는 음수)에 예약할 용량
+    private long unknownSizeBytes = 64L * 1024 * 1024;
+    // 시작할 때 스풀 루트에 예전 방식(downloads/<file_name>)으로 남은 파일을 지울지 (루트를 다른 용도와 같이 쓰면 켜지 말 것)
+    private boolean cleanupLegacyFiles = false;
+    // 이어 받기용 부분 파일/체크포인트를 보관하는 기간 (이보다 오래된 것은 시작할 때와 주기적으로 정리)
+    private long partialRetentionHours = 72;
+    // 보관 중인 부분 파일이 차지할 수 있는 최대 용량 (넘으면 오래된 것부터 지움, max-bytes 와 별도)
+    private long partialMaxBytes = 10L * 1024 * 1024 * 1024;
+}
@@ -1,8 +1,12 @@
 package com.GASB.o365_func.controller;
 
 import com.GASB.o365_func.service.event.MsFileEvent;
+import com.GASB.o365_func.service.message.MessageSender;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -17,14 +21,43 @@ import java.util.Map;
 public class MsEventController {
 
     private final MsFileEvent msFileEvent;
+    private final MessageSender messageSender;
+
+    // true 이면 알림을 큐에 넣고 바로 202 로 응답 (처리는 MessageReceiver 가 정해진 속도로 수행)
+    @Value("${o365.webhook.async-ingress:true}")
+    private boolean asyncIngress;
 
     @Autowired
-    public MsEventController(MsFileEvent msFileEvent) {
+    public MsEventController(MsFileEvent msFileEvent, MessageSender messageSender) {
         this.msFileEvent = msFileEvent;
+        this.messageSender = messageSender;
     }
     @PostMapping("/file-change")
     public ResponseEntity<String> handleFileChangeEvent(@RequestBody Map<String, Object> payload) {
+        if (!isValidPayload(payload)) {
+            log.warn("Invalid file change event payload: {}", payload);
+            return ResponseEntity.badRequest().body("Invalid file change event payload");
+        }
+        if (asyncIngress) {
+            try {
+                messageSender.sendWebhookEvent(payload);
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body("File Change Event accepted");
+            } catch (AmqpException e) {
+                // 브로커에 넣지 못하면 알림을 잃지 않도록 바로 처리
+                log.error("Failed to enqueue file change event, processing inline: {}", e.getMessage());
+            }
+        }
         msFileEvent.handleFileEvent(payload,"file_change");
         return ResponseEntity.ok("File Change Event received and logged");
     }
+
+    // userId 는 "/users/{id}/..." 형태의 리소스 경로
+    private boolean isValidPayload(Map<String, Object> payload) {
+        Object userId = payload != null ? payload.get("userId") : null;
+        if (userId == null) {
+            return false;
+        }
+        String[] segments = userId.toString().split("/");
+        return segments.length > 2 && !segments[2].isBlank();
+    }
 }
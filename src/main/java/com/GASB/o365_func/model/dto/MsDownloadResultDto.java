@@ -0,0 +1,20 @@
+package com.GASB.o365_func.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MsDownloadResultDto {
+    private String filePath;
+    private long size;
+    private String hash;
+    private String tlsh;
+    private String quickXorHash;
+    // 파일 앞부분 (시그니처 검사용)
+    private byte[] header;
+}
@@ -24,6 +24,9 @@ public class MsFileInfoDto {
     public String file_owner_name;
     public LocalDateTime file_created_time;
     public String file_path;
+    public String file_quick_xor_hash;
+    // 내용이 바뀌면 달라지는 태그 (cTag, 없으면 eTag)
+    public String file_content_tag;
     public boolean isShared = false;
     public String site_id = null;
     public boolean isOneDrive = false;
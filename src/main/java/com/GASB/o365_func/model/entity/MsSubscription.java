@@ -0,0 +1,38 @@
+package com.GASB.o365_func.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "ms_subscription")
+public class MsSubscription {
+
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private int id;
+
+    @ManyToOne
+    // 사용자마다 구독 기록은 하나 (db/ms_subscription.sql 의 유니크 키)
+    @JoinColumn(name = "ms_user_id", nullable = false, unique = true, referencedColumnName = "id")
+    private MonitoredUsers monitoredUsers;
+
+    @Column(name = "subscription_id", length = 100, unique = true)
+    private String subscriptionId;
+
+    @Column(name = "client_state", length = 100)
+    private String clientState;
+
+    // 구독 만료 시각 (UTC)
+    @Column(name = "expiration_ts")
+    private LocalDateTime expiration;
+}
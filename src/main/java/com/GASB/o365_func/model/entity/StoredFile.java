@@ -15,6 +15,7 @@ public class StoredFile {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
 
+    // 유니크 (64자 prefix 인덱스, resources/db/write_behind_indexes.sql)
     @Column(name = "salted_hash", columnDefinition = "TEXT", nullable = false)
     private String saltedHash;
 
@@ -5,6 +5,7 @@ import com.GASB.o365_func.model.dto.MsFileInfoDto;
 import com.GASB.o365_func.model.entity.*;
 import com.GASB.o365_func.repository.MonitoredUsersRepo;
 import com.GASB.o365_func.service.enumset.MimeType;
+import com.google.gson.JsonElement;
 import com.microsoft.graph.models.DriveItem;
 import com.microsoft.graph.models.File;
 import lombok.RequiredArgsConstructor;
@@ -55,7 +56,7 @@ public class MsFileMapper {
                 .file_type(MimeType.getExtensionByMimeType(mimeType)) // txt 파일로 변환
                 .file_mimetype(mimeType)
                 .file_download_url(Optional.ofNullable(item.additionalDataManager().get("@microsoft.graph.downloadUrl"))
-                        .map(Object::toString)
+                        .map(JsonElement::getAsString)
                         .orElse(null)) // 다운로드 URL null 체크
                 .file_size(item.size)
                 .file_owner_id(Optional.ofNullable(item.createdBy)
@@ -70,6 +71,8 @@ public class MsFileMapper {
                 .file_path(Optional.ofNullable(item.parentReference)
                         .map(reference -> reference.path)
                         .orElse(null)) // 경로 null 체크
+                .file_quick_xor_hash(extractQuickXorHash(item))
+                .file_content_tag(item.cTag != null ? item.cTag : item.eTag)
                 .isOneDrive(true)
                 .build();
     }
@@ -96,7 +99,7 @@ public class MsFileMapper {
                 .file_type(MimeType.getExtensionByMimeType(mimeType)) // MimeType을 파일 확장자로 변환
                 .file_mimetype(mimeType)
                 .file_download_url(Optional.ofNullable(item.additionalDataManager().get("@microsoft.graph.downloadUrl"))
-                        .map(Object::toString)
+                        .map(JsonElement::getAsString)
                         .orElse(null)) // 다운로드 URL null 체크
                 .file_size(item.size)
                 .file_owner_id(Optional.ofNullable(item.createdBy)
@@ -111,6 +114,8 @@ public class MsFileMapper {
                 .file_path(Optional.ofNullable(item.parentReference)
                         .map(reference -> reference.path)
                         .orElse(null)) // 경로 null 체크
+                .file_quick_xor_hash(extractQuickXorHash(item))
+                .file_content_tag(item.cTag != null ? item.cTag : item.eTag)
                 .isOneDrive(true)
                 .build();
     }
@@ -135,7 +140,7 @@ public class MsFileMapper {
                 .file_type(MimeType.getExtensionByMimeType(mimeType)) // MimeType을 파일 확장자로 변환
                 .file_mimetype(mimeType)
                 .file_download_url(Optional.ofNullable(item.additionalDataManager().get("@microsoft.graph.downloadUrl"))
-                        .map(Object::toString)
+                        .map(JsonElement::getAsString)
                         .orElse(null)) // 다운로드 URL null 체크
                 .file_size(item.size)
                 .file_owner_id(Optional.ofNullable(item.createdBy)
@@ -150,6 +155,8 @@ public class MsFileMapper {
                 .file_path(Optional.ofNullable(item.parentReference)
                         .map(reference -> reference.path)
                         .orElse(null)) // 경로 null 체크
+                .file_quick_xor_hash(extractQuickXorHash(item))
+                .file_content_tag(item.cTag != null ? item.cTag : item.eTag)
                 .site_id(Optional.ofNullable(item.parentReference)
                         .map(reference -> reference.siteId)
                         .orElse(null)) // Site ID null 체크
@@ -158,6 +165,14 @@ public class MsFileMapper {
 
 
 
+    // Graph 가 내려주는 file.hashes.quickXorHash (없으면 null)
+    private String extractQuickXorHash(DriveItem item) {
+        return Optional.ofNullable(item.file)
+                .map(file -> file.hashes)
+                .map(hashes -> hashes.quickXorHash)
+                .orElse(null);
+    }
+
     public StoredFile toStoredFileEntity(MsFileInfoDto file, String hash, String filePath) {
         if (file == null) {
             return null;
@@ -0,0 +1,91 @@
+package com.GASB.o365_func.quickxor;
+
+import java.util.Base64;
+
+/**
+ * OneDrive / SharePoint 의 quickXorHash 구현.
+ * <p>
+ * 입력의 p 번째 바이트는 160 비트 원형 벡터의 (11 * p) mod 160 비트 위치에 XOR 된다.
+ * 같은 위치로 가는 바이트끼리는 먼저 XOR 해도 결과가 같으므로, 스트림을 읽는 동안에는
+ * 160 개의 바이트 레인에 XOR 만 누적하고 (바이트당 XOR 한 번), 비트 위치로의 회전은
+ * 마지막에 한 번만 수행한다. 마지막으로 전체 길이(little-endian 64 비트)를 상위 8 바이트에 XOR 한다.
+ * <p>
+ * Example usage:
+ * <pre>
+ * QuickXorHash quickXorHash = new QuickXorHash();
+ * quickXorHash.update(buf, 0, bytesRead);
+ * String base64 = quickXorHash.getBase64();
+ * </pre>
+ */
+public class QuickXorHash {
+
+    private static final int WIDTH_IN_BITS = 160;
+    private static final int SHIFT = 11;
+    private static final int HASH_LENGTH = WIDTH_IN_BITS / 8;
+    private static final int LENGTH_OFFSET = HASH_LENGTH - Long.BYTES;
+
+    private final byte[] lanes = new byte[WIDTH_IN_BITS];
+    private int lane;
+    private long length;
+
+    public void update(byte[] data, int offset, int len) {
+        final byte[] l = lanes;
+        int pos = lane;
+        int i = offset;
+        final int end = offset + len;
+
+        // 레인 경계까지 채운 뒤, 160 바이트 단위로 한 번에 누적
+        while (i < end && pos != 0) {
+            l[pos] ^= data[i++];
+            if (++pos == WIDTH_IN_BITS) {
+                pos = 0;
+            }
+        }
+        while (end - i >= WIDTH_IN_BITS) {
+            for (int k = 0; k < WIDTH_IN_BITS; k++) {
+                l[k] ^= data[i + k];
+            }
+            i += WIDTH_IN_BITS;
+        }
+        while (i < end) {
+            l[pos++] ^= data[i++];
+        }
+
+        lane = pos;
+        length += len;
+    }
+
+    public void update(byte[] data) {
+        update(data, 0, data.length);
+    }
+
+    public byte[] digest() {
+        byte[] hash = new byte[HASH_LENGTH];
+        for (int k = 0; k < WIDTH_IN_BITS; k++) {
+            int value = lanes[k] & 0xFF;
+            if (value == 0) {
+                continue;
+            }
+            int bitOffset = (k * SHIFT) % WIDTH_IN_BITS;
+            int index = bitOffset >>> 3;
+            int shift = bitOffset & 7;
+            hash[index] ^= (byte) (value << shift);
+            if (shift != 0) {
+                hash[(index + 1) % HASH_LENGTH] ^= (byte) (value >>> (8 - shift));
+            }
+        }
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash[LENGTH_OFFSET + i] ^= (byte) (length >>> (8 * i));
+        }
+        return hash;
+    }
+
+    // Graph API 가 내려주는 형식 (Base64)
+    public String getBase64() {
+        return Base64.getEncoder().encodeToString(digest());
+    }
+
+    public long getLength() {
+        return length;
+    }
+}
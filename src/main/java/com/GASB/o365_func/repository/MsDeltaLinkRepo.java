@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface MsDeltaLinkRepo extends JpaRepository<MsDeltaLink, Integer> {
@@ -20,6 +21,10 @@ public interface MsDeltaLinkRepo extends JpaRepository<MsDeltaLink, Integer> {
     @Query("SELECT EXISTS(SELECT 1 FROM MsDeltaLink m WHERE m.monitoredUsers.id = :userId)")
     boolean existsByMonitoredUsers_Id(int userId);
 
+    // delta 토큰이 저장된 (변경 추적 중인) 사용자
+    @Query("SELECT m.monitoredUsers.userId FROM MsDeltaLink m")
+    List<String> findTrackedUserIds();
+
     @Transactional
     @Modifying
     @Query("UPDATE MsDeltaLink m SET m.deltaLink = :deltaLink WHERE m.monitoredUsers.id = :userId")
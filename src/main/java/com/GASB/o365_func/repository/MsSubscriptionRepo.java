@@ -0,0 +1,36 @@
+package com.GASB.o365_func.repository;
+
+import com.GASB.o365_func.model.entity.MsSubscription;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface MsSubscriptionRepo extends JpaRepository<MsSubscription, Integer> {
+
+    @Query("SELECT s FROM MsSubscription s WHERE s.monitoredUsers.id = :userId")
+    Optional<MsSubscription> findByUserIdx(@Param("userId") int userId);
+
+    // 만료가 가까운 순으로 (사용자와 workspace 를 함께 읽음)
+    @Query("SELECT s FROM MsSubscription s JOIN FETCH s.monitoredUsers u JOIN FETCH u.orgSaaS " +
+            "WHERE s.expiration < :before ORDER BY s.expiration")
+    List<MsSubscription> findExpiringBefore(@Param("before") LocalDateTime before);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE MsSubscription s SET s.expiration = :expiration WHERE s.id = :id")
+    void updateExpiration(@Param("id") int id, @Param("expiration") LocalDateTime expiration);
+
+    // 사용자의 구독 행을 새 구독으로 바꾼다 (한 문장이라 지우고 다시 넣는 사이에 행이 없는 구간이 없음)
+    @Transactional
+    @Modifying
+    @Query("UPDATE MsSubscription s SET s.subscriptionId = :subscriptionId, s.clientState = :clientState, " +
+            "s.expiration = :expiration WHERE s.monitoredUsers.id = :userId")
+    int replaceSubscription(@Param("userId") int userId, @Param("subscriptionId") String subscriptionId,
+                            @Param("clientState") String clientState, @Param("expiration") LocalDateTime expiration);
+}
@@ -14,8 +14,6 @@ import com.GASB.o365_func.repository.OrgSaaSRepo;
 import com.GASB.o365_func.repository.StoredFileRepo;
 import com.GASB.o365_func.service.api_call.MsApiService;
 import com.GASB.o365_func.service.util.FileDownloadUtil;
-import com.microsoft.graph.models.DriveItem;
-import com.microsoft.graph.requests.DriveItemCollectionPage;
 import com.microsoft.graph.requests.GraphServiceClient;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -41,43 +39,29 @@ public class MsFileService {
     private final StoredFileRepo storedFilesRepository;
     private final ActivitiesRepo activitiesRepo;
 
+    // 목록을 읽는 스레드가 곧 producer 이므로 공용 ForkJoinPool 을 쓰지 않고 @Async 스레드에서 바로 수행한다.
+    // 처리 엔진의 대기열이 가득 차면 processAndStoreFile 에서 블록되어 목록 읽기 속도가 처리 속도에 맞춰진다.
     @Async("threadPoolTaskExecutor")
     public CompletableFuture<Void> initFiles(int workspaceId) {
-        return CompletableFuture.runAsync(() -> {
-            log.info("workspaceId : {}", workspaceId);
-            try {
-                GraphServiceClient graphClient = msApiService.createGraphClient(workspaceId);
-                List<DriveItemCollectionPage> itemPages = msApiService.fetchFileLists(graphClient, workspaceId);
-                List<DriveItemCollectionPage> siteItems = msApiService.fetchFileListsInSite(graphClient, msApiService.fetchSiteLists(graphClient));
-                OrgSaaS orgSaaSObject = orgSaaSRepo.findById(workspaceId).orElse(null);
-
-                for (DriveItemCollectionPage itemPage : itemPages){
-                    for (DriveItem item : itemPage.getCurrentPage()){
-                        if(item.folder != null){ //폴더일 경우 넘긴다.
-                            continue;
-                        }
-                        fileDownloadUtil.processAndStoreFile(msFileMapper.toOneDriveEntity(item),orgSaaSObject,workspaceId, "file_upload",graphClient);
-                    }
-                }
-
-                for (DriveItemCollectionPage siteItem : siteItems){
-                    for (DriveItem item : siteItem.getCurrentPage()){
-                        if(item.folder != null){ //폴더일 경우 넘긴다.
-                            continue;
-                        }
-                        MsFileInfoDto msFileInfoDto = msFileMapper.toSharePointEntity(item);
-                        log.info("site_id : {}", msFileInfoDto.getSite_id());
-                        fileDownloadUtil.processAndStoreFile(msFileInfoDto,orgSaaSObject,workspaceId, "file_upload",graphClient);
-                    }
-                }
-            } catch (Exception ex) {
-                log.error("Error fetching or saving users for workspaceId: {}", workspaceId, ex);
-                throw new RuntimeException("Error fetching or saving users for workspaceId: " + workspaceId, ex);
-            }
-        }).exceptionally(ex -> {
+        log.info("workspaceId : {}", workspaceId);
+        try {
+            GraphServiceClient graphClient = msApiService.createGraphClient(workspaceId);
+            OrgSaaS orgSaaSObject = orgSaaSRepo.findById(workspaceId).orElse(null);
+
+            // 폴더는 크롤러가 걸러내고, 파일만 찾는 즉시 처리 엔진으로 넘어온다
+            // (실패를 그대로 넘겨야 처리가 모두 성공한 드라이브만 delta 토큰이 저장된다)
+            msApiService.fetchFileLists(graphClient, workspaceId, item ->
+                    fileDownloadUtil.submitFile(msFileMapper.toOneDriveEntity(item),orgSaaSObject,workspaceId, "file_upload",graphClient));
+
+            msApiService.fetchFileListsInSite(graphClient, msApiService.fetchSiteLists(graphClient), item -> {
+                MsFileInfoDto msFileInfoDto = msFileMapper.toSharePointEntity(item);
+                log.info("site_id : {}", msFileInfoDto.getSite_id());
+                fileDownloadUtil.processAndStoreFile(msFileInfoDto,orgSaaSObject,workspaceId, "file_upload",graphClient);
+            });
+        } catch (Exception ex) {
             log.error("Async error occurred for workspaceId: {}", workspaceId, ex);
-            return null;
-        });
+        }
+        return CompletableFuture.completedFuture(null);
     }
 
 
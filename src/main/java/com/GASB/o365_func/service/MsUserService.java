@@ -7,7 +7,7 @@ import com.GASB.o365_func.repository.MonitoredUsersRepo;
 import com.GASB.o365_func.service.api_call.MsApiService;
 import com.microsoft.graph.http.GraphServiceException;
 import com.microsoft.graph.requests.GraphServiceClient;
-import com.microsoft.graph.requests.UserCollectionPage;
+import com.microsoft.graph.models.User;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataAccessException;
@@ -51,10 +51,10 @@ public class MsUserService {
                 }
 
                 // 2. 사용자 리스트 가져올 때 발생할 수 있는 예외 처리
-                UserCollectionPage users;
+                List<User> users;
                 try {
                     users = msApiService.fetchUsersList(graphClient);
-                    if (users == null || users.getCurrentPage().isEmpty()) {
+                    if (users == null || users.isEmpty()) {
                         log.warn("No users found for workspaceId: {}", workspaceId);
                         return;  // 더 이상 진행하지 않음
                     }
@@ -63,11 +63,11 @@ public class MsUserService {
                     throw new RuntimeException("Failed to fetch users for workspaceId: " + workspaceId, ex);
                 }
 
-                log.info("Fetched {} users for workspaceId: {}", users.getCurrentPage().size(), workspaceId);
+                log.info("Fetched {} users for workspaceId: {}", users.size(), workspaceId);
 
                 // 3. 사용자 엔티티로 변환 및 중복 처리
                 try {
-                    List<MonitoredUsers> monitoredUsers = users.getCurrentPage().stream()
+                    List<MonitoredUsers> monitoredUsers = users.stream()
                             .map(user -> msUserMapper.toEntity(user, workspaceId))
                             .collect(Collectors.toList());
 
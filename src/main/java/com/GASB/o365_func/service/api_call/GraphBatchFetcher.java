@@ -0,0 +1,148 @@
+package com.GASB.o365_func.service.api_call;
+
+import com.GASB.o365_func.service.pipeline.FileProcessingPipeline;
+import com.GASB.o365_func.service.pipeline.PipelineStage;
+import com.google.gson.JsonElement;
+import com.microsoft.graph.content.BatchRequestContent;
+import com.microsoft.graph.content.BatchResponseContent;
+import com.microsoft.graph.content.BatchResponseStep;
+import com.microsoft.graph.models.DriveItem;
+import com.microsoft.graph.requests.GraphServiceClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Graph JSON 배치($batch)로 DriveItem 메타데이터를 한 번에 조회한다.
+ * <p>
+ * 요청은 Graph 가 허용하는 최대 20 개씩 묶어 보내고, 429 / 5xx 를 받은 step 만 모아 다시 보낸다
+ * (Retry-After 가 있으면 그만큼, 없으면 지수 백오프로 기다림). 429 / 503 step 은 GraphRateGovernor 에 알려
+ * 테넌트의 동시 요청 한도도 줄인다. 결과는 입력 순서대로 항목마다 마지막 응답 상태와 함께 돌려준다
+ * (조회하지 못한 항목은 item 이 null 이고, 응답 자체를 받지 못했으면 status 가 0 이다).
+ */
+@Component
+@Slf4j
+public class GraphBatchFetcher {
+
+    private static final int MAX_BATCH_SIZE = 20;
+
+    private final FileProcessingPipeline fileProcessingPipeline;
+    private final GraphRateGovernor graphRateGovernor;
+
+    @Value("${graph.batch.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${graph.batch.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+
+    public record ItemResult(int status, DriveItem item) {
+
+        public boolean isFound() {
+            return item != null;
+        }
+
+        // 항목이 삭제되었거나 접근할 수 없어 더 조회할 필요가 없는 경우
+        public boolean isNotFound() {
+            return status == 404;
+        }
+    }
+
+    public GraphBatchFetcher(FileProcessingPipeline fileProcessingPipeline, GraphRateGovernor graphRateGovernor) {
+        this.fileProcessingPipeline = fileProcessingPipeline;
+        this.graphRateGovernor = graphRateGovernor;
+    }
+
+    public List<ItemResult> fetchDriveItems(GraphServiceClient<?> graphClient, int workspaceId, String userId, List<String> itemIds) {
+        ItemResult[] results = new ItemResult[itemIds.size()];
+        Arrays.fill(results, new ItemResult(0, null));
+        for (int start = 0; start < itemIds.size(); start += MAX_BATCH_SIZE) {
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = start; i < Math.min(start + MAX_BATCH_SIZE, itemIds.size()); i++) {
+                indexes.add(i);
+            }
+            fetchChunk(graphClient, workspaceId, userId, itemIds, indexes, results);
+        }
+        return Arrays.asList(results);
+    }
+
+    private void fetchChunk(GraphServiceClient<?> graphClient, int workspaceId, String userId, List<String> itemIds,
+                            List<Integer> indexes, ItemResult[] results) {
+        List<Integer> pending = indexes;
+        for (int attempt = 0; !pending.isEmpty(); attempt++) {
+            BatchRequestContent batch = new BatchRequestContent();
+            Map<String, Integer> stepIndexes = new HashMap<>();
+            for (int index : pending) {
+                String stepId = batch.addBatchRequestStep(graphClient.users(userId)
+                        .drive()
+                        .items(itemIds.get(index))
+                        .buildRequest());
+                stepIndexes.put(stepId, index);
+            }
+
+            List<Integer> retry = new ArrayList<>();
+            long retryAfterMs = 0;
+            boolean throttled = false;
+            try {
+                BatchResponseContent response = fileProcessingPipeline.runStage(PipelineStage.GRAPH,
+                        () -> graphClient.batch().buildRequest().post(batch));
+                for (Map.Entry<String, Integer> entry : stepIndexes.entrySet()) {
+                    int index = entry.getValue();
+                    BatchResponseStep<JsonElement> step = response.getResponseById(entry.getKey());
+                    if (step == null) {
+                        retry.add(index);
+                        continue;
+                    }
+                    results[index] = new ItemResult(step.status, null);
+                    if (step.status >= 200 && step.status < 300) {
+                        results[index] = new ItemResult(step.status, step.getDeserializedBody(DriveItem.class));
+                    } else if (step.status == 429 || step.status >= 500) {
+                        retry.add(index);
+                        retryAfterMs = Math.max(retryAfterMs, retryAfterMs(step.headers));
+                        throttled |= step.status == 429 || step.status == 503;
+                    } else {
+                        log.error("Batch lookup failed for user ID {} and file ID {}: status {}",
+                                userId, itemIds.get(index), step.status);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // 배치 요청 자체가 실패하면 묶음 전체를 다시 보낸다
+                log.warn("Batch request failed for user ID {} ({} items): {}", userId, pending.size(), e.getMessage());
+                retry = pending;
+            }
+
+            if (throttled) {
+                graphRateGovernor.reportThrottled(workspaceId, retryAfterMs);
+            }
+            if (retry.isEmpty()) {
+                return;
+            }
+            if (attempt >= maxRetries) {
+                log.error("Batch lookup for user ID {} gave up on {} items after {} attempts", userId, retry.size(), attempt + 1);
+                return;
+            }
+            long backoff = Math.max(retryAfterMs, retryBackoffMs * (1L << attempt));
+            log.warn("Retrying {} batch steps for user ID {} in {} ms", retry.size(), userId, backoff);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            pending = retry;
+        }
+    }
+
+    private long retryAfterMs(Map<String, String> headers) {
+        if (headers == null) {
+            return 0;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if ("Retry-After".equalsIgnoreCase(header.getKey())) {
+                return GraphRateGovernor.parseRetryAfterMs(header.getValue());
+            }
+        }
+        return 0;
+    }
+}
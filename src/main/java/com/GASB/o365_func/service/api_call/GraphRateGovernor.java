@@ -0,0 +1,290 @@
+package com.GASB.o365_func.service.api_call;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 모든 Graph 요청이 거쳐 가는 테넌트별 속도 조절기 (OkHttp 인터셉터).
+ * <p>
+ * 테넌트(workspace)마다 다음을 적용한다.
+ * <ul>
+ *   <li>토큰 버킷: 초당 requests-per-second 개, 최대 burst 개까지 몰아서 보낼 수 있음</li>
+ *   <li>AIMD 동시 요청 한도: 성공하면 조금씩(1/limit) 늘리고, 429/503 을 받으면 절반으로 줄임</li>
+ *   <li>429/503 의 Retry-After 를 테넌트 전체에 적용해 그 시간 동안 새 요청을 보내지 않음</li>
+ *   <li>429/5xx 는 지수 백오프 + 지터로 max-retries 번까지 재시도</li>
+ * </ul>
+ * 자리를 max-wait-ms 안에 얻지 못하면 요청을 보내지 않고 IOException 으로 거절한다.
+ * graph-core 의 기본 RetryHandler 대신 이 인터셉터가 유일한 재시도 지점이 된다.
+ */
+@Component
+@Slf4j
+public class GraphRateGovernor {
+
+    private static final String METRIC_PREFIX = "graph.governor";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Integer, TenantState> tenants = new ConcurrentHashMap<>();
+
+    @Value("${graph.governor.requests-per-second:20}")
+    private double requestsPerSecond;
+
+    @Value("${graph.governor.burst:40}")
+    private double burst;
+
+    @Value("${graph.governor.initial-limit:16}")
+    private double initialLimit;
+
+    @Value("${graph.governor.min-limit:1}")
+    private double minLimit;
+
+    @Value("${graph.governor.max-limit:64}")
+    private double maxLimit;
+
+    @Value("${graph.governor.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${graph.governor.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${graph.governor.max-wait-ms:120000}")
+    private long maxWaitMs;
+
+    private Timer waitTimer;
+    private Counter rejectedCounter;
+    private Counter throttledCounter;
+    private Counter retryCounter;
+
+    public GraphRateGovernor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        waitTimer = Timer.builder(METRIC_PREFIX + ".wait")
+                .description("Time Graph requests waited for the rate governor")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder(METRIC_PREFIX + ".rejected").register(meterRegistry);
+        throttledCounter = Counter.builder(METRIC_PREFIX + ".throttled").register(meterRegistry);
+        retryCounter = Counter.builder(METRIC_PREFIX + ".retries").register(meterRegistry);
+    }
+
+    // workspace 하나의 GraphServiceClient 에 붙일 인터셉터
+    public Interceptor interceptor(int workspaceId) {
+        TenantState state = tenants.computeIfAbsent(workspaceId, this::newTenantState);
+        return chain -> intercept(chain, state);
+    }
+
+    private Response intercept(Interceptor.Chain chain, TenantState state) throws IOException {
+        Request request = chain.request();
+        boolean replayable = request.body() == null || !request.body().isOneShot();
+        for (int attempt = 0; ; attempt++) {
+            long waitStart = System.nanoTime();
+            state.acquire();
+            waitTimer.record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException | RuntimeException e) {
+                state.release(false);
+                throw e;
+            }
+
+            int code = response.code();
+            boolean throttled = code == 429 || code == 503;
+            state.release(throttled);
+            if (!throttled && code != 502 && code != 504) {
+                return response;
+            }
+
+            long retryAfterMs = parseRetryAfterMs(response.header("Retry-After"));
+            if (throttled) {
+                throttledCounter.increment();
+                // Retry-After 는 테넌트 전체에 적용 (다른 요청도 그 시간 동안 보내지 않음)
+                state.blockFor(retryAfterMs > 0 ? retryAfterMs : retryBackoffMs);
+            }
+            if (!replayable || attempt >= maxRetries) {
+                log.warn("Graph request {} {} failed with {} after {} attempts", request.method(), request.url().encodedPath(), code, attempt + 1);
+                return response;
+            }
+
+            long delay = retryAfterMs > 0 ? retryAfterMs : retryBackoffMs * (1L << Math.min(attempt, 10));
+            // 같은 시각에 몰려서 다시 보내지 않도록 최대 20% 지터
+            delay += ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+            log.warn("Graph request {} {} returned {}, retrying in {} ms (attempt {})",
+                    request.method(), request.url().encodedPath(), code, delay, attempt + 1);
+            response.close();
+            retryCounter.increment();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry Graph request");
+            }
+        }
+    }
+
+    // 인터셉터를 거치지 않은 429/503 (예: $batch 응답 안의 step) 도 테넌트 한도와 Retry-After 에 반영한다
+    public void reportThrottled(int workspaceId, long retryAfterMs) {
+        TenantState state = tenants.computeIfAbsent(workspaceId, this::newTenantState);
+        throttledCounter.increment();
+        state.backOff();
+        state.blockFor(retryAfterMs > 0 ? retryAfterMs : retryBackoffMs);
+    }
+
+    // Retry-After 는 초 단위 숫자 또는 HTTP 날짜
+    static long parseRetryAfterMs(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime until = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(until.getZone()), until).toMillis());
+            } catch (DateTimeParseException ex) {
+                return 0;
+            }
+        }
+    }
+
+    private TenantState newTenantState(int workspaceId) {
+        TenantState state = new TenantState(workspaceId);
+        Gauge.builder(METRIC_PREFIX + ".limit", state, s -> s.limit)
+                .tag("workspace", String.valueOf(workspaceId))
+                .description("Current AIMD concurrency limit for Graph requests")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".in_flight", state, s -> s.inFlight)
+                .tag("workspace", String.valueOf(workspaceId))
+                .register(meterRegistry);
+        return state;
+    }
+
+    private class TenantState {
+        private final int workspaceId;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+
+        private double tokens = burst;
+        private long lastRefillNanos = System.nanoTime();
+        private volatile double limit = initialLimit;
+        private volatile int inFlight;
+        private long blockedUntilNanos;
+        private long lastDecreaseNanos;
+
+        private TenantState(int workspaceId) {
+            this.workspaceId = workspaceId;
+        }
+
+        void acquire() throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+            lock.lock();
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    long waitNanos;
+                    if (blockedUntilNanos - now > 0) {
+                        waitNanos = blockedUntilNanos - now;
+                    } else if (inFlight >= (int) limit) {
+                        waitNanos = Long.MAX_VALUE;
+                    } else {
+                        refill(now);
+                        if (tokens >= 1) {
+                            tokens -= 1;
+                            inFlight++;
+                            return;
+                        }
+                        waitNanos = (long) ((1 - tokens) / requestsPerSecond * TimeUnit.SECONDS.toNanos(1));
+                    }
+
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        rejectedCounter.increment();
+                        throw new IOException("Graph request rejected by rate governor for workspace " + workspaceId);
+                    }
+                    changed.awaitNanos(Math.min(waitNanos, remaining));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for Graph rate governor");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(boolean throttled) {
+            lock.lock();
+            try {
+                inFlight--;
+                if (throttled) {
+                    decrease();
+                } else {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void backOff() {
+            lock.lock();
+            try {
+                decrease();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // 동시에 돌아온 429 들로 한도가 한꺼번에 무너지지 않도록 1 초에 한 번만 줄인다 (lock 을 잡은 상태에서 호출)
+        private void decrease() {
+            long now = System.nanoTime();
+            if (now - lastDecreaseNanos > TimeUnit.SECONDS.toNanos(1)) {
+                limit = Math.max(minLimit, limit / 2);
+                lastDecreaseNanos = now;
+                log.warn("Graph throttled workspace {}, concurrency limit lowered to {}", workspaceId, (int) limit);
+            }
+        }
+
+        void blockFor(long millis) {
+            lock.lock();
+            try {
+                long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+                if (until - blockedUntilNanos > 0) {
+                    blockedUntilNanos = until;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refill(long now) {
+            double elapsedSeconds = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+            tokens = Math.min(burst, tokens + elapsedSeconds * requestsPerSecond);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -5,22 +5,34 @@ import com.GASB.o365_func.model.entity.MsDeltaLink;
 import com.GASB.o365_func.repository.ActivitiesRepo;
 import com.GASB.o365_func.repository.MonitoredUsersRepo;
 import com.GASB.o365_func.repository.MsDeltaLinkRepo;
-import com.GASB.o365_func.repository.WorkSpaceConfigRepo;
-import com.GASB.o365_func.service.util.AESUtil;
-import com.GASB.o365_func.service.util.JwtDecoder;
 import com.microsoft.graph.core.ClientException;
 import com.microsoft.graph.http.GraphServiceException;
 import com.microsoft.graph.models.DriveItem;
 import com.microsoft.graph.models.DriveItemDeltaParameterSet;
 import com.microsoft.graph.models.Site;
+import com.microsoft.graph.models.User;
+import com.microsoft.graph.httpcore.AuthenticationHandler;
+import com.microsoft.graph.httpcore.HttpClients;
+import com.microsoft.graph.httpcore.RedirectHandler;
 import com.microsoft.graph.requests.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Service;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 @Slf4j
@@ -30,52 +42,118 @@ public class MsApiService {
     // 흠 굳이 토큰값을 저장할 필요없이 주입받는게 나으려나?
     private static final String SCOPES = "https://graph.microsoft.com/.default";
 
+    // /users 가 허용하는 최대 페이지 크기
+    private static final int USER_PAGE_SIZE = 999;
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
     @Value("{jwt.secret}")
     private String JWT_SECRET;
 
-    @Value("${aes.key}")
-    private String aesKey;
-
     private final MonitoredUsersRepo monitoredUsersRepo;
-    private final SimpleAuthProvider simpleAuthProvider;
-    private final WorkSpaceConfigRepo workspaceConfigRepo;
+    private final WorkspaceTokenStore workspaceTokenStore;
     private final MsDeltaLinkRepo msDeltaLinkRepo;
 
     private final ActivitiesRepo activitiesRepo;
+    private final MsDriveCrawler msDriveCrawler;
+    private final GraphBatchFetcher graphBatchFetcher;
+    private final GraphRateGovernor graphRateGovernor;
+    private final Executor deltaSyncExecutor;
+
+    private final Map<Integer, GraphServiceClient<?>> graphClientCache = new ConcurrentHashMap<>();
+    private final Map<Integer, ReentrantLock> graphClientLocks = new ConcurrentHashMap<>();
+
+    // 사용자별로, 토큰이 마지막으로 저장된 뒤 항목마다 연속 실패한 delta 사이클 수
+    private final Map<String, Map<String, Integer>> deltaItemFailures = new ConcurrentHashMap<>();
+    private final Counter deadLetteredCounter;
+
+    @Value("${o365.delta.max-failed-cycles:3}")
+    private int maxFailedDeltaCycles;
+
 //    private GraphServiceClient<?> graphClient;
     @Autowired
-    public MsApiService(MonitoredUsersRepo monitoredUsersRepo, SimpleAuthProvider simpleAuthProvider,
-                        WorkSpaceConfigRepo workspaceConfigRepo, MsDeltaLinkRepo msDeltaLinkRepo,
-                        ActivitiesRepo activitiesRepo) {
-        this.simpleAuthProvider = simpleAuthProvider;
+    public MsApiService(MonitoredUsersRepo monitoredUsersRepo, WorkspaceTokenStore workspaceTokenStore,
+                        MsDeltaLinkRepo msDeltaLinkRepo, ActivitiesRepo activitiesRepo,
+                        MsDriveCrawler msDriveCrawler, GraphBatchFetcher graphBatchFetcher,
+                        GraphRateGovernor graphRateGovernor,
+                        @Qualifier("deltaSyncExecutor") Executor deltaSyncExecutor,
+                        MeterRegistry meterRegistry) {
+        this.deltaSyncExecutor = deltaSyncExecutor;
+        this.msDriveCrawler = msDriveCrawler;
+        this.graphRateGovernor = graphRateGovernor;
+        this.graphBatchFetcher = graphBatchFetcher;
+        this.workspaceTokenStore = workspaceTokenStore;
         this.monitoredUsersRepo = monitoredUsersRepo;
-        this.workspaceConfigRepo = workspaceConfigRepo;
         this.msDeltaLinkRepo = msDeltaLinkRepo;
         this.activitiesRepo = activitiesRepo;
+        this.deadLetteredCounter = Counter.builder("o365.delta.dead_lettered")
+                .description("Delta items skipped after failing max-failed-cycles cycles in a row")
+                .register(meterRegistry);
     }
 
 
+    // workspace 별 GraphServiceClient 캐시.
+    // 클라이언트는 workspace 에 묶인 인증 제공자를 통해 요청마다 WorkspaceTokenStore 의 토큰을 쓰므로,
+    // 토큰이 만료되거나 401 로 버려져도 클라이언트를 다시 만들 필요가 없다.
     public GraphServiceClient<?> createGraphClient(int workspace_id){
-
-        // DB에 저장된 token
-        String encryptedToken = workspaceConfigRepo.findTokenById(workspace_id).orElse(null);
-        log.info("Encrypted token: {}", encryptedToken);
-        // 복호화된 토큰
-        String token = AESUtil.decrypt(encryptedToken,aesKey);
-        log.info("Decrypted token: {}", token);
-
-        if (token == null || !tokenValidation(token)) {
+        if (workspaceTokenStore.getToken(workspace_id) == null) {
             log.error("Invalid or expired token for workspace {}", workspace_id);
             return null;
         }
-        simpleAuthProvider.setAccessToken(token);
-        GraphServiceClient<?> graphClient = GraphServiceClient.builder().authenticationProvider(simpleAuthProvider).buildClient();
+        GraphServiceClient<?> cached = graphClientCache.get(workspace_id);
+        if (cached != null) {
+            return cached;
+        }
 
-        if (!validateGraphClient(graphClient)) {
-            log.error("GraphClient is invalid");
-            return null;
+        // 같은 workspace 의 클라이언트는 한 번만 만든다 (다른 workspace 는 기다리지 않음)
+        ReentrantLock lock = graphClientLocks.computeIfAbsent(workspace_id, id -> new ReentrantLock());
+        lock.lock();
+        try {
+            cached = graphClientCache.get(workspace_id);
+            if (cached != null) {
+                return cached;
+            }
+            GraphServiceClient<?> graphClient = buildGraphClient(workspace_id);
+
+            // 만들 때 한 번만 검증하고, 이후에는 캐시에서 바로 꺼내 쓴다
+            if (!validateGraphClient(graphClient)) {
+                log.error("GraphClient is invalid");
+                return null;
+            }
+            graphClientCache.put(workspace_id, graphClient);
+            log.info("GraphClient cached for workspace {}", workspace_id);
+            return graphClient;
+        } finally {
+            lock.unlock();
         }
-        return graphClient;
+    }
+
+    private GraphServiceClient<?> buildGraphClient(int workspace_id) {
+        SimpleAuthProvider authProvider = new SimpleAuthProvider(workspace_id, workspaceTokenStore);
+
+        // graph-core 기본 구성(인증 -> 재시도 -> 리다이렉트)에서 재시도를 GraphRateGovernor 로 바꾼다.
+        // 401 이면 요청에 실린 토큰이 폐기된 것이므로 버리고, 다음 요청에서 DB 의 최신 토큰을 읽게 한다
+        OkHttpClient httpClient = HttpClients.custom()
+                .addInterceptor(new AuthenticationHandler(authProvider))
+                .addInterceptor(chain -> {
+                    Response response = chain.proceed(chain.request());
+                    if (response.code() == 401) {
+                        String authorization = chain.request().header("Authorization");
+                        if (authorization != null && authorization.startsWith(BEARER_PREFIX)) {
+                            log.warn("Graph returned 401 for workspace {}, invalidating access token", workspace_id);
+                            workspaceTokenStore.invalidate(workspace_id, authorization.substring(BEARER_PREFIX.length()));
+                        }
+                    }
+                    return response;
+                })
+                .addInterceptor(graphRateGovernor.interceptor(workspace_id))
+                .addInterceptor(new RedirectHandler())
+                .build();
+
+        return GraphServiceClient.builder()
+                .authenticationProvider(authProvider)
+                .httpClient(httpClient)
+                .buildClient();
     }
 
     public boolean validateGraphClient(GraphServiceClient<?> graphClient) {
@@ -91,59 +169,77 @@ public class MsApiService {
     }
 
 
-    public UserCollectionPage fetchUsersList(GraphServiceClient graphClient){
-        return graphClient.users()
+    // 모든 페이지를 따라가 전체 사용자 목록을 반환
+    public List<User> fetchUsersList(GraphServiceClient graphClient){
+        List<User> users = new ArrayList<>();
+        UserCollectionPage page = graphClient.users()
                 .buildRequest()
                 .select("id,displayName,mail")
+                .top(USER_PAGE_SIZE)
                 .get();
+        while (page != null) {
+            users.addAll(page.getCurrentPage());
+            UserCollectionRequestBuilder next = page.getNextPage();
+            page = next == null ? null : next.buildRequest().get();
+        }
+        return users;
     }
 
     // List files
-    public List<DriveItemCollectionPage> fetchFileLists(GraphServiceClient graphClient, int workspace_id) {
+    // 모니터링 중인 사용자들의 OneDrive 를 delta 로 한 번에 열거하며 찾은 파일을 바로 fileSubmitter 로 넘기고,
+    // 그 드라이브에서 넘긴 파일의 처리가 모두 성공한 뒤에 마지막 deltaLink 를 저장한다 (이후 웹훅은 이 지점부터 변경분만 가져온다).
+    // 처리에 실패한 파일이 있으면 토큰을 저장하지 않아, 다음 delta 사이클이 드라이브를 처음부터 다시 열거한다.
+    // 반환되는 future 는 모든 드라이브의 토큰 저장(또는 건너뜀)이 끝나면 완료된다.
+    public CompletableFuture<Void> fetchFileLists(GraphServiceClient graphClient, int workspace_id,
+                                                  Function<DriveItem, CompletableFuture<Void>> fileSubmitter) {
         // Null 체크 추가
         if (graphClient == null) {
             log.error("GraphServiceClient is null");
-            return Collections.emptyList();
+            return CompletableFuture.completedFuture(null);
         }
 
         List<String> userList = monitoredUsersRepo.getUserList(workspace_id);
         if (userList == null || userList.isEmpty()) {
             log.error("No users found for workspace_id: {}", workspace_id);
-            return Collections.emptyList();
+            return CompletableFuture.completedFuture(null);
         }
 
-        List<DriveItemCollectionPage> responses = new ArrayList<>();
-
-        for (String user_id : userList) {
-            log.info("Fetching files for user_id: {}", user_id);
-
+        log.info("Fetching files for {} users in workspace_id: {}", userList.size(), workspace_id);
+        List<MsDriveCrawler.DriveRoot> drives = userList.stream()
+                .map(MsDriveCrawler.DriveRoot::ofUser)
+                .toList();
+        List<CompletableFuture<Void>> saves = Collections.synchronizedList(new ArrayList<>());
+        msDriveCrawler.forEachDrive(drives, drive -> {
+            String user_id = drive.getUserId();
             try {
-                DriveItemCollectionPage driveItems = graphClient.users(user_id)
-                        .drive()
-                        .root()
-                        .children()
-                        .buildRequest()
-                        // .select("createdBy,createdDateTime, id, @microsoft.graph.downloadUrl,name,size,parentReference")
-                        .get();
-
-                if (driveItems == null) {
-                    log.warn("No files found for user_id: {}", user_id);
-                } else {
-                    responses.add(driveItems);
+                // 한 드라이브의 열거는 한 스레드에서 순서대로 진행된다
+                List<CompletableFuture<Void>> submitted = new ArrayList<>();
+                String deltaLink = msDriveCrawler.enumerateDelta(graphClient, drive,
+                        item -> submitted.add(fileSubmitter.apply(item)));
+                if (deltaLink == null) {
+                    log.warn("No deltaLink returned for user_id: {}", user_id);
+                    return;
                 }
-
+                // 크롤 스레드를 붙잡지 않고, 처리가 끝나면 delta 풀에서 저장한다
+                saves.add(CompletableFuture.allOf(submitted.toArray(new CompletableFuture[0]))
+                        .handleAsync((v, ex) -> {
+                            if (ex != null) {
+                                log.error("Initial sync for user_id {} had failed files, not saving the deltaLink: {}",
+                                        user_id, ex.getMessage());
+                                return null;
+                            }
+                            saveDeltaLink(user_id, deltaLink);
+                            return null;
+                        }, deltaSyncExecutor));
             } catch (GraphServiceException e) {
                 if (e.getResponseCode() == 404) {
                     log.error("Drive not found for user_id: {}", user_id);
                 } else {
                     log.error("An error occurred while fetching files for user_id: {}", user_id, e);
                 }
-            } catch (Exception e) {
-                log.error("Unexpected error occurred for user_id: {}", user_id, e);
             }
-        }
-
-        return responses;
+        });
+        return CompletableFuture.allOf(saves.toArray(new CompletableFuture[0]));
     }
 
 
@@ -164,23 +260,22 @@ public class MsApiService {
         }
     }
 
-    public List<SiteCollectionPage> fetchSiteLists(GraphServiceClient graphClient) {
-        List<SiteCollectionPage> responses = new ArrayList<>();
+    public List<Site> fetchSiteLists(GraphServiceClient graphClient) {
+        List<Site> responses = new ArrayList<>();
         try {
             log.info("Fetching SharePoint site lists...");
 
-            // 쉐어포인트 사이트 리스트 가져오기
-            SiteCollectionPage siteItems = graphClient.sites()
+            // 쉐어포인트 사이트 리스트 가져오기 (모든 페이지)
+            SiteCollectionPage sitePage = graphClient.sites()
                     .buildRequest()
+                    .select("id,displayName,webUrl")
                     .get();
-
-            responses.add(siteItems);
-            log.info("Fetched {} SharePoint sites.", siteItems.getCurrentPage().size());
-
-            // 각 사이트의 정보 로깅
-//            siteItems.getCurrentPage().forEach(site ->
-//                    log.info("Site ID: {}, Name: {}, URL: {}", site.id, site.displayName, site.webUrl)
-//            );
+            while (sitePage != null) {
+                responses.addAll(sitePage.getCurrentPage());
+                SiteCollectionRequestBuilder next = sitePage.getNextPage();
+                sitePage = next == null ? null : next.buildRequest().get();
+            }
+            log.info("Fetched {} SharePoint sites.", responses.size());
 
         } catch (GraphServiceException e) {
             log.error("GraphServiceException occurred while fetching SharePoint sites: {}", e.getMessage(), e);
@@ -193,73 +288,69 @@ public class MsApiService {
         return responses;
     }
 
-    public List<DriveItemCollectionPage> fetchFileListsInSite(GraphServiceClient graphClient, List<SiteCollectionPage> siteList) {
-        List<DriveItemCollectionPage> responses = new ArrayList<>();
-        for (SiteCollectionPage sitePage : siteList) {
-            for (Site site : sitePage.getCurrentPage()) {
-                try {
-                    log.info("Fetching files for site ID: {}", site.id);
-
-                    // 각 사이트의 루트 드라이브에서 파일 가져오기
-                    DriveItemCollectionPage driveItems = graphClient.sites(site.id)
-                            .drive()
-                            .root()
-                            .children()
-                            .buildRequest()
-                            .get();
-
-                    responses.add(driveItems);
-//
-//                    // 각 파일의 정보 로깅
-//                    driveItems.getCurrentPage().forEach(file ->
-//                            log.info("File ID: {}, Name: {}, Size: {}", file.id, file.name, file.size)
-//                    );
-
-                } catch (GraphServiceException e) {
-                    log.error("GraphServiceException occurred while fetching files for site ID {}: {}", site.id, e.getMessage(), e);
-                } catch (Exception e) {
-                    log.error("Unexpected error occurred while fetching files for site ID {}: {}", site.id, e.getMessage(), e);
-                }
-            }
+    // 각 사이트의 기본 드라이브를 폴더까지 모두 순회하며, 찾은 파일을 바로 fileConsumer 로 넘긴다
+    public void fetchFileListsInSite(GraphServiceClient graphClient, List<Site> siteList, Consumer<DriveItem> fileConsumer) {
+        if (siteList.isEmpty()) {
+            return;
         }
-        return responses;
+        List<MsDriveCrawler.DriveRoot> drives = siteList.stream()
+                .map(site -> MsDriveCrawler.DriveRoot.ofSite(site.id))
+                .toList();
+        msDriveCrawler.crawl(graphClient, drives, fileConsumer);
     }
 
 
     /**
      * 최초 Delta API 호출: 특정 사용자의 OneDrive에서 변경 사항 추적 시작
+     * token=latest 로 호출하면 항목 없이 현재 시점의 deltaLink 만 내려온다.
+     * 초기 수집(fetchFileLists)에서 이미 저장한 토큰이 있으면 덮어쓰지 않는다.
      * @param userId 사용자 ID
-     * @return DriveItemDeltaCollectionPage 최초 Delta API 호출 결과
+     * @return 저장된 deltaLink (이미 토큰이 있으면 null)
      */
     public String initDeltaLink(String userId, GraphServiceClient<?> graphClient) {
         try {
-//            int workspace_id = monitoredUsersRepo.getOrgSaaSId(userId);
-            // 최초 Delta API 호출 (OneDrive 루트 디렉터리)
+            if (hasDeltaLink(userId)) {
+                log.info("DeltaLink already exists for user {}, keeping it", userId);
+                return null;
+            }
+
+            DriveItemDeltaParameterSet parameterSet = DriveItemDeltaParameterSet
+                    .newBuilder()
+                    .withToken("latest")
+                    .build();
+
             DriveItemDeltaCollectionPage deltaPage = graphClient
                     .users(userId)
                     .drive()
                     .root()
-                    .delta()  // delta() 메서드가 최초 Delta 호출을 의미
+                    .delta(parameterSet)
                     .buildRequest()
                     .get();
 
-            // 반환된 Delta 데이터 및 deltaLink 처리
+            // deltaLink 는 마지막 페이지에만 있으므로 끝까지 따라간다
+            while (deltaPage.deltaLink == null && deltaPage.getNextPage() != null) {
+                deltaPage = deltaPage.getNextPage().buildRequest().get();
+            }
             String deltaLink = deltaPage.deltaLink;
             log.info("Initial deltaLink for user {}: {}", userId, deltaLink);
+            if (deltaLink == null) {
+                return null;
+            }
 
             // DeltaLink 저장
-            // DB구조 수정 이후 추가 예정
             saveDeltaLink(userId, deltaLink);
-
-//            fetchDeltaChanges(userId, deltaLink,graphClient);
             return deltaLink;
-            // Delta 결과 반환
         } catch (Exception e) {
             log.error("Error occurred while initiating Delta API for user {}: {}", userId, e.getMessage());
             return null;
         }
     }
 
+    public boolean hasDeltaLink(String userId) {
+        MonitoredUsers monitoredUsers = monitoredUsersRepo.findByUserId(userId).orElse(null);
+        return monitoredUsers != null && msDeltaLinkRepo.existsByMonitoredUsers_Id(monitoredUsers.getId());
+    }
+
     private void saveDeltaLink(String userId, String deltaLink) {
         MonitoredUsers monitoredUsers = monitoredUsersRepo.findByUserId(userId).orElse(null);
         if (monitoredUsers == null) {
@@ -279,73 +370,159 @@ public class MsApiService {
         msDeltaLinkRepo.save(msDeltaLink);
     }
 
-    public DriveItemDeltaCollectionPage fetchDeltaChangesItem(String userId,String deltaLink, GraphServiceClient<?> graphClient) {
+    /**
+     * 저장된 delta 토큰부터 마지막 페이지까지 따라가며, 페이지를 받을 때마다 변경 항목을 하나씩 pageHandler 로 넘긴다.
+     * 모든 항목의 처리가 성공한 뒤에만 마지막 페이지의 deltaLink 를 저장한다.
+     * 실패하면 토큰을 그대로 두어 다음 사이클이 같은 지점부터 다시 가져오게 한다.
+     * 같은 항목이 max-failed-cycles 번 연속 실패하면 그 항목만 dead-letter 로 기록하고 건너뛴다
+     * (다른 항목이 실패한 사이클에서는 여전히 토큰을 넘기지 않는다).
+     * 반환되는 future 는 이번 사이클에서 처리한 변경 항목 수로 완료된다.
+     */
+    public CompletableFuture<Integer> syncDelta(String userId, int workspaceId, GraphServiceClient<?> graphClient,
+                                             Function<Map<DriveItem, String>, CompletableFuture<Void>> pageHandler) {
+        if (graphClient == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("GraphServiceClient is null for user " + userId));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            int user_id = monitoredUsersRepo.getIdx(userId);
+            String token = msDeltaLinkRepo.findDeltaLinkByUserId(user_id).orElse(null);
+            log.info("DeltaLink for user {}: {}", userId, token);
+
+            List<DeltaItemRun> itemRuns = new ArrayList<>();
+            int[] changeCount = {0};
+            String deltaLink = msDriveCrawler.enumerateDeltaPages(graphClient, MsDriveCrawler.DriveRoot.ofUser(userId), token,
+                    items -> {
+                        DeltaPage page = resolveDeltaPage(userId, workspaceId, items, graphClient);
+                        changeCount[0] += page.changes().size();
+                        // 항목마다 따로 넘겨 어떤 항목이 실패했는지 알 수 있게 한다
+                        page.changes().forEach((item, eventType) ->
+                                itemRuns.add(new DeltaItemRun(item.id, handleDeltaItem(pageHandler, item, eventType))));
+                        // 조회하지 못한 항목은 실패로 남겨 토큰이 넘어가지 않게 한다
+                        page.failedIds().forEach(id -> itemRuns.add(new DeltaItemRun(id, CompletableFuture.failedFuture(
+                                new IllegalStateException("Could not fetch drive item " + id + " for user " + userId)))));
+                    });
+            if (itemRuns.isEmpty()) {
+                log.info("No changes found for user {}", userId);
+            }
+            return new DeltaRun(deltaLink, itemRuns, changeCount[0]);
+        }, deltaSyncExecutor).thenCompose(run -> CompletableFuture.allOf(run.items.stream()
+                        .map(DeltaItemRun::future)
+                        .toArray(CompletableFuture[]::new))
+                // 마지막 파일을 처리한 워커 스레드가 아니라 delta 풀에서 토큰을 저장한다
+                .handleAsync((v, ex) -> finishDeltaRun(userId, run), deltaSyncExecutor));
+    }
+
+    private static CompletableFuture<Void> handleDeltaItem(Function<Map<DriveItem, String>, CompletableFuture<Void>> pageHandler,
+                                                           DriveItem item, String eventType) {
         try {
-            DriveItemDeltaParameterSet parameterSet = DriveItemDeltaParameterSet
-                    .newBuilder()
-                    .withToken(deltaLink)  // DeltaLink 전달
-                    .build();
+            return pageHandler.apply(Map.of(item, eventType));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-            DriveItemDeltaCollectionPage deltaPage = graphClient
-                    .users(userId)
-                    .drive()
-                    .root()
-                    .delta(parameterSet)
-                    .buildRequest()
-                    .get();
+    // 모든 항목이 끝난 뒤 토큰을 저장할지 정한다. 실패한 항목이 모두 max-failed-cycles 번 연속 실패한 것이면
+    // 그 항목들만 dead-letter 로 기록하고 토큰을 넘긴다
+    private int finishDeltaRun(String userId, DeltaRun run) {
+        Map<String, Integer> itemFailures = deltaItemFailures.computeIfAbsent(userId, key -> new ConcurrentHashMap<>());
+        List<String> failedIds = new ArrayList<>();
+        Throwable firstError = null;
+        boolean retryable = false;
+        for (DeltaItemRun item : run.items) {
+            String itemId = String.valueOf(item.itemId());
+            if (!item.future().isCompletedExceptionally()) {
+                itemFailures.remove(itemId);
+                continue;
+            }
+            failedIds.add(itemId);
+            if (firstError == null) {
+                firstError = item.future().exceptionNow();
+            }
+            if (itemFailures.merge(itemId, 1, Integer::sum) < maxFailedDeltaCycles) {
+                retryable = true;
+            }
+        }
 
-            return deltaPage;
-        } catch (Exception e) {
-            log.error("Error occurred while fetching delta changes for user {}: {}", userId, e.getMessage());
-            return null;
+        if (run.deltaLink == null) {
+            log.warn("No deltaLink returned for user {}, keeping the current token", userId);
+            return run.changes;
+        }
+        if (retryable) {
+            log.warn("Delta cycle for user {} failed for {} items, keeping the current token: {}",
+                    userId, failedIds.size(), firstError.getMessage());
+            throw new CompletionException(firstError);
+        }
+        if (!failedIds.isEmpty()) {
+            deadLetteredCounter.increment(failedIds.size());
+            log.error("Delta items for user {} failed {} cycles in a row, skipping them: {}",
+                    userId, maxFailedDeltaCycles, failedIds);
         }
+        deltaItemFailures.remove(userId);
+        saveDeltaLink(userId, run.deltaLink);
+        return run.changes;
     }
 
+    private record DeltaRun(String deltaLink, List<DeltaItemRun> items, int changes) {
+    }
 
-    public CompletableFuture<Map<DriveItem, String>> fetchDeltaInfo(String userId, GraphServiceClient<?> graphClient) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                Map<DriveItem, String> response = new HashMap<>();
-
-                // DeltaLink 조회
-                int user_id = monitoredUsersRepo.getIdx(userId);
-                String deltaLink = msDeltaLinkRepo.findDeltaLinkByUserId(user_id).orElse(null);
-                log.info("DeltaLink for user {}: {}", userId, deltaLink);
+    private record DeltaItemRun(String itemId, CompletableFuture<Void> future) {
+    }
 
-                DriveItemDeltaCollectionPage deltaPage = fetchDeltaChangesItem(userId, deltaLink, graphClient);
-                log.info("DriveItemDeltaCollectionPage: {}", deltaPage.getCurrentPage().size());
-                log.info("Page : {}", deltaPage.getCurrentPage());
+    private record DeltaPage(Map<DriveItem, String> changes, List<String> failedIds) {
+    }
 
-                // 변경 사항이 없는 경우
-                if (deltaPage.getCurrentPage().isEmpty()) {
-                    log.info("No changes found for user {}", userId);
+    // 한 페이지의 delta 항목을 이벤트 종류별로 나누고, 변경/업로드 항목의 상세 정보는 $batch 로 한꺼번에 조회한다
+    // (삭제 항목은 delta 정보 그대로 사용). delta 에 나온 순서를 유지한다.
+    // 조회 중에 삭제된 항목(404)만 건너뛰고, 그 밖의 이유로 조회하지 못한 항목은 failedIds 로 돌려준다.
+    private DeltaPage resolveDeltaPage(String userId, int workspaceId, List<DriveItem> items, GraphServiceClient<?> graphClient) {
+        List<DriveItem> changedItems = new ArrayList<>();
+        List<String> eventTypes = new ArrayList<>();
+        List<String> lookupIds = new ArrayList<>();
+        for (DriveItem driveItem : items) {
+            log.info("File ID: {}, Name: {}, Size: {}, ", driveItem.id, driveItem.name, driveItem.size);
+            if (driveItem.folder != null){
+                log.info("Folder: {}", driveItem.folder);
+                continue;
+            }
+            String eventType = eventTypeSeperator(driveItem);
+            switch (eventType) {
+                case "file_delete" -> {
+                    changedItems.add(driveItem);
+                    eventTypes.add(eventType);
                 }
+                case "file_change", "file_upload" -> {
+                    changedItems.add(null);
+                    eventTypes.add(eventType);
+                    lookupIds.add(driveItem.id);
+                }
+            }
+        }
 
-                deltaPage.getCurrentPage().forEach(driveItem -> {
-                    log.info("File ID: {}, Name: {}, Size: {}, ", driveItem.id, driveItem.name, driveItem.size);
-//                    DriveItem item = getEachFileInto(userId, driveItem.id, graphClient);
-                    if (driveItem.folder != null){
-                        log.info("Folder: {}", driveItem.folder);
-                        return;
-                    }
-                    String eventType = eventTypeSeperator(driveItem);
-                    switch (eventType) {
-                        case "file_delete" -> response.put(driveItem, "file_delete");
-                        case "file_change" -> response.put(getEachFileInto(userId, driveItem.id, graphClient), "file_change");
-                        case "file_upload" -> response.put(getEachFileInto(userId, driveItem.id, graphClient), "file_upload");
-                    }
-//                    response.put(item, eventTypeSeperator(driveItem)); // 근데 지금 이벤트 타입의 경우에 따라서 다르게 처리해야함. delete의 경우에는 이게 안오기 때문에...
-                });
-
-                // 새롭게 deltaLink를 업데이트
-                initDeltaLink(userId, graphClient);
-                return response;
-
-            } catch (Exception e) {
-                log.error("Error occurred while fetching delta changes for user {}: {}", userId, e.getMessage());
-                return Collections.emptyMap(); // 예외 시 빈 리스트 반환
+        List<GraphBatchFetcher.ItemResult> fetchedItems = lookupIds.isEmpty()
+                ? Collections.emptyList()
+                : graphBatchFetcher.fetchDriveItems(graphClient, workspaceId, userId, lookupIds);
+        Map<DriveItem, String> response = new LinkedHashMap<>();
+        List<String> failedIds = new ArrayList<>();
+        int lookupIndex = 0;
+        for (int i = 0; i < changedItems.size(); i++) {
+            DriveItem item = changedItems.get(i);
+            if (item == null) {
+                String itemId = lookupIds.get(lookupIndex);
+                GraphBatchFetcher.ItemResult result = fetchedItems.get(lookupIndex++);
+                if (result.isNotFound()) {
+                    log.info("Skipping item {} for user {}: no longer exists", itemId, userId);
+                    continue;
+                }
+                if (!result.isFound()) {
+                    log.warn("Could not fetch item {} for user {} (status {})", itemId, userId, result.status());
+                    failedIds.add(itemId);
+                    continue;
+                }
+                item = result.item();
             }
-        });
+            response.put(item, eventTypes.get(i));
+        }
+        return new DeltaPage(response, failedIds);
     }
 
     private String eventTypeSeperator(DriveItem item) {
@@ -362,25 +539,6 @@ public class MsApiService {
     }
 
 
-    //토큰 검증하는 부분
-    private boolean tokenValidation(String token) {
-        // o365는 토큰이 JWT 형식이다, JWT를 검증하는 로직을 작성해야 한다.
-        String decodedPayload = JwtDecoder.decodeJwtPayload(token);
-        Date expDate = JwtDecoder.getExpDate(token); // 페이로드가 아닌 전체 JWT를 전달
-        log.info("Decoded payload: {}", decodedPayload);
-
-        // 토큰 만료일이 현재 시간보다 이전이면 false
-        if (expDate.before(new Date())) {
-            log.error("Token is expired");
-            return false;
-        }
-
-        // 추가적인 검증 로직이 필요하다면 여기에 추가
-        // 예: 서명 검증, issuer 검증 등
-
-        return true;
-    }
-
     public boolean MsFileDeleteApi(int workspace_id, String itemId) {
         try {
             GraphServiceClient<?> graphServiceClient = createGraphClient(workspace_id);
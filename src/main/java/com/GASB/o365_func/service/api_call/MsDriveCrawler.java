@@ -0,0 +1,235 @@
+package com.GASB.o365_func.service.api_call;
+
+import com.GASB.o365_func.service.pipeline.FileProcessingPipeline;
+import com.GASB.o365_func.service.pipeline.PipelineStage;
+import com.microsoft.graph.models.DriveItem;
+import com.microsoft.graph.models.DriveItemDeltaParameterSet;
+import com.microsoft.graph.requests.DriveItemCollectionPage;
+import com.microsoft.graph.requests.DriveItemCollectionRequestBuilder;
+import com.microsoft.graph.requests.DriveItemDeltaCollectionPage;
+import com.microsoft.graph.requests.DriveItemDeltaCollectionRequestBuilder;
+import com.microsoft.graph.requests.DriveRequestBuilder;
+import com.microsoft.graph.requests.GraphServiceClient;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * 드라이브 전체를 순회하는 크롤러.
+ * <p>
+ * enumerateDelta 는 delta() 한 번으로 드라이브 전체 계층을 열거하고 마지막 deltaLink 를 돌려준다
+ * (이후 변경분 조회의 시작점). enumerateDeltaPages 는 저장된 토큰 이후의 변경분을 페이지 단위로 넘긴다.
+ * 여러 드라이브는 forEachDrive 로 최대 parallelism 개까지 동시에 처리한다.
+ * <p>
+ * crawl 은 delta 토큰이 필요 없는 드라이브를 폴더 단위로 순회한다.
+ * 여러 드라이브의 루트에서 시작해 폴더를 너비 우선으로 내려가며, 폴더 목록 조회는 graphCrawlExecutor 에서
+ * 최대 parallelism 개까지 동시에 수행한다. 각 폴더는 nextLink 를 끝까지 따라가며 $top / $select 로 응답 크기를 줄인다.
+ * 파일은 목록을 모으지 않고 찾는 즉시 fileConsumer 로 넘긴다 (consumer 가 블록되면 크롤링도 함께 느려진다).
+ */
+@Component
+@Slf4j
+public class MsDriveCrawler {
+
+    private static final String ROOT_ITEM_ID = "root";
+
+    // MsFileMapper 가 읽는 필드만 요청
+    private static final String ITEM_SELECT = "id,name,size,file,folder,createdBy,createdDateTime,lastModifiedDateTime,"
+            + "parentReference,@microsoft.graph.downloadUrl";
+
+    private static final String DELTA_SELECT = ITEM_SELECT + ",deleted";
+
+    private final Executor graphCrawlExecutor;
+    private final FileProcessingPipeline fileProcessingPipeline;
+
+    @Value("${o365.crawl.parallelism:4}")
+    private int parallelism;
+
+    @Value("${o365.crawl.page-size:200}")
+    private int pageSize;
+
+    public MsDriveCrawler(@Qualifier("graphCrawlExecutor") Executor graphCrawlExecutor,
+                          FileProcessingPipeline fileProcessingPipeline) {
+        this.graphCrawlExecutor = graphCrawlExecutor;
+        this.fileProcessingPipeline = fileProcessingPipeline;
+    }
+
+    // 사용자 OneDrive 또는 SharePoint 사이트의 기본 드라이브
+    @Getter
+    @AllArgsConstructor
+    public static class DriveRoot {
+        private final String userId;
+        private final String siteId;
+
+        public static DriveRoot ofUser(String userId) {
+            return new DriveRoot(userId, null);
+        }
+
+        public static DriveRoot ofSite(String siteId) {
+            return new DriveRoot(null, siteId);
+        }
+
+        DriveRequestBuilder drive(GraphServiceClient<?> graphClient) {
+            return userId != null ? graphClient.users(userId).drive() : graphClient.sites(siteId).drive();
+        }
+
+        @Override
+        public String toString() {
+            return userId != null ? "user " + userId : "site " + siteId;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class FolderRef {
+        private final DriveRoot drive;
+        private final String itemId;
+    }
+
+    // delta 로 드라이브 전체를 열거해 파일을 consumer 로 넘기고, 마지막 페이지의 deltaLink 를 반환
+    public String enumerateDelta(GraphServiceClient<?> graphClient, DriveRoot drive, Consumer<DriveItem> fileConsumer) {
+        int[] files = {0};
+        String deltaLink = enumerateDeltaPages(graphClient, drive, null, items -> {
+            for (DriveItem item : items) {
+                if (item.file != null && item.deleted == null) {
+                    fileConsumer.accept(item);
+                    files[0]++;
+                }
+            }
+        });
+        log.info("Delta enumeration finished for {}: {} files", drive, files[0]);
+        return deltaLink;
+    }
+
+    // token 이후의 변경분을 nextLink 를 끝까지 따라가며 페이지 단위로 pageConsumer 에 넘기고 (받는 즉시),
+    // 마지막 페이지의 deltaLink 를 반환한다. token 이 null 이면 처음부터 열거한다.
+    public String enumerateDeltaPages(GraphServiceClient<?> graphClient, DriveRoot drive, String token,
+                                      Consumer<List<DriveItem>> pageConsumer) {
+        DriveItemDeltaCollectionRequestBuilder request = token == null
+                ? drive.drive(graphClient).root().delta()
+                : drive.drive(graphClient).root().delta(DriveItemDeltaParameterSet.newBuilder().withToken(token).build());
+        DriveItemDeltaCollectionPage page = fileProcessingPipeline.runStage(PipelineStage.GRAPH, () -> request
+                .buildRequest()
+                .top(pageSize)
+                .select(DELTA_SELECT)
+                .get());
+
+        String deltaLink = null;
+        int pages = 0;
+        while (page != null) {
+            pageConsumer.accept(page.getCurrentPage());
+            pages++;
+            DriveItemDeltaCollectionRequestBuilder next = page.getNextPage();
+            if (next == null) {
+                // 마지막 페이지에만 deltaLink 가 내려온다
+                deltaLink = page.deltaLink;
+                page = null;
+            } else {
+                page = fileProcessingPipeline.runStage(PipelineStage.GRAPH, () -> next.buildRequest().get());
+            }
+        }
+        log.debug("Delta paging finished for {}: {} pages", drive, pages);
+        return deltaLink;
+    }
+
+    // 드라이브마다 task 를 graphCrawlExecutor 에서 최대 parallelism 개까지 동시에 실행하고 모두 끝날 때까지 기다린다
+    public void forEachDrive(List<DriveRoot> drives, Consumer<DriveRoot> task) {
+        ExecutorCompletionService<DriveRoot> completion = new ExecutorCompletionService<>(graphCrawlExecutor);
+        Deque<DriveRoot> pending = new ArrayDeque<>(drives);
+        int limit = Math.max(1, parallelism);
+        int inFlight = 0;
+        try {
+            while (!pending.isEmpty() || inFlight > 0) {
+                while (inFlight < limit && !pending.isEmpty()) {
+                    DriveRoot drive = pending.poll();
+                    completion.submit(() -> {
+                        task.accept(drive);
+                        return drive;
+                    });
+                    inFlight++;
+                }
+                Future<DriveRoot> done = completion.take();
+                inFlight--;
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    log.error("Error occurred while processing drive: {}", e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Drive processing interrupted, {} drives not started", pending.size());
+        }
+    }
+
+    public void crawl(GraphServiceClient<?> graphClient, List<DriveRoot> drives, Consumer<DriveItem> fileConsumer) {
+        ExecutorCompletionService<List<FolderRef>> completion = new ExecutorCompletionService<>(graphCrawlExecutor);
+        Deque<FolderRef> pending = new ArrayDeque<>();
+        drives.forEach(drive -> pending.add(new FolderRef(drive, ROOT_ITEM_ID)));
+
+        int limit = Math.max(1, parallelism);
+        int inFlight = 0;
+        int folders = 0;
+        try {
+            while (!pending.isEmpty() || inFlight > 0) {
+                while (inFlight < limit && !pending.isEmpty()) {
+                    FolderRef folder = pending.poll();
+                    completion.submit(() -> listFolder(graphClient, folder, fileConsumer));
+                    inFlight++;
+                }
+                Future<List<FolderRef>> done = completion.take();
+                inFlight--;
+                folders++;
+                try {
+                    pending.addAll(done.get());
+                } catch (ExecutionException e) {
+                    log.error("Error occurred while listing folder: {}", e.getCause().getMessage(), e.getCause());
+                }
+            }
+            log.info("Crawl finished: {} drives, {} folders", drives.size(), folders);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Crawl interrupted after {} folders", folders);
+        }
+    }
+
+    // 폴더 하나의 모든 페이지를 읽어 파일은 consumer 로 넘기고, 하위 폴더는 반환
+    private List<FolderRef> listFolder(GraphServiceClient<?> graphClient, FolderRef folder, Consumer<DriveItem> fileConsumer) {
+        List<FolderRef> children = new ArrayList<>();
+        DriveItemCollectionPage page = fileProcessingPipeline.runStage(PipelineStage.GRAPH, () -> folder.drive.drive(graphClient)
+                .items(folder.itemId)
+                .children()
+                .buildRequest()
+                .top(pageSize)
+                .select(ITEM_SELECT)
+                .get());
+
+        while (page != null) {
+            for (DriveItem item : page.getCurrentPage()) {
+                if (item.folder != null) {
+                    // 빈 폴더는 조회하지 않음
+                    if (item.folder.childCount == null || item.folder.childCount > 0) {
+                        children.add(new FolderRef(folder.drive, item.id));
+                    }
+                } else if (item.file != null) {
+                    fileConsumer.accept(item);
+                }
+            }
+            // nextLink 에는 $top / $select 가 이미 포함되어 있음
+            DriveItemCollectionRequestBuilder next = page.getNextPage();
+            page = next == null ? null : fileProcessingPipeline.runStage(PipelineStage.GRAPH, () -> next.buildRequest().get());
+        }
+        return children;
+    }
+}
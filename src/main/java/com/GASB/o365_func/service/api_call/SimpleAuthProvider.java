@@ -1,27 +1,30 @@
 package com.GASB.o365_func.service.api_call;
 
-import com.GASB.o365_func.repository.WorkSpaceConfigRepo;
-import com.azure.identity.ClientSecretCredential;
 import com.microsoft.graph.authentication.IAuthenticationProvider;
 import org.jetbrains.annotations.NotNull;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
 
 import java.net.URL;
 import java.util.concurrent.CompletableFuture;
 
-@Component
+// workspace 하나에 묶인 불변 인증 제공자. 토큰은 요청마다 WorkspaceTokenStore 에서 읽는다.
 public class SimpleAuthProvider implements IAuthenticationProvider {
-    private String accessToken;
-    // 추후 토큰 갱신코드 또한 작성할 것.
 
+    private final int workspaceId;
+    private final WorkspaceTokenStore tokenStore;
 
-    public void setAccessToken(String accessToken){
-        this.accessToken = accessToken;
+    public SimpleAuthProvider(int workspaceId, WorkspaceTokenStore tokenStore) {
+        this.workspaceId = workspaceId;
+        this.tokenStore = tokenStore;
     }
+
     @NotNull
     @Override
     public CompletableFuture<String> getAuthorizationTokenAsync(@NotNull URL requestUrl) {
+        String accessToken = tokenStore.getToken(workspaceId);
+        if (accessToken == null) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("No valid access token for workspace " + workspaceId));
+        }
         return CompletableFuture.completedFuture(accessToken);
     }
 }
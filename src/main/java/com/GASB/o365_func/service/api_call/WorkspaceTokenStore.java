@@ -0,0 +1,120 @@
+package com.GASB.o365_func.service.api_call;
+
+import com.GASB.o365_func.repository.WorkSpaceConfigRepo;
+import com.GASB.o365_func.service.util.AESUtil;
+import com.GASB.o365_func.service.util.JwtDecoder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * workspace 별 Graph 액세스 토큰 저장소.
+ * <p>
+ * 토큰은 불변 객체로 ConcurrentHashMap 에 보관하므로, 여러 테넌트의 요청이 동시에 읽어도 락 없이 자기 토큰만 얻는다.
+ * 토큰이 없거나 만료(exp - skew)되었으면 DB 에서 다시 읽어 복호화하며, 같은 workspace 의 재적재는 한 번만 수행한다.
+ * Graph 가 401 을 돌려주면 invalidate 로 해당 토큰을 버려 다음 요청에서 DB 의 최신 토큰을 읽게 한다.
+ */
+@Component
+@Slf4j
+public class WorkspaceTokenStore {
+
+    private final WorkSpaceConfigRepo workspaceConfigRepo;
+
+    @Value("${aes.key}")
+    private String aesKey;
+
+    // 만료 직전의 토큰으로 요청하지 않도록 exp 보다 이만큼 먼저 다시 읽는다
+    @Value("${graph.client.expiry-skew-seconds:60}")
+    private long expirySkewSeconds;
+
+    private final Map<Integer, AccessToken> tokens = new ConcurrentHashMap<>();
+    private final Map<Integer, ReentrantLock> loadLocks = new ConcurrentHashMap<>();
+
+    public WorkspaceTokenStore(WorkSpaceConfigRepo workspaceConfigRepo) {
+        this.workspaceConfigRepo = workspaceConfigRepo;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class AccessToken {
+        private final String value;
+        private final Instant expiresAt;
+
+        boolean isUsable(long skewSeconds) {
+            return Instant.now().plusSeconds(skewSeconds).isBefore(expiresAt);
+        }
+    }
+
+    // 유효한 토큰이 없으면 null
+    public String getToken(int workspaceId) {
+        AccessToken token = tokens.get(workspaceId);
+        if (token != null && token.isUsable(expirySkewSeconds)) {
+            return token.getValue();
+        }
+
+        ReentrantLock lock = loadLocks.computeIfAbsent(workspaceId, id -> new ReentrantLock());
+        lock.lock();
+        try {
+            token = tokens.get(workspaceId);
+            if (token != null && token.isUsable(expirySkewSeconds)) {
+                return token.getValue();
+            }
+            token = loadToken(workspaceId);
+            if (token == null) {
+                tokens.remove(workspaceId);
+                return null;
+            }
+            tokens.put(workspaceId, token);
+            log.info("Access token loaded for workspace {} (expires at {})", workspaceId, token.getExpiresAt());
+            return token.getValue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 해당 토큰이 아직 현재 토큰일 때만 버린다 (그 사이 다시 읽은 토큰은 유지)
+    public void invalidate(int workspaceId, String tokenValue) {
+        tokens.computeIfPresent(workspaceId, (id, token) -> token.getValue().equals(tokenValue) ? null : token);
+    }
+
+    private AccessToken loadToken(int workspaceId) {
+        // DB에 저장된 token
+        String encryptedToken = workspaceConfigRepo.findTokenById(workspaceId).orElse(null);
+        if (encryptedToken == null) {
+            log.error("No token stored for workspace {}", workspaceId);
+            return null;
+        }
+        // 복호화된 토큰
+        String token = AESUtil.decrypt(encryptedToken, aesKey);
+        if (token == null || !tokenValidation(token)) {
+            log.error("Invalid or expired token for workspace {}", workspaceId);
+            return null;
+        }
+        return new AccessToken(token, JwtDecoder.getExpDate(token).toInstant());
+    }
+
+    //토큰 검증하는 부분
+    private boolean tokenValidation(String token) {
+        // o365는 토큰이 JWT 형식이다, JWT를 검증하는 로직을 작성해야 한다.
+        Date expDate = JwtDecoder.getExpDate(token); // 페이로드가 아닌 전체 JWT를 전달
+
+        // 토큰 만료일이 현재 시간보다 이전이면 false
+        if (expDate.before(new Date())) {
+            log.error("Token is expired");
+            return false;
+        }
+
+        // 추가적인 검증 로직이 필요하다면 여기에 추가
+        // 예: 서명 검증, issuer 검증 등
+
+        return true;
+    }
+}
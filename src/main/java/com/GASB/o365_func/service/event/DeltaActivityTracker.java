@@ -0,0 +1,83 @@
+package com.GASB.o365_func.service.event;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 사용자별 delta 폴링 간격.
+ * 사이클(웹훅이든 폴링이든)에서 변경이 나오면 간격을 min-interval 로 줄이고, 변경이 없으면 max-interval 까지 두 배씩 늘린다.
+ * 사이클이 끝날 때마다 다음 폴링 시각을 간격만큼 뒤로 미루므로, 웹훅으로 방금 동기화한 사용자는 폴링하지 않는다.
+ * 실패한 사이클도 간격을 두 배씩 늘려, 사용할 수 없는 workspace 의 사용자를 매번 다시 폴링하지 않는다.
+ */
+@Component
+public class DeltaActivityTracker {
+
+    @Value("${o365.delta.poll.min-interval-ms:60000}")
+    private long minIntervalMs;
+
+    @Value("${o365.delta.poll.max-interval-ms:1800000}")
+    private long maxIntervalMs;
+
+    private final Map<String, PollState> states = new ConcurrentHashMap<>();
+
+    private static final class PollState {
+        long intervalMs;
+        long nextPollAt;
+
+        PollState(long intervalMs, long nextPollAt) {
+            this.intervalMs = intervalMs;
+            this.nextPollAt = nextPollAt;
+        }
+    }
+
+    // 처음 보는 사용자는 첫 폴링 시각을 min-interval 안에서 흩어 놓는다 (기동 직후 한꺼번에 몰리지 않도록)
+    public boolean isDue(String userId, long now) {
+        PollState state = states.computeIfAbsent(userId, key ->
+                new PollState(minIntervalMs, now + ThreadLocalRandom.current().nextLong(Math.max(1, minIntervalMs))));
+        synchronized (state) {
+            return now >= state.nextPollAt;
+        }
+    }
+
+    // 폴링을 시작할 때 호출 (사이클이 실패해도 같은 사용자를 바로 다시 폴링하지 않도록 현재 간격만큼 미룬다)
+    public void markPolled(String userId, long now) {
+        PollState state = states.get(userId);
+        if (state != null) {
+            synchronized (state) {
+                state.nextPollAt = now + state.intervalMs;
+            }
+        }
+    }
+
+    // 사이클이 성공적으로 끝난 뒤 처리한 변경 항목 수를 기록
+    public void record(String userId, int changes) {
+        long now = System.currentTimeMillis();
+        PollState state = states.computeIfAbsent(userId, key -> new PollState(minIntervalMs, now));
+        synchronized (state) {
+            state.intervalMs = changes > 0
+                    ? minIntervalMs
+                    : Math.min(maxIntervalMs, Math.max(minIntervalMs, state.intervalMs * 2));
+            state.nextPollAt = now + state.intervalMs;
+        }
+    }
+
+    // 사이클이 실패했거나 시작하지 못했을 때 (토큰 만료, 클라이언트 없음 등) 간격을 두 배로 늘려 같은 실패를 반복하지 않는다
+    public void recordFailure(String userId) {
+        long now = System.currentTimeMillis();
+        PollState state = states.computeIfAbsent(userId, key -> new PollState(minIntervalMs, now));
+        synchronized (state) {
+            state.intervalMs = Math.min(maxIntervalMs, Math.max(minIntervalMs, state.intervalMs * 2));
+            state.nextPollAt = now + state.intervalMs;
+        }
+    }
+
+    // 더 이상 추적하지 않는 사용자 정리
+    public void retain(Collection<String> userIds) {
+        states.keySet().retainAll(userIds);
+    }
+}
@@ -0,0 +1,138 @@
+package com.GASB.o365_func.service.event;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 사용자별 델타 사이클 single-flight.
+ * 한 사용자에 대해 동시에 실행되는 델타 사이클은 최대 하나이고, 실행 중에 들어온 알림들은
+ * 디바운스 구간이 지난 뒤 한 번의 후속 실행으로 합쳐진다.
+ * 같은 델타 토큰으로 여러 사이클이 겹쳐 돌면서 같은 파일을 중복 다운로드하고
+ * Activities 행이 중복 기록되던 문제를 막는다.
+ */
+@Component
+@Slf4j
+public class DeltaCoalescer {
+
+    @Value("${o365.delta.debounce-ms:2000}")
+    private long debounceMs;
+
+    private final Map<String, UserState> states = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "DeltaCoalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter startedCounter;
+    private final Counter coalescedCounter;
+
+    public DeltaCoalescer(MeterRegistry meterRegistry) {
+        this.startedCounter = Counter.builder("o365.delta.cycles")
+                .tag("result", "started")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("o365.delta.cycles")
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+    }
+
+    // states 맵의 compute 안에서만 변경된다
+    private static final class UserState {
+        // 사이클 실행 중이거나 후속 실행이 예약되어 있음
+        boolean active;
+        // 실행 중에 알림이 들어옴 -> 끝나면 후속 실행 예약
+        boolean pending;
+        // 후속 실행이 디바운스 대기 중 (이 동안 들어온 알림은 그 실행에 포함됨)
+        boolean followUpScheduled;
+        // 가장 최근 알림의 사이클
+        Supplier<CompletableFuture<Void>> cycle;
+    }
+
+    /**
+     * 사용자의 델타 사이클을 요청한다.
+     * 진행 중인 사이클이 없으면 바로 실행하고 그 future 를 반환한다.
+     * 이미 실행 중이면 후속 실행에 합쳐지고 완료된 future 를 바로 반환한다 (호출한 컨슈머를 붙잡지 않음).
+     */
+    public CompletableFuture<Void> submit(String userId, Supplier<CompletableFuture<Void>> cycle) {
+        boolean[] startNow = {false};
+        states.compute(userId, (key, state) -> {
+            if (state == null) {
+                state = new UserState();
+            }
+            state.cycle = cycle;
+            if (!state.active) {
+                state.active = true;
+                startNow[0] = true;
+            } else if (!state.followUpScheduled) {
+                state.pending = true;
+            }
+            return state;
+        });
+
+        if (startNow[0]) {
+            return run(userId);
+        }
+        coalescedCounter.increment();
+        log.info("Delta cycle for user {} already in flight, coalescing notification", userId);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private CompletableFuture<Void> run(String userId) {
+        UserState state = states.get(userId);
+        CompletableFuture<Void> future;
+        try {
+            startedCounter.increment();
+            future = state.cycle.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((v, ex) -> {
+            if (ex != null) {
+                log.error("Delta cycle for user {} failed: {}", userId, ex.getMessage());
+            }
+            finish(userId);
+        });
+    }
+
+    private void finish(String userId) {
+        boolean[] followUp = {false};
+        states.computeIfPresent(userId, (key, state) -> {
+            if (!state.pending) {
+                // 대기 중인 알림이 없으면 상태를 지워 맵이 사용자 수만큼 자라지 않게 한다
+                return null;
+            }
+            state.pending = false;
+            state.followUpScheduled = true;
+            followUp[0] = true;
+            return state;
+        });
+
+        if (followUp[0]) {
+            log.info("Scheduling coalesced delta cycle for user {} in {} ms", userId, debounceMs);
+            scheduler.schedule(() -> {
+                states.computeIfPresent(userId, (key, state) -> {
+                    state.followUpScheduled = false;
+                    return state;
+                });
+                run(userId);
+            }, Math.max(0, debounceMs), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,98 @@
+package com.GASB.o365_func.service.event;
+
+import com.GASB.o365_func.repository.MsDeltaLinkRepo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 웹훅 보조용 delta 폴링.
+ * <p>
+ * 웹훅 URL 에 닿지 않는 테넌트나 유실된 알림 때문에 변경분을 놓치지 않도록, delta 토큰이 있는 사용자마다
+ * 주기적으로 delta 사이클을 실행한다. 사용자별 간격은 DeltaActivityTracker 가 변경 빈도에 맞춰 조정하고
+ * (변경이 없는 드라이브는 max-interval 까지 늘어남), 동시에 실행 중인 폴링은 전체 max-in-flight 개로 제한한다.
+ * 사이클은 웹훅과 같은 MsFileEvent.catchUp 으로 실행되므로 사용자당 하나만 돈다.
+ */
+@Component
+@Slf4j
+public class DeltaPollScheduler {
+
+    private final MsDeltaLinkRepo msDeltaLinkRepo;
+    private final MsFileEvent msFileEvent;
+    private final DeltaActivityTracker deltaActivityTracker;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${o365.delta.poll.enabled:true}")
+    private boolean enabled;
+
+    @Value("${o365.delta.poll.max-in-flight:4}")
+    private int maxInFlight;
+
+    private Semaphore inFlight;
+    private Counter pollCounter;
+
+    public DeltaPollScheduler(MsDeltaLinkRepo msDeltaLinkRepo, MsFileEvent msFileEvent,
+                              DeltaActivityTracker deltaActivityTracker, MeterRegistry meterRegistry) {
+        this.msDeltaLinkRepo = msDeltaLinkRepo;
+        this.msFileEvent = msFileEvent;
+        this.deltaActivityTracker = deltaActivityTracker;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        int permits = Math.max(1, maxInFlight);
+        inFlight = new Semaphore(permits);
+        pollCounter = Counter.builder("o365.delta.polls").register(meterRegistry);
+        Gauge.builder("o365.delta.poll.in.flight", inFlight, s -> permits - s.availablePermits())
+                .register(meterRegistry);
+    }
+
+    // 폴링할 때가 된 사용자를 빈 자리만큼 시작한다 (남은 사용자는 다음 틱에서)
+    @Scheduled(fixedDelayString = "${o365.delta.poll.tick-ms:15000}",
+            initialDelayString = "${o365.delta.poll.initial-delay-ms:60000}")
+    public void pollDueUsers() {
+        if (!enabled) {
+            return;
+        }
+        List<String> userIds;
+        try {
+            userIds = msDeltaLinkRepo.findTrackedUserIds();
+        } catch (Exception e) {
+            log.error("Failed to load users for delta polling: {}", e.getMessage(), e);
+            return;
+        }
+        deltaActivityTracker.retain(userIds);
+
+        long now = System.currentTimeMillis();
+        int started = 0;
+        for (String userId : userIds) {
+            if (!deltaActivityTracker.isDue(userId, now)) {
+                continue;
+            }
+            if (!inFlight.tryAcquire()) {
+                break;
+            }
+            deltaActivityTracker.markPolled(userId, now);
+            pollCounter.increment();
+            started++;
+            try {
+                msFileEvent.catchUp(userId).whenComplete((v, ex) -> inFlight.release());
+            } catch (RuntimeException e) {
+                inFlight.release();
+                log.error("Failed to start delta poll for user {}: {}", userId, e.getMessage());
+            }
+        }
+        if (started > 0) {
+            log.info("Started {} delta polls ({} tracked users)", started, userIds.size());
+        }
+    }
+}
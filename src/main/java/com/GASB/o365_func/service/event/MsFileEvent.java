@@ -8,22 +8,26 @@ import com.GASB.o365_func.repository.*;
 import com.GASB.o365_func.service.api_call.MsApiService;
 import com.GASB.o365_func.service.message.MessageSender;
 import com.GASB.o365_func.service.util.FileDownloadUtil;
+import com.GASB.o365_func.service.util.StripedLocks;
 import com.microsoft.graph.models.DriveItem;
 import com.microsoft.graph.requests.GraphServiceClient;
 import jakarta.transaction.Transactional;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class MsFileEvent {
 
     private final FileDownloadUtil fileService;
@@ -37,16 +41,63 @@ public class MsFileEvent {
     private final StoredFileRepo storedFileRepo;
     private final FileDownloadUtil fileDownloadUtil;
     private final FileUploadTableRepo fileUploadTableRepo;
+    private final DeltaCoalescer deltaCoalescer;
+    private final DeltaActivityTracker deltaActivityTracker;
+    private final Executor deltaSyncExecutor;
 
-    public void handleFileEvent(Map<String, Object> payload, String event_type) {
+    private static final int DELETE_LOCK_STRIPES = 64;
+
+    // saas_file_id 단위 락
+    private final StripedLocks deleteLocks = new StripedLocks(DELETE_LOCK_STRIPES);
+
+    public MsFileEvent(FileDownloadUtil fileService, MsApiService msApiService, OrgSaaSRepo orgSaaSRepo,
+                       FileUploadTableRepo fileUploadRepository, MsFileMapper msFileMapper, ActivitiesRepo fileActivityRepo,
+                       MonitoredUsersRepo monitoredUsersRepo, MessageSender messageSender, StoredFileRepo storedFileRepo,
+                       FileDownloadUtil fileDownloadUtil, FileUploadTableRepo fileUploadTableRepo,
+                       DeltaCoalescer deltaCoalescer, DeltaActivityTracker deltaActivityTracker,
+                       @Qualifier("deltaSyncExecutor") Executor deltaSyncExecutor) {
+        this.fileService = fileService;
+        this.msApiService = msApiService;
+        this.orgSaaSRepo = orgSaaSRepo;
+        this.fileUploadRepository = fileUploadRepository;
+        this.msFileMapper = msFileMapper;
+        this.fileActivityRepo = fileActivityRepo;
+        this.monitoredUsersRepo = monitoredUsersRepo;
+        this.messageSender = messageSender;
+        this.storedFileRepo = storedFileRepo;
+        this.fileDownloadUtil = fileDownloadUtil;
+        this.fileUploadTableRepo = fileUploadTableRepo;
+        this.deltaCoalescer = deltaCoalescer;
+        this.deltaActivityTracker = deltaActivityTracker;
+        this.deltaSyncExecutor = deltaSyncExecutor;
+    }
+
+    // 반환되는 future 는 델타 조회와 변경 파일 처리가 끝나면 완료된다 (실패해도 예외 없이 완료)
+    // 이미 같은 사용자의 사이클이 실행 중이면 후속 실행에 합쳐지고 바로 완료된다
+    public CompletableFuture<Void> handleFileEvent(Map<String, Object> payload, String event_type) {
         log.info("Handling file event with payload: {}", payload);
         try {
             log.info("Handling file event with payload: {}", payload);
             String userId = payload.get("userId").toString().split("/")[2];
             log.info("Handling file event with userId: {}", userId);
+            return catchUp(userId);
+        } catch (Exception e) {
+            log.error("Unexpected error processing file event", e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    // 알림 없이 저장된 토큰 이후의 변경분을 가져온다 (구독을 다시 만든 뒤 놓친 변경분 복구 등)
+    // 사용자당 델타 사이클은 하나만 실행하고, 그 사이 들어온 요청은 후속 실행 한 번으로 합친다
+    public CompletableFuture<Void> catchUp(String userId) {
+        return deltaCoalescer.submit(userId, () -> runDeltaCycle(userId));
+    }
+
+    private CompletableFuture<Void> runDeltaCycle(String userId) {
+        try {
             // 사용자 및 SaaS ID 조회
             CompletableFuture<Integer> orgSaasIdFuture = CompletableFuture.supplyAsync(() ->
-                    monitoredUsersRepo.getOrgSaaSId(userId)
+                    monitoredUsersRepo.getOrgSaaSId(userId), deltaSyncExecutor
             );
 
             CompletableFuture<OrgSaaS> orgSaaSObjectFuture = orgSaasIdFuture.thenApply(org_saas_id ->
@@ -56,58 +107,69 @@ public class MsFileEvent {
             CompletableFuture<GraphServiceClient<?>> graphClientFuture = orgSaasIdFuture.thenApply(msApiService::createGraphClient
             );
 
-            // 모든 비동기 작업 완료 후 처리
+            // 델타 페이지를 받는 대로 파이프라인에 넘기고, 모든 항목 처리가 끝나야 토큰이 저장된다
             CompletableFuture<Void> combinedFuture = CompletableFuture.allOf(orgSaasIdFuture, orgSaaSObjectFuture, graphClientFuture)
-                    .thenComposeAsync(v -> graphClientFuture.thenComposeAsync(graphClient ->
-                            msApiService.fetchDeltaInfo(userId, graphClient)
-                                    .thenAcceptAsync(driveItemsWithEventType -> {
-                                        try {
-                                            OrgSaaS orgSaaSObject = orgSaaSObjectFuture.join();  // CompletableFuture에서 결과 가져오기
-                                            int org_saas_id = orgSaasIdFuture.join();
-                                            driveItemsWithEventType.forEach((driveItem, eventType) -> {
-                                                log.info("Processing item: {}, EventType: {}", driveItem, eventType);
-                                                switch (eventType) {
-                                                    case "file_delete" -> handleFileDeleteEvent(driveItem);
-                                                    case "file_change" -> fileService.processAndStoreFile(
-                                                            msFileMapper.OneDriveChangeEvent(driveItem),
-                                                            orgSaaSObject,
-                                                            org_saas_id,
-                                                            "file_change",
-                                                            graphClient
-                                                    );
-                                                    default -> fileService.processAndStoreFile(
-                                                            msFileMapper.toOneDriveEntity(driveItem),
-                                                            orgSaaSObject,
-                                                            org_saas_id,
-                                                            "file_upload",
-                                                            graphClient
-                                                    );
-                                                }
-                                            });
-                                        } catch (Exception e) {
-                                            log.error("Error processing drive items: {}", e.getMessage());
-                                        }
-                                    }).exceptionally(ex -> {
-                                        log.error("Error fetching delta info: {}", ex.getMessage());
-                                        return null;
-                                    })
-                    )).exceptionally(ex -> {
-                        log.error("Error during combined futures: {}", ex.getMessage());
+                    .thenCompose(v -> {
+                        GraphServiceClient<?> graphClient = graphClientFuture.join();
+                        OrgSaaS orgSaaSObject = orgSaaSObjectFuture.join();
+                        int org_saas_id = orgSaasIdFuture.join();
+                        // 토큰이 없거나 만료된 workspace 는 사이클을 건너뛴다 (폴링 간격은 실패로 늘어남)
+                        if (graphClient == null || orgSaaSObject == null) {
+                            return CompletableFuture.failedFuture(new IllegalStateException(
+                                    "No usable graph client for workspace " + org_saas_id));
+                        }
+                        return msApiService.syncDelta(userId, org_saas_id, graphClient,
+                                changes -> dispatchDeltaPage(changes, orgSaaSObject, org_saas_id, graphClient));
+                    })
+                    // 폴링 간격 조정용 (실패한 사이클은 간격을 늘려 다시 시도)
+                    .thenAccept(changes -> deltaActivityTracker.record(userId, changes))
+                    .exceptionally(ex -> {
+                        deltaActivityTracker.recordFailure(userId);
+                        log.error("Error during delta cycle for user {}: {}", userId, ex.getMessage());
                         return null;
                     });
 
             // 비동기 작업 중 예외 처리
-            combinedFuture.exceptionally(ex -> {
+            return combinedFuture.exceptionally(ex -> {
                 log.error("Error occurred while processing file event: {}", ex.getMessage());
                 return null;
             });
 
         } catch (Exception e) {
-            log.error("Unexpected error processing file event", e);
+            deltaActivityTracker.recordFailure(userId);
+            log.error("Unexpected error running delta cycle for user {}", userId, e);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
 
+    // 한 델타 페이지의 항목을 처리하고, 모든 항목이 끝나면 완료되는 future 를 반환 (하나라도 실패하면 실패)
+    private CompletableFuture<Void> dispatchDeltaPage(Map<DriveItem, String> driveItemsWithEventType, OrgSaaS orgSaaSObject,
+                                                      int org_saas_id, GraphServiceClient<?> graphClient) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        driveItemsWithEventType.forEach((driveItem, eventType) -> {
+            log.info("Processing item: {}, EventType: {}", driveItem, eventType);
+            switch (eventType) {
+                case "file_delete" -> handleFileDeleteEvent(driveItem);
+                case "file_change" -> futures.add(fileService.submitFile(
+                        msFileMapper.OneDriveChangeEvent(driveItem),
+                        orgSaaSObject,
+                        org_saas_id,
+                        "file_change",
+                        graphClient
+                ));
+                default -> futures.add(fileService.submitFile(
+                        msFileMapper.toOneDriveEntity(driveItem),
+                        orgSaaSObject,
+                        org_saas_id,
+                        "file_upload",
+                        graphClient
+                ));
+            }
+        });
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
     public void handleFileDeleteEvent(DriveItem item) {
         try {
             // 1. activities 테이블에 deleted 이벤트로 추가
@@ -117,8 +179,6 @@ public class MsFileEvent {
             long timestamp = Instant.now().getEpochSecond();
             log.info("timestamp : {}", timestamp);
 
-            Activities activities = copyForDelete(file_id, timestamp);
-
             String file_hash = fileUploadRepository.findFileHashByFileId(file_id).orElse(null);
 
             if (file_hash == null){
@@ -127,17 +187,22 @@ public class MsFileEvent {
             }
             String s3Path = storedFileRepo.findSavePathByHash(file_hash).orElse(null);
 
-            if (activities == null){
-                log.warn("No recent activities found for file_id: {}", file_id);
-                throw new IllegalStateException("No recent activity found for file: " + file_id);
-            }
+            // 같은 파일의 삭제 이벤트가 동시에 들어와도 delete 활동은 한 번만 기록 (다른 파일은 병렬로 처리)
+            Activities activities;
+            ReentrantLock fileLock = deleteLocks.get(file_id);
+            fileLock.lock();
+            try {
+                activities = copyForDelete(file_id, timestamp);
 
-            // 한번더 검사
-            if(fileActivityRepo.existsAlreadyDeleteFileBySaasFileId(file_id)){
-                log.warn("File already deleted in activity table: {}", file_id);
-                throw new IllegalStateException("File already deleted in activity table: " + file_id);
+                // 한번더 검사
+                if(fileActivityRepo.existsAlreadyDeleteFileBySaasFileId(file_id)){
+                    log.warn("File already deleted in activity table: {}", file_id);
+                    throw new IllegalStateException("File already deleted in activity table: " + file_id);
+                }
+                fileActivityRepo.save(activities);
+            } finally {
+                fileLock.unlock();
             }
-            fileActivityRepo.save(activities);
 
             if (s3Path == null){
                 log.warn("No s3 path found for file_id: {}", file_id);
@@ -153,7 +218,7 @@ public class MsFileEvent {
     }
 
 
-    public synchronized Activities copyForDelete(String file_id, long timestamp){
+    public Activities copyForDelete(String file_id, long timestamp){
         // file_upload테이블에서 delete가 이미 1 처리 되어있으면 null 혹은 activities테이블에서 해당 saas_file_id의 file_delete 이벤트가 있을경우 null
         if (Boolean.TRUE.equals(fileUploadRepository.checkAlreadyDelete(file_id))){
             log.warn("File already deleted: {}", file_id);
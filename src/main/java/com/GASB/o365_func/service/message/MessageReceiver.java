@@ -3,6 +3,7 @@ package com.GASB.o365_func.service.message;
 import com.GASB.o365_func.config.RabbitMQProperties;
 import com.GASB.o365_func.service.MsFileService;
 import com.GASB.o365_func.service.MsInitService;
+import com.GASB.o365_func.service.event.MsFileEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,10 +18,12 @@ import java.util.Map;
 public class MessageReceiver {
     private final MsInitService msInitService;
     private final MsFileService msFileService;
+    private final MsFileEvent msFileEvent;
     @Autowired
-    public MessageReceiver(MsInitService msInitService, MsFileService msFileService) {
+    public MessageReceiver(MsInitService msInitService, MsFileService msFileService, MsFileEvent msFileEvent) {
         this.msInitService = msInitService;
         this.msFileService = msFileService;
+        this.msFileEvent = msFileEvent;
     }
     @RabbitListener(queues = "${rabbitmq.O365_INIT_QUEUE}")
     public void receiveMessage(int message) {
@@ -40,6 +43,17 @@ public class MessageReceiver {
     }
 
 
+    // 웹훅으로 받은 변경 알림 처리. 델타 조회와 파일 처리가 끝날 때까지 기다려야 다음 메시지를 받으므로
+    // 소비자 수 x prefetch 이상으로 몰리지 않는다 (파일 처리 대기열이 차면 여기서 back-pressure)
+    @RabbitListener(queues = "#{@O365WebhookQueue.name}", containerFactory = "webhookListenerContainerFactory")
+    public void receiveWebhookEvent(Map<String, Object> payload) {
+        try {
+            msFileEvent.handleFileEvent(payload, "file_change").join();
+        } catch (Exception e) {
+            log.error("An unexpected error occurred while processing the webhook event: {}", e.getMessage(), e);
+        }
+    }
+
     @RabbitListener(queues = "${rabbitmq.O365_DELETE_QUEUE}")
     public void receiveDeleteMessage(List<Map<String,String>> message){
         try {
@@ -8,20 +8,25 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+
 @Service
 @Slf4j
 public class MessageSender {
 
     private final RabbitTemplate rabbitTemplate;
     private final RabbitTemplate groupingRabbitTemplate;
+    private final RabbitTemplate webhookRabbitTemplate;
     private final RabbitMQProperties properties;
 
     @Autowired
     public MessageSender(@Qualifier("rabbitTemplate") RabbitTemplate rabbitTemplate,
                          @Qualifier("groupingRabbitTemplate") RabbitTemplate groupingRabbitTemplate,
+                         @Qualifier("webhookRabbitTemplate") RabbitTemplate webhookRabbitTemplate,
                          RabbitMQProperties properties) {
         this.rabbitTemplate = rabbitTemplate;
         this.groupingRabbitTemplate = groupingRabbitTemplate;
+        this.webhookRabbitTemplate = webhookRabbitTemplate;
         this.properties = properties;
     }
 
@@ -34,4 +39,9 @@ public class MessageSender {
         groupingRabbitTemplate.convertAndSend(message);
         log.info("Sent message to grouping queue: " + message);
     }
+
+    public void sendWebhookEvent(Map<String, Object> payload) {
+        webhookRabbitTemplate.convertAndSend(payload);
+        log.debug("Sent message to webhook queue: {}", payload);
+    }
 }
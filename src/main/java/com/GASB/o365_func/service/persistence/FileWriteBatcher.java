@@ -0,0 +1,451 @@
+package com.GASB.o365_func.service.persistence;
+
+import com.GASB.o365_func.model.entity.Activities;
+import com.GASB.o365_func.model.entity.FileUploadTable;
+import com.GASB.o365_func.model.entity.StoredFile;
+import com.GASB.o365_func.model.entity.TypeScan;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 파일 메타데이터(stored_file, file_upload, activities, type_scan) 쓰기를 모아서 JDBC 배치로 기록하는 write-behind 단계.
+ * <p>
+ * 호출한 쪽은 요청을 대기열에 넣고 CompletableFuture 로 결과(생성된 ID)를 기다린다. 기록 스레드 하나가
+ * batch-size 개 또는 linger-ms 동안 모인 요청을 한 트랜잭션에서 테이블별 배치로 기록하므로,
+ * 파일마다 exists 조회 + save 를 반복하던 왕복이 배치당 몇 번으로 줄어든다.
+ * 중복 처리:
+ * <ul>
+ *   <li>stored_file / file_upload 는 유니크 키(salted_hash, saas_file_id)로 배치 전체의 기존 행을 한 번에 조회하고,
+ *   없는 것만 INSERT ... ON DUPLICATE KEY UPDATE 로 넣는다 (다른 인스턴스와 동시에 넣어도 실패하지 않음).
+ *   file_upload 의 새 ID 는 생성된 키로 받는다.</li>
+ *   <li>유니크 키가 없는 activities 는 INSERT ... SELECT ... WHERE NOT EXISTS (saas_file_id, event_ts) 로 넣는다.</li>
+ * </ul>
+ * 필요한 인덱스는 resources/db/write_behind_indexes.sql 참고.
+ * 기록 스레드가 하나이므로 같은 키의 쓰기가 서로 겹치지 않는다.
+ */
+@Component
+@Slf4j
+public class FileWriteBatcher {
+
+    private static final String METRIC_PREFIX = "o365.db.batch";
+
+    private static final String INSERT_STORED_FILE =
+            "INSERT INTO stored_file (salted_hash, size, type, save_path) VALUES (?, ?, ?, ?) "
+                    + "ON DUPLICATE KEY UPDATE id = id";
+    private static final String SELECT_STORED_FILE_HASHES =
+            "SELECT salted_hash FROM stored_file WHERE salted_hash IN ";
+    private static final String INSERT_FILE_UPLOAD =
+            "INSERT INTO file_upload (org_saas_id, saas_file_id, salted_hash, upload_ts, deleted) "
+                    + "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE id = id";
+    private static final String SELECT_FILE_UPLOAD_IDS =
+            "SELECT saas_file_id, id FROM file_upload WHERE saas_file_id IN ";
+    // event_ts 가 null 이어도 같은 행으로 보도록 null-safe 비교 (<=>)
+    private static final String INSERT_ACTIVITY =
+            "INSERT INTO activities (user_id, event_type, saas_file_id, file_name, event_ts, upload_channel, tlsh) "
+                    + "SELECT ?, ?, ?, ?, ?, ?, ? FROM DUAL "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM activities WHERE saas_file_id = ? AND event_ts <=> ?)";
+    private static final String DELETE_TYPE_SCANS = "DELETE FROM type_scan WHERE upload_id = ?";
+    private static final String DELETE_FILE_UPLOAD = "DELETE FROM file_upload WHERE id = ?";
+    private static final String DELETE_STORED_FILE = "DELETE FROM stored_file WHERE salted_hash = ?";
+    private static final String INSERT_TYPE_SCAN =
+            "INSERT INTO type_scan (upload_id, correct, mimetype, signature, extension) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+
+    @Value("${o365.db.batch.size:100}")
+    private int batchSize;
+
+    @Value("${o365.db.batch.linger-ms:20}")
+    private long lingerMs;
+
+    private Thread writer;
+    private volatile boolean running;
+    private DistributionSummary batchSizeSummary;
+    private Timer flushTimer;
+
+    public FileWriteBatcher(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // 대기열에 들어가는 쓰기 요청 하나 (파일 기록 또는 타입 검사 결과)
+    private static final class PendingWrite {
+        private final StoredFile storedFile;
+        private final FileUploadTable fileUpload;
+        private final Activities activity;
+        private final Long typeScanUploadId;
+        private final TypeScan typeScan;
+        private final CompletableFuture<FileWriteResult> result = new CompletableFuture<>();
+
+        private Long uploadId;
+        private Long activityId;
+        private boolean storedFileInserted;
+
+        private PendingWrite(StoredFile storedFile, FileUploadTable fileUpload, Activities activity,
+                             Long typeScanUploadId, TypeScan typeScan) {
+            this.storedFile = storedFile;
+            this.fileUpload = fileUpload;
+            this.activity = activity;
+            this.typeScanUploadId = typeScanUploadId;
+            this.typeScan = typeScan;
+        }
+
+        private void reset() {
+            uploadId = null;
+            activityId = null;
+            storedFileInserted = false;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        batchSizeSummary = DistributionSummary.builder(METRIC_PREFIX + ".size")
+                .description("Writes flushed per JDBC batch")
+                .register(meterRegistry);
+        flushTimer = Timer.builder(METRIC_PREFIX + ".flush").register(meterRegistry);
+        running = true;
+        writer = Thread.ofPlatform().daemon(true).name("DbWriteBehind").start(this::writeLoop);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        // 종료 시점에 남은 요청은 바로 기록
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    // 파일 하나의 stored_file / file_upload / activities 를 기록한다
+    public CompletableFuture<FileWriteResult> writeFile(StoredFile storedFile, FileUploadTable fileUpload, Activities activity) {
+        return enqueue(new PendingWrite(storedFile, fileUpload, activity, null, null));
+    }
+
+    // 타입 검사 결과를 기록한다 (typeScan 의 file_upload 대신 uploadId 를 사용)
+    public CompletableFuture<FileWriteResult> writeTypeScan(long uploadId, TypeScan typeScan) {
+        return enqueue(new PendingWrite(null, null, null, uploadId, typeScan));
+    }
+
+    /**
+     * S3 업로드에 실패한 내용의 기록을 되돌린다 (stored_file, 그리고 uploadId 가 있으면 file_upload 와 type_scan).
+     * 저장되지 않은 내용을 저장된 것으로 남겨 두면 같은 내용의 다음 파일도 업로드를 건너뛰므로,
+     * 지워 두어 다음 처리(재시도, 다른 사용자의 같은 파일)가 다시 기록하고 업로드하게 한다.
+     * 드문 경로이므로 대기열을 거치지 않고 바로 한 트랜잭션에서 실행한다 (activities 는 그대로 둔다).
+     */
+    public void rollbackContent(String saltedHash, Long uploadId) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                if (uploadId != null) {
+                    executeUpdate(connection, DELETE_TYPE_SCANS, uploadId);
+                    executeUpdate(connection, DELETE_FILE_UPLOAD, uploadId);
+                }
+                executeUpdate(connection, DELETE_STORED_FILE, saltedHash);
+                connection.commit();
+                return null;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    private static void executeUpdate(Connection connection, String sql, Object parameter) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setObject(1, parameter);
+            statement.executeUpdate();
+        }
+    }
+
+    private CompletableFuture<FileWriteResult> enqueue(PendingWrite write) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Write-behind stage is shut down"));
+        }
+        queue.add(write);
+        return write.result;
+    }
+
+    private void writeLoop() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingWrite first = queue.take();
+                batch.add(first);
+                // 첫 요청이 들어온 뒤 linger-ms 동안 더 모은다
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        long start = System.nanoTime();
+        try {
+            writeInTransaction(batch);
+            batch.forEach(FileWriteBatcher::complete);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                log.error("Failed to write file metadata: {}", e.getMessage(), e);
+                batch.get(0).result.completeExceptionally(e);
+            } else {
+                // 한 건 때문에 배치 전체가 실패하지 않도록 하나씩 다시 기록
+                log.warn("Batch write of {} records failed, retrying one by one: {}", batch.size(), e.getMessage());
+                for (PendingWrite write : batch) {
+                    write.reset();
+                    flush(List.of(write));
+                }
+                return;
+            }
+        }
+        batchSizeSummary.record(batch.size());
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static void complete(PendingWrite write) {
+        write.result.complete(new FileWriteResult(write.uploadId, write.activityId, write.storedFileInserted));
+    }
+
+    private void writeInTransaction(List<PendingWrite> batch) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                // file_upload 가 stored_file.salted_hash 를 참조하므로 stored_file 을 먼저 기록
+                insertStoredFiles(connection, batch);
+                insertFileUploads(connection, batch);
+                insertActivities(connection, batch);
+                insertTypeScans(connection, batch);
+                connection.commit();
+                return null;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    private void insertStoredFiles(Connection connection, List<PendingWrite> batch) throws SQLException {
+        List<PendingWrite> writes = batch.stream().filter(w -> w.storedFile != null).toList();
+        if (writes.isEmpty()) {
+            return;
+        }
+        Set<String> existing = selectKeys(connection, SELECT_STORED_FILE_HASHES,
+                writes.stream().map(w -> w.storedFile.getSaltedHash()).toList()).keySet();
+
+        // 기존에 없던 내용만, 배치 안에서도 처음 나온 것만 넣는다
+        List<PendingWrite> inserts = new ArrayList<>();
+        Set<String> seen = new HashSet<>(existing);
+        for (PendingWrite write : writes) {
+            if (seen.add(write.storedFile.getSaltedHash())) {
+                inserts.add(write);
+            }
+        }
+        if (inserts.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_STORED_FILE)) {
+            for (PendingWrite write : inserts) {
+                StoredFile storedFile = write.storedFile;
+                statement.setString(1, storedFile.getSaltedHash());
+                statement.setInt(2, storedFile.getSize());
+                statement.setString(3, storedFile.getType());
+                statement.setString(4, storedFile.getSavePath());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        inserts.forEach(write -> write.storedFileInserted = true);
+    }
+
+    private void insertFileUploads(Connection connection, List<PendingWrite> batch) throws SQLException {
+        List<PendingWrite> writes = batch.stream().filter(w -> w.fileUpload != null).toList();
+        if (writes.isEmpty()) {
+            return;
+        }
+        Set<String> existing = selectKeys(connection, SELECT_FILE_UPLOAD_IDS,
+                writes.stream().map(w -> w.fileUpload.getSaasFileId()).toList()).keySet();
+
+        List<PendingWrite> inserts = new ArrayList<>();
+        Set<String> seen = new HashSet<>(existing);
+        for (PendingWrite write : writes) {
+            if (seen.add(write.fileUpload.getSaasFileId())) {
+                inserts.add(write);
+            }
+        }
+        if (inserts.isEmpty()) {
+            return;
+        }
+        List<Long> keys;
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_FILE_UPLOAD, Statement.RETURN_GENERATED_KEYS)) {
+            for (PendingWrite write : inserts) {
+                FileUploadTable fileUpload = write.fileUpload;
+                statement.setInt(1, fileUpload.getOrgSaaS().getId());
+                statement.setString(2, fileUpload.getSaasFileId());
+                statement.setString(3, fileUpload.getHash());
+                statement.setObject(4, fileUpload.getTimestamp());
+                statement.setBoolean(5, fileUpload.isDeleted());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            keys = generatedKeys(statement);
+        }
+
+        if (keys.size() == inserts.size()) {
+            for (int i = 0; i < inserts.size(); i++) {
+                inserts.get(i).uploadId = keys.get(i);
+            }
+            return;
+        }
+        // 조회와 INSERT 사이에 다른 인스턴스가 같은 saas_file_id 를 넣은 경우 키 수가 맞지 않으므로
+        // 유니크 키로 다시 조회한다 (이 경우 그 행도 이번 배치가 넣은 것으로 본다)
+        log.warn("Generated keys ({}) do not match inserted file_upload rows ({}), resolving by saas_file_id",
+                keys.size(), inserts.size());
+        Map<String, Long> ids = selectKeys(connection, SELECT_FILE_UPLOAD_IDS,
+                inserts.stream().map(w -> w.fileUpload.getSaasFileId()).toList());
+        for (PendingWrite write : inserts) {
+            write.uploadId = ids.get(write.fileUpload.getSaasFileId());
+        }
+    }
+
+    private void insertActivities(Connection connection, List<PendingWrite> batch) throws SQLException {
+        List<PendingWrite> writes = batch.stream().filter(w -> w.activity != null).toList();
+        if (writes.isEmpty()) {
+            return;
+        }
+        int[] counts;
+        List<Long> keys;
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_ACTIVITY, Statement.RETURN_GENERATED_KEYS)) {
+            for (PendingWrite write : writes) {
+                Activities activity = write.activity;
+                statement.setInt(1, activity.getUser().getId());
+                statement.setString(2, activity.getEventType());
+                statement.setString(3, activity.getSaasFileId());
+                statement.setString(4, activity.getFileName());
+                statement.setObject(5, activity.getEventTs());
+                statement.setString(6, activity.getUploadChannel());
+                statement.setString(7, activity.getTlsh());
+                statement.setString(8, activity.getSaasFileId());
+                statement.setObject(9, activity.getEventTs());
+                statement.addBatch();
+            }
+            counts = statement.executeBatch();
+            keys = generatedKeys(statement);
+        }
+
+        // 생성된 키는 실제로 행이 들어간 문장의 순서대로 돌아온다
+        int inserted = 0;
+        for (int count : counts) {
+            if (count < 0) {
+                // 건별 결과를 알 수 없으면 어떤 행이 들어갔는지 알 수 없으므로 하나씩 다시 기록하게 한다
+                throw new IllegalStateException("Batch returned no per-statement result for activities: " + count);
+            }
+            inserted += count;
+        }
+        if (keys.size() != inserted) {
+            throw new IllegalStateException("Generated keys (" + keys.size() + ") do not match inserted activities (" + inserted + ")");
+        }
+        int keyIndex = 0;
+        for (int i = 0; i < writes.size(); i++) {
+            if (counts[i] > 0) {
+                writes.get(i).activityId = keys.get(keyIndex++);
+            }
+        }
+    }
+
+    private void insertTypeScans(Connection connection, List<PendingWrite> batch) throws SQLException {
+        List<PendingWrite> writes = batch.stream().filter(w -> w.typeScan != null).toList();
+        if (writes.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_TYPE_SCAN)) {
+            for (PendingWrite write : writes) {
+                TypeScan typeScan = write.typeScan;
+                statement.setLong(1, write.typeScanUploadId);
+                statement.setObject(2, typeScan.getCorrect());
+                statement.setString(3, typeScan.getMimetype());
+                statement.setString(4, typeScan.getSignature());
+                statement.setString(5, typeScan.getExtension());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    // 유니크 키 IN 조회 (첫 번째 컬럼: 키, 두 번째 컬럼이 있으면 id)
+    private static Map<String, Long> selectKeys(Connection connection, String selectPrefix, List<String> keys) throws SQLException {
+        Map<String, Long> found = new HashMap<>();
+        List<String> distinct = keys.stream().distinct().toList();
+        if (distinct.isEmpty()) {
+            return found;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(distinct.size(), "?"));
+        try (PreparedStatement statement = connection.prepareStatement(selectPrefix + "(" + placeholders + ")")) {
+            for (int i = 0; i < distinct.size(); i++) {
+                statement.setString(i + 1, distinct.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                boolean hasId = resultSet.getMetaData().getColumnCount() > 1;
+                while (resultSet.next()) {
+                    found.put(resultSet.getString(1), hasId ? resultSet.getLong(2) : null);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static List<Long> generatedKeys(PreparedStatement statement) throws SQLException {
+        List<Long> keys = new ArrayList<>();
+        try (ResultSet resultSet = statement.getGeneratedKeys()) {
+            while (resultSet.next()) {
+                keys.add(resultSet.getLong(1));
+            }
+        }
+        return keys;
+    }
+}
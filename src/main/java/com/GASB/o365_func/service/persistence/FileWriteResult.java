@@ -0,0 +1,18 @@
+package com.GASB.o365_func.service.persistence;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 파일 하나의 메타데이터를 기록한 결과.
+ * 이미 있던 행이라 새로 넣지 않은 경우 해당 ID 는 null 이다.
+ */
+@Getter
+@AllArgsConstructor
+public class FileWriteResult {
+    // file_upload.id (새로 기록된 경우에만 스캔 대상)
+    private final Long uploadId;
+    // activities.id (새로 기록된 경우에만 그룹핑 메시지 발송)
+    private final Long activityId;
+    private final boolean storedFileInserted;
+}
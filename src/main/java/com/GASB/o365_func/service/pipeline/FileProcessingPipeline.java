@@ -0,0 +1,288 @@
+package com.GASB.o365_func.service.pipeline;
+
+import com.GASB.o365_func.config.PipelineProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 파일 처리 엔진.
+ * <p>
+ * 작업은 테넌트(workspace)별 대기열에 쌓이고, 워커는 테넌트를 라운드 로빈으로 돌며 하나씩 꺼내 실행한다.
+ * 전체 대기열 또는 해당 테넌트의 대기열이 가득 차면 submit 이 블록되어 목록을 읽는 쪽(초기 수집, 이벤트 처리)에
+ * back-pressure 가 걸린다. 다운로드/스캔/업로드 단계는 runStage 로 감싸 단계별 동시 실행 수를 따로 제한한다.
+ * <p>
+ * 단계는 중첩해서 실행하지 않는다 (워커가 한 단계의 허가를 쥔 채 다른 단계를 기다리지 않도록).
+ * 예외로 DB, GRAPH 는 단계 안에서 잡을 수 있는 말단 한도이다.
+ * <p>
+ * o365.pipeline.virtual-threads 가 켜져 있으면 워커를 가상 스레드로 만든다. 이때는 워커 수와
+ * DOWNLOAD 한도를 크게 잡아 다운로드를 많이 띄워 두고, DB 커넥션 풀과 Graph 호출량은 DB / GRAPH 한도로 보호한다.
+ */
+@Component
+@Slf4j
+public class FileProcessingPipeline {
+
+    private static final String METRIC_PREFIX = "o365.pipeline";
+
+    private final PipelineProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // 테넌트별 대기열과, 대기 중인 작업이 있는 테넌트의 순서
+    private final Map<Integer, Deque<PipelineTask>> tenantQueues = new HashMap<>();
+    private final Deque<Integer> readyTenants = new ArrayDeque<>();
+    private int queuedTasks;
+
+    // 메트릭용 테넌트별 대기 작업 수 (lock 밖에서 읽힘)
+    private final Map<Integer, AtomicInteger> tenantDepths = new ConcurrentHashMap<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final Map<PipelineStage, Semaphore> stageLimits = new EnumMap<>(PipelineStage.class);
+    private final Map<PipelineStage, AtomicInteger> stageActive = new EnumMap<>(PipelineStage.class);
+    private final Map<PipelineStage, Timer> stageTimers = new EnumMap<>(PipelineStage.class);
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    private Counter submittedCounter;
+    private Counter completedCounter;
+    private Counter failedCounter;
+
+    public FileProcessingPipeline(PipelineProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    private static final class PipelineTask {
+        private final int tenantId;
+        private final Runnable work;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PipelineTask(int tenantId, Runnable work) {
+            this.tenantId = tenantId;
+            this.work = work;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        registerStage(PipelineStage.DOWNLOAD, properties.getDownloadConcurrency());
+        registerStage(PipelineStage.SCAN, properties.getScanConcurrency());
+        registerStage(PipelineStage.UPLOAD, properties.getUploadConcurrency());
+        registerStage(PipelineStage.DB, properties.getDbConcurrency());
+        registerStage(PipelineStage.GRAPH, properties.getGraphConcurrency());
+
+        Gauge.builder(METRIC_PREFIX + ".queue.depth", queueDepth, AtomicInteger::get)
+                .description("Tasks waiting in the file processing queue")
+                .register(meterRegistry);
+        submittedCounter = Counter.builder(METRIC_PREFIX + ".tasks.submitted").register(meterRegistry);
+        completedCounter = Counter.builder(METRIC_PREFIX + ".tasks.completed").register(meterRegistry);
+        failedCounter = Counter.builder(METRIC_PREFIX + ".tasks.failed").register(meterRegistry);
+
+        running = true;
+        int workerCount = Math.max(1, properties.getWorkers());
+        Thread.Builder threadBuilder = properties.isVirtualThreads()
+                ? Thread.ofVirtual().name("FilePipeline-", 1)
+                : Thread.ofPlatform().daemon(true).name("FilePipeline-", 1);
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = threadBuilder.unstarted(this::workLoop);
+            workers.add(worker);
+            worker.start();
+        }
+        log.info("File processing pipeline started: workers={} ({}), queueCapacity={}, tenantQueueCapacity={}",
+                workerCount, properties.isVirtualThreads() ? "virtual" : "platform",
+                properties.getQueueCapacity(), properties.getTenantQueueCapacity());
+    }
+
+    private void registerStage(PipelineStage stage, int concurrency) {
+        String tag = stage.name().toLowerCase(Locale.ROOT);
+        AtomicInteger active = new AtomicInteger();
+        stageLimits.put(stage, new Semaphore(Math.max(1, concurrency)));
+        stageActive.put(stage, active);
+        stageTimers.put(stage, Timer.builder(METRIC_PREFIX + ".stage.duration")
+                .tag("stage", tag)
+                .register(meterRegistry));
+        Gauge.builder(METRIC_PREFIX + ".stage.active", active, AtomicInteger::get)
+                .tag("stage", tag)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 작업을 테넌트 대기열에 넣는다. 대기열이 가득 차 있으면 자리가 날 때까지 블록된다.
+     * 반환된 future 는 작업이 끝나면 완료되고, 작업이 예외를 던지면 예외로 완료된다.
+     */
+    public CompletableFuture<Void> submit(int tenantId, Runnable work) {
+        PipelineTask task = new PipelineTask(tenantId, work);
+        lock.lock();
+        try {
+            while (running && (queuedTasks >= properties.getQueueCapacity()
+                    || tenantSize(tenantId) >= properties.getTenantQueueCapacity())) {
+                notFull.await();
+            }
+            if (!running) {
+                task.future.completeExceptionally(new RejectedExecutionException("File processing pipeline is shut down"));
+                return task.future;
+            }
+            Deque<PipelineTask> queue = tenantQueues.get(tenantId);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                tenantQueues.put(tenantId, queue);
+                readyTenants.addLast(tenantId);
+            }
+            queue.addLast(task);
+            queuedTasks++;
+            queueDepth.incrementAndGet();
+            tenantDepth(tenantId).incrementAndGet();
+            submittedCounter.increment();
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.completeExceptionally(new RejectedExecutionException("Interrupted while waiting for queue space", e));
+        } finally {
+            lock.unlock();
+        }
+        return task.future;
+    }
+
+    // 단계별 동시 실행 수 제한 안에서 work 를 실행 (호출한 스레드에서 실행됨)
+    public <T> T runStage(PipelineStage stage, Supplier<T> work) {
+        Semaphore limit = stageLimits.get(stage);
+        try {
+            limit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for stage " + stage, e);
+        }
+        AtomicInteger active = stageActive.get(stage);
+        active.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            stageTimers.get(stage).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            active.decrementAndGet();
+            limit.release();
+        }
+    }
+
+    public void runStage(PipelineStage stage, Runnable work) {
+        runStage(stage, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    private void workLoop() {
+        while (running) {
+            PipelineTask task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (task == null) {
+                continue;
+            }
+            try {
+                task.work.run();
+                completedCounter.increment();
+                task.future.complete(null);
+            } catch (Throwable t) {
+                failedCounter.increment();
+                task.future.completeExceptionally(t);
+            }
+        }
+    }
+
+    // 대기 중인 테넌트를 라운드 로빈으로 돌며 하나씩 꺼낸다
+    private PipelineTask take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (running && queuedTasks == 0) {
+                notEmpty.await();
+            }
+            if (queuedTasks == 0) {
+                return null;
+            }
+            Integer tenantId = readyTenants.pollFirst();
+            Deque<PipelineTask> queue = tenantQueues.get(tenantId);
+            PipelineTask task = queue.pollFirst();
+            if (queue.isEmpty()) {
+                tenantQueues.remove(tenantId);
+            } else {
+                readyTenants.addLast(tenantId);
+            }
+            queuedTasks--;
+            queueDepth.decrementAndGet();
+            tenantDepth(tenantId).decrementAndGet();
+            // 테넌트별 한도로 기다리는 producer 도 있으므로 모두 깨운다
+            notFull.signalAll();
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int tenantSize(int tenantId) {
+        Deque<PipelineTask> queue = tenantQueues.get(tenantId);
+        return queue != null ? queue.size() : 0;
+    }
+
+    private AtomicInteger tenantDepth(int tenantId) {
+        return tenantDepths.computeIfAbsent(tenantId, id -> {
+            AtomicInteger depth = new AtomicInteger();
+            Gauge.builder(METRIC_PREFIX + ".tenant.queue.depth", depth, AtomicInteger::get)
+                    .tag("workspace", String.valueOf(id))
+                    .register(meterRegistry);
+            return depth;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<PipelineTask> pending = new ArrayList<>();
+        lock.lock();
+        try {
+            running = false;
+            for (Deque<PipelineTask> queue : tenantQueues.values()) {
+                pending.addAll(queue);
+            }
+            tenantQueues.clear();
+            readyTenants.clear();
+            queuedTasks = 0;
+            queueDepth.set(0);
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        pending.forEach(task -> task.future.completeExceptionally(
+                new RejectedExecutionException("File processing pipeline is shut down")));
+        workers.forEach(Thread::interrupt);
+        log.info("File processing pipeline stopped, {} pending tasks dropped", pending.size());
+    }
+}
@@ -0,0 +1,11 @@
+package com.GASB.o365_func.service.pipeline;
+
+// 파일 처리 단계 (해시 계산은 다운로드와 같은 패스에서 수행되므로 DOWNLOAD 에 포함)
+// DB, GRAPH 는 단계 안에서 잡는 공유 자원 한도이며, 그 안에서 다른 단계를 잡지 않는다
+public enum PipelineStage {
+    DOWNLOAD,
+    SCAN,
+    UPLOAD,
+    DB,
+    GRAPH
+}
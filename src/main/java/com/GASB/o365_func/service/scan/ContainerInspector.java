@@ -0,0 +1,196 @@
+package com.GASB.o365_func.service.scan;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ZIP / CFB 컨테이너의 앞부분을 읽어 하위 형식을 판별한다.
+ * 주어진 header 범위 안에서만 읽고, 문자열이나 배열을 만들지 않고 바이트를 그대로 비교한다.
+ */
+final class ContainerInspector {
+
+    private static final int ZIP_LOCAL_HEADER = 0x04034B50;
+    private static final int ZIP_CENTRAL_HEADER = 0x02014B50;
+    private static final int ZIP_END_OF_CENTRAL_DIRECTORY = 0x06054B50;
+    private static final int ZIP_LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP_DATA_DESCRIPTOR_FLAG = 0x08;
+    private static final int ZIP_MAX_ENTRIES = 64;
+
+    private static final byte[] OOXML_CONTENT_TYPES = ascii("[Content_Types].xml");
+    private static final byte[] OOXML_WORD = ascii("word/");
+    private static final byte[] OOXML_EXCEL = ascii("xl/");
+    private static final byte[] OOXML_POWERPOINT = ascii("ppt/");
+    private static final byte[] JAR_MANIFEST = ascii("META-INF/MANIFEST.MF");
+    private static final byte[] APK_MANIFEST = ascii("AndroidManifest.xml");
+    private static final byte[] APK_DEX = ascii("classes.dex");
+    private static final byte[] APK_RESOURCES = ascii("resources.arsc");
+
+    private static final int CFB_SECTOR_SHIFT_OFFSET = 0x1E;
+    private static final int CFB_FIRST_DIR_SECTOR_OFFSET = 0x30;
+    private static final int CFB_DIR_ENTRY_SIZE = 128;
+    private static final int CFB_NAME_LENGTH_OFFSET = 0x40;
+    private static final int CFB_CLSID_OFFSET = 0x50;
+
+    private static final byte[] CFB_WORD = ascii("WordDocument");
+    private static final byte[] CFB_WORKBOOK = ascii("Workbook");
+    private static final byte[] CFB_BOOK = ascii("Book");
+    private static final byte[] CFB_POWERPOINT = ascii("PowerPoint Document");
+    // Windows Installer 루트 저장소의 CLSID {000C1084-0000-0000-C000-000000000046}
+    private static final byte[] MSI_CLSID = {
+            (byte) 0x84, 0x10, 0x0C, 0x00, 0x00, 0x00, 0x00, 0x00,
+            (byte) 0xC0, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x46
+    };
+
+    private ContainerInspector() {
+    }
+
+    // 로컬 파일 헤더를 순서대로 따라가며 항목 이름을 확인한다.
+    // 중앙 디렉터리까지 모든 항목을 확인했으면 PLAIN_ZIP, header 범위나 항목 수 한도 때문에 멈췄으면 generic ZIP
+    static FileFormat inspectZip(byte[] header, int length) {
+        boolean ooxml = false;
+        boolean jar = false;
+        boolean complete = false;
+        long pos = 0;
+        for (int entry = 0; entry <= ZIP_MAX_ENTRIES && pos + 4 <= length; entry++) {
+            int p = (int) pos;
+            int signature = le32(header, p);
+            if (signature == ZIP_CENTRAL_HEADER || signature == ZIP_END_OF_CENTRAL_DIRECTORY) {
+                complete = true;
+                break;
+            }
+            if (entry == ZIP_MAX_ENTRIES || signature != ZIP_LOCAL_HEADER || pos + ZIP_LOCAL_HEADER_SIZE > length) {
+                break;
+            }
+            int flags = le16(header, p + 6);
+            long compressedSize = le32(header, p + 18) & 0xFFFFFFFFL;
+            int nameLength = le16(header, p + 26);
+            int extraLength = le16(header, p + 28);
+            int name = p + ZIP_LOCAL_HEADER_SIZE;
+            if (name + nameLength > length) {
+                break;
+            }
+
+            if (startsWith(header, name, nameLength, OOXML_WORD)) {
+                return FileFormat.DOCX;
+            }
+            if (startsWith(header, name, nameLength, OOXML_EXCEL)) {
+                return FileFormat.XLSX;
+            }
+            if (startsWith(header, name, nameLength, OOXML_POWERPOINT)) {
+                return FileFormat.PPTX;
+            }
+            if (equals(header, name, nameLength, APK_MANIFEST) || equals(header, name, nameLength, APK_DEX)
+                    || equals(header, name, nameLength, APK_RESOURCES)) {
+                return FileFormat.APK;
+            }
+            ooxml |= equals(header, name, nameLength, OOXML_CONTENT_TYPES);
+            // APK 도 META-INF 를 가지므로 바로 결정하지 않고 뒤 항목을 더 본다
+            jar |= equals(header, name, nameLength, JAR_MANIFEST);
+
+            long data = (long) name + nameLength + extraLength;
+            if ((flags & ZIP_DATA_DESCRIPTOR_FLAG) != 0) {
+                // data descriptor 가 뒤따르는 항목은 (크기를 모르면 데이터 시작부터) 다음 헤더(로컬 또는 중앙 디렉터리) 시그니처를 찾아 넘어간다
+                pos = findNextHeader(header, data + compressedSize, length);
+                if (pos < 0) {
+                    break;
+                }
+            } else {
+                pos = data + compressedSize;
+            }
+        }
+        if (ooxml) {
+            return FileFormat.OOXML;
+        }
+        if (jar) {
+            return FileFormat.JAR;
+        }
+        return complete ? FileFormat.PLAIN_ZIP : FileFormat.ZIP;
+    }
+
+    // 첫 번째 디렉터리 섹터가 header 안에 있으면 스트림 이름과 루트 CLSID 로 판별한다
+    static FileFormat inspectCfb(byte[] header, int length) {
+        if (length < CFB_FIRST_DIR_SECTOR_OFFSET + 4) {
+            return FileFormat.CFB;
+        }
+        int sectorShift = le16(header, CFB_SECTOR_SHIFT_OFFSET);
+        if (sectorShift != 9 && sectorShift != 12) {
+            return FileFormat.CFB;
+        }
+        long firstDirSector = le32(header, CFB_FIRST_DIR_SECTOR_OFFSET) & 0xFFFFFFFFL;
+        int sectorSize = 1 << sectorShift;
+        long dirOffset = (firstDirSector + 1) << sectorShift;
+
+        for (int i = 0; i < sectorSize / CFB_DIR_ENTRY_SIZE; i++) {
+            long entryOffset = dirOffset + (long) i * CFB_DIR_ENTRY_SIZE;
+            if (entryOffset + CFB_DIR_ENTRY_SIZE > length) {
+                break;
+            }
+            int e = (int) entryOffset;
+            if (i == 0 && regionEquals(header, e + CFB_CLSID_OFFSET, MSI_CLSID)) {
+                return FileFormat.MSI;
+            }
+            // 이름 길이는 끝의 null 문자를 포함한 UTF-16 바이트 수
+            int nameChars = Math.max(0, le16(header, e + CFB_NAME_LENGTH_OFFSET) / 2 - 1);
+            if (utf16Equals(header, e, nameChars, CFB_WORD)) {
+                return FileFormat.DOC;
+            }
+            if (utf16Equals(header, e, nameChars, CFB_WORKBOOK) || utf16Equals(header, e, nameChars, CFB_BOOK)) {
+                return FileFormat.XLS;
+            }
+            if (utf16Equals(header, e, nameChars, CFB_POWERPOINT)) {
+                return FileFormat.PPT;
+            }
+        }
+        return FileFormat.CFB;
+    }
+
+    private static long findNextHeader(byte[] b, long from, int length) {
+        for (long i = from; i + 4 <= length; i++) {
+            int signature = le32(b, (int) i);
+            if (signature == ZIP_LOCAL_HEADER || signature == ZIP_CENTRAL_HEADER) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int le16(byte[] b, int offset) {
+        return (b[offset] & 0xFF) | (b[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int le32(byte[] b, int offset) {
+        return (b[offset] & 0xFF) | (b[offset + 1] & 0xFF) << 8 | (b[offset + 2] & 0xFF) << 16 | (b[offset + 3] & 0xFF) << 24;
+    }
+
+    private static boolean startsWith(byte[] b, int offset, int length, byte[] prefix) {
+        return length >= prefix.length && regionEquals(b, offset, prefix);
+    }
+
+    private static boolean equals(byte[] b, int offset, int length, byte[] value) {
+        return length == value.length && regionEquals(b, offset, value);
+    }
+
+    private static boolean regionEquals(byte[] b, int offset, byte[] value) {
+        for (int i = 0; i < value.length; i++) {
+            if (b[offset + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean utf16Equals(byte[] b, int offset, int chars, byte[] value) {
+        if (chars != value.length) {
+            return false;
+        }
+        for (int i = 0; i < chars; i++) {
+            if (b[offset + 2 * i] != value[i] || b[offset + 2 * i + 1] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
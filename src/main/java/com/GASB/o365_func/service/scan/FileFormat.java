@@ -0,0 +1,71 @@
+package com.GASB.o365_func.service.scan;
+
+import lombok.Getter;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 내용(시그니처)으로 판별한 파일 형식.
+ * 컨테이너 안을 끝까지 보지 못해 하위 형식을 정할 수 없는 경우(ZIP, OOXML, CFB, XML)는 generic 형식으로 남기고,
+ * 파일 확장자가 그 계열에 속하면 확장자를 그대로 인정한다.
+ * ZIP 의 모든 항목을 확인했는데 하위 형식의 흔적이 없으면 PLAIN_ZIP 으로, zip 확장자만 인정한다.
+ */
+@Getter
+public enum FileFormat {
+
+    // Image files
+    JPG("jpg", "jpeg"),
+    PNG("png"),
+    GIF("gif"),
+    BMP("bmp"),
+    TIFF("tiff", "tif"),
+    WEBP("webp"),
+    ICO("ico"),
+    SVG("svg"),
+
+    // Document files
+    PDF("pdf"),
+    HTML("html", "htm"),
+    XML("xml", "svg", "html"),
+    DOCX("docx"),
+    XLSX("xlsx"),
+    PPTX("pptx"),
+    OOXML("zip", "docx", "xlsx", "pptx"),
+    DOC("doc"),
+    XLS("xls"),
+    PPT("ppt"),
+    CFB("cfb", "doc", "xls", "ppt", "msi"),
+
+    // Executable files
+    EXE("exe", "dll"),
+    MSI("msi"),
+    APK("apk"),
+    JAR("jar"),
+
+    // Compressed files
+    ZIP("zip", "docx", "xlsx", "pptx", "jar", "apk"),
+    PLAIN_ZIP("zip"),
+    RAR("rar"),
+    TAR("tar"),
+    GZ("gz"),
+    SEVEN_ZIP("7z");
+
+    private final String extension;
+    // 이 형식의 내용을 가질 수 있는 다른 확장자
+    private final Set<String> compatibleExtensions;
+
+    FileFormat(String extension, String... compatibleExtensions) {
+        this.extension = extension;
+        this.compatibleExtensions = Set.of(compatibleExtensions);
+    }
+
+    // 검사 결과로 기록할 확장자. 파일 확장자가 이 내용과 맞으면 그 확장자를, 아니면 형식의 대표 확장자를 반환
+    public String resolveExtension(String claimedExtension) {
+        if (claimedExtension == null) {
+            return extension;
+        }
+        String claimed = claimedExtension.toLowerCase(Locale.ROOT);
+        return claimed.equals(extension) || compatibleExtensions.contains(claimed) ? claimed : extension;
+    }
+}
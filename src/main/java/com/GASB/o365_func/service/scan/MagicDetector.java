@@ -0,0 +1,126 @@
+package com.GASB.o365_func.service.scan;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 파일 앞부분(header)으로 형식을 판별하는 시그니처 엔진.
+ * <p>
+ * 시그니처는 시작 위치(offset)별로 묶고, 각 위치마다 그 위치의 첫 바이트로 후보를 바로 찾는 256 칸 표로 컴파일한다.
+ * 후보는 긴 시그니처부터 비교하므로 더 구체적인 형식이 먼저 잡힌다. ZIP 과 CFB 는 컨테이너 안의 항목 이름을 확인해
+ * DOCX/XLSX/PPTX/JAR/APK/PLAIN_ZIP, DOC/XLS/PPT/MSI 로 세분한다. 판별은 read-budget 바이트 안에서만 하며 할당을 하지 않는다.
+ */
+@Component
+public class MagicDetector {
+
+    private static final List<MagicPattern> PATTERNS = List.of(
+            // Image files
+            MagicPattern.hex(FileFormat.JPG, 0, "FFD8FF"),
+            MagicPattern.hex(FileFormat.PNG, 0, "89504E470D0A1A0A"),
+            MagicPattern.ascii(FileFormat.GIF, 0, "GIF87a"),
+            MagicPattern.ascii(FileFormat.GIF, 0, "GIF89a"),
+            MagicPattern.ascii(FileFormat.BMP, 0, "BM"),
+            MagicPattern.hex(FileFormat.TIFF, 0, "49492A00"),
+            MagicPattern.hex(FileFormat.TIFF, 0, "4D4D002A"),
+            MagicPattern.asciiIgnoreCase(FileFormat.WEBP, 0, "RIFF????WEBP"),
+            MagicPattern.hex(FileFormat.ICO, 0, "00000100"),
+            MagicPattern.asciiIgnoreCase(FileFormat.SVG, 0, "<svg"),
+
+            // Document files
+            MagicPattern.ascii(FileFormat.PDF, 0, "%PDF-"),
+            MagicPattern.asciiIgnoreCase(FileFormat.HTML, 0, "<!doctype html"),
+            MagicPattern.asciiIgnoreCase(FileFormat.HTML, 0, "<html"),
+            MagicPattern.ascii(FileFormat.XML, 0, "<?xml"),
+            MagicPattern.hex(FileFormat.CFB, 0, "D0CF11E0A1B11AE1"),
+
+            // Executable files
+            MagicPattern.ascii(FileFormat.EXE, 0, "MZ"),
+
+            // Compressed files
+            MagicPattern.hex(FileFormat.ZIP, 0, "504B0304"),
+            MagicPattern.hex(FileFormat.ZIP, 0, "504B0506"),
+            MagicPattern.hex(FileFormat.RAR, 0, "526172211A07"),
+            MagicPattern.ascii(FileFormat.TAR, 257, "ustar"),
+            MagicPattern.hex(FileFormat.GZ, 0, "1F8B08"),
+            MagicPattern.hex(FileFormat.SEVEN_ZIP, 0, "377ABCAF271C")
+    );
+
+    private static final MagicPattern[] NO_CANDIDATES = new MagicPattern[0];
+
+    // 한 번 판별에 보는 최대 바이트 수 (다운로드 중에 이만큼 보관한다)
+    @Getter
+    private final int readBudget;
+
+    private final int[] offsets;
+    // offsets[i] 위치의 첫 바이트 -> 후보 시그니처 (긴 것부터)
+    private final MagicPattern[][][] tables;
+
+    public MagicDetector(@Value("${scan.detect.read-budget:8192}") int readBudget) {
+        this.readBudget = Math.max(512, readBudget);
+
+        Map<Integer, List<MagicPattern>> byOffset = new TreeMap<>();
+        for (MagicPattern pattern : PATTERNS) {
+            byOffset.computeIfAbsent(pattern.getOffset(), k -> new ArrayList<>()).add(pattern);
+        }
+        this.offsets = new int[byOffset.size()];
+        this.tables = new MagicPattern[byOffset.size()][][];
+        int index = 0;
+        for (Map.Entry<Integer, List<MagicPattern>> entry : byOffset.entrySet()) {
+            List<MagicPattern> patterns = new ArrayList<>(entry.getValue());
+            patterns.sort(Comparator.comparingInt(MagicPattern::length).reversed());
+            MagicPattern[][] table = new MagicPattern[256][];
+            for (int value = 0; value < 256; value++) {
+                int firstByte = value;
+                table[value] = patterns.stream()
+                        .filter(pattern -> pattern.matchesFirstByte(firstByte))
+                        .toArray(MagicPattern[]::new);
+                if (table[value].length == 0) {
+                    table[value] = NO_CANDIDATES;
+                }
+            }
+            offsets[index] = entry.getKey();
+            tables[index] = table;
+            index++;
+        }
+    }
+
+    public FileFormat detect(byte[] header) {
+        return header == null ? null : detect(header, header.length);
+    }
+
+    // 판별하지 못하면 null
+    public FileFormat detect(byte[] header, int length) {
+        if (header == null) {
+            return null;
+        }
+        int limit = Math.min(Math.min(length, header.length), readBudget);
+        for (int i = 0; i < offsets.length; i++) {
+            int offset = offsets[i];
+            if (offset >= limit) {
+                break;
+            }
+            for (MagicPattern pattern : tables[i][header[offset] & 0xFF]) {
+                if (pattern.matches(header, limit)) {
+                    return refine(pattern.getFormat(), header, limit);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static FileFormat refine(FileFormat format, byte[] header, int limit) {
+        return switch (format) {
+            case ZIP -> ContainerInspector.inspectZip(header, limit);
+            case CFB -> ContainerInspector.inspectCfb(header, limit);
+            default -> format;
+        };
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.GASB.o365_func.service.scan;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * offset 위치에서 시작하는 시그니처 하나.
+ * 바이트마다 mask 를 두어 (header[i] & mask[i]) == bytes[i] 로 비교한다.
+ * mask 0x00 은 아무 값이나 허용 (예: RIFF 컨테이너의 길이 필드), 0xDF 는 ASCII 대소문자를 무시한다.
+ */
+@Getter
+public final class MagicPattern {
+
+    private static final byte ANY = 0x00;
+    private static final byte EXACT = (byte) 0xFF;
+    private static final byte CASE_INSENSITIVE = (byte) 0xDF;
+
+    private final FileFormat format;
+    private final int offset;
+    private final byte[] bytes;
+    private final byte[] mask;
+
+    private MagicPattern(FileFormat format, int offset, byte[] bytes, byte[] mask) {
+        this.format = format;
+        this.offset = offset;
+        this.bytes = bytes;
+        this.mask = mask;
+    }
+
+    public static MagicPattern hex(FileFormat format, int offset, String hex) {
+        byte[] bytes = HexFormat.of().parseHex(hex);
+        byte[] mask = new byte[bytes.length];
+        Arrays.fill(mask, EXACT);
+        return new MagicPattern(format, offset, bytes, mask);
+    }
+
+    public static MagicPattern ascii(FileFormat format, int offset, String text) {
+        return hex(format, offset, HexFormat.of().formatHex(text.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    // ASCII 문자는 대소문자를 무시 ('?' 는 아무 바이트나 허용)
+    public static MagicPattern asciiIgnoreCase(FileFormat format, int offset, String text) {
+        byte[] source = text.getBytes(StandardCharsets.US_ASCII);
+        byte[] bytes = new byte[source.length];
+        byte[] mask = new byte[source.length];
+        for (int i = 0; i < source.length; i++) {
+            byte b = source[i];
+            if (b == '?') {
+                mask[i] = ANY;
+                bytes[i] = 0;
+            } else if (Character.isLetter(b)) {
+                mask[i] = CASE_INSENSITIVE;
+                bytes[i] = (byte) (b & CASE_INSENSITIVE);
+            } else {
+                mask[i] = EXACT;
+                bytes[i] = b;
+            }
+        }
+        return new MagicPattern(format, offset, bytes, mask);
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    boolean matchesFirstByte(int value) {
+        return (value & mask[0]) == (bytes[0] & 0xFF);
+    }
+
+    boolean matches(byte[] header, int length) {
+        if (length - offset < bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if ((header[offset + i] & mask[i]) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
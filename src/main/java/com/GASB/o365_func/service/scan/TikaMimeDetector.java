@@ -0,0 +1,126 @@
+package com.GASB.o365_func.service.scan;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.detect.DefaultDetector;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MediaTypeRegistry;
+import org.apache.tika.mime.MimeTypes;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Tika Detector 로 파일 앞부분의 실제 MIME 타입을 판별해 Graph 가 알려준 MIME 타입과 비교한다.
+ * <p>
+ * 파싱은 하지 않고 다운로드 중에 보관한 header(max-bytes 까지)만 Detector 에 넘긴다. Detector 는 pool-size 개를 미리 만들어
+ * 돌려 쓰고, 결과는 내용의 SHA-256 으로 캐시하므로 같은 내용은 한 번만 판별한다. scan.tika.enabled 가 false 이면 아무것도 하지 않는다.
+ */
+@Component
+@Slf4j
+public class TikaMimeDetector {
+
+    @Value("${scan.tika.enabled:false}")
+    private boolean enabled;
+
+    @Value("${scan.tika.pool-size:4}")
+    private int poolSize;
+
+    @Value("${scan.tika.max-bytes:8192}")
+    private int maxBytes;
+
+    @Value("${scan.tika.cache-size:10000}")
+    private int cacheSize;
+
+    private BlockingQueue<Detector> detectors;
+    private Map<String, MediaType> resultCache;
+    private final MediaTypeRegistry registry = MimeTypes.getDefaultMimeTypes().getMediaTypeRegistry();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        int size = Math.max(1, poolSize);
+        detectors = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            detectors.add(new DefaultDetector());
+        }
+        resultCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MediaType> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        log.info("Tika MIME detection enabled: pool={}, maxBytes={}", size, maxBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 판별하지 못했거나 비활성화되어 있으면 null
+    public MediaType detect(String sha256, byte[] header) {
+        if (!enabled || header == null || header.length == 0) {
+            return null;
+        }
+        if (sha256 != null) {
+            MediaType cached = resultCache.get(sha256);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Detector detector;
+        try {
+            detector = detectors.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        MediaType detected;
+        // 파일 이름은 넘기지 않는다 (확장자가 아니라 내용으로만 판별)
+        try (TikaInputStream input = TikaInputStream.get(
+                new ByteArrayInputStream(header, 0, Math.min(header.length, maxBytes)))) {
+            detected = detector.detect(input, new Metadata());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Tika detection failed: {}", e.getMessage());
+            return null;
+        } finally {
+            detectors.add(detector);
+        }
+
+        if (sha256 != null && detected != null) {
+            resultCache.put(sha256, detected);
+        }
+        return detected;
+    }
+
+    /**
+     * 보고된 MIME 타입이 내용과 어긋나지 않는지 확인한다.
+     * 한쪽이 다른 쪽의 상위 타입이면 (예: 내용은 application/zip, 보고는 docx) 맞는 것으로 보고,
+     * 내용으로 판별하지 못한 경우(application/octet-stream)도 판단을 보류한다.
+     */
+    public boolean isConsistent(String reportedMimeType, MediaType detected) {
+        if (detected == null || MediaType.OCTET_STREAM.equals(detected)) {
+            return true;
+        }
+        MediaType reported = reportedMimeType != null ? MediaType.parse(reportedMimeType) : null;
+        if (reported == null) {
+            return true;
+        }
+        reported = registry.normalize(reported.getBaseType());
+        MediaType content = registry.normalize(detected.getBaseType());
+        return registry.isInstanceOf(reported, content) || registry.isInstanceOf(content, reported);
+    }
+}
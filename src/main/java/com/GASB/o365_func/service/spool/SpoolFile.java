@@ -0,0 +1,24 @@
+package com.GASB.o365_func.service.spool;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * 다운로드 작업 하나가 사용하는 스풀 파일.
+ * 경로는 작업마다 고유하며, 예약한 용량은 SpoolManager.release 로 반납한다.
+ */
+@Getter
+public class SpoolFile {
+
+    private final Path path;
+    private final long reservedBytes;
+    private final Instant createdAt;
+
+    SpoolFile(Path path, long reservedBytes) {
+        this.path = path;
+        this.reservedBytes = reservedBytes;
+        this.createdAt = Instant.now();
+    }
+}
@@ -0,0 +1,338 @@
+package com.GASB.o365_func.service.spool;
+
+import com.GASB.o365_func.config.SpoolProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * 다운로드 파일을 두는 로컬 스풀 영역 관리.
+ * <p>
+ * 작업마다 jobs/ 아래에 고유한 경로를 발급하므로 이름이 같은 파일이 동시에 처리되어도 서로 덮어쓰지 않는다.
+ * 발급할 때 예상 크기만큼 용량을 예약하고, 예약 합계가 max-bytes 를 넘으면 다른 작업이 반납할 때까지
+ * 대기한다 (다운로드 단계에 대한 back-pressure). 크기를 모르는 파일은 unknown-size-bytes 만큼 예약한다.
+ * 비정상 종료로 남은 jobs/ 파일은 시작할 때 지운다.
+ * <p>
+ * 실패한 Range 다운로드가 이어 받기용으로 남긴 partial/ 파일은 예약 용량에 잡히지 않으므로, 주기적으로
+ * 보관 기간이 지난 것을 지우고 합계가 partial-max-bytes 를 넘으면 오래된 것부터 지운다.
+ * 다운로드 중인 부분 파일(acquirePartial ~ releasePartial)은 지우지 않는다.
+ */
+@Component
+@Slf4j
+public class SpoolManager {
+
+    private static final String METRIC_PREFIX = "o365.spool";
+    private static final String JOBS_DIR = "jobs";
+    private static final String PARTIAL_DIR = "partial";
+
+    private final SpoolProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private long reservedBytes;
+
+    private final Map<Path, SpoolFile> activeFiles = new ConcurrentHashMap<>();
+
+    // 다운로드 중인 부분 파일 (같은 부분 파일을 쓰는 다운로드는 한 번에 하나만)
+    private final Map<Path, CompletableFuture<Void>> activePartials = new ConcurrentHashMap<>();
+    private volatile long partialBytes;
+
+    private Path jobsPath;
+    private Path partialPath;
+    private Timer waitTimer;
+
+    public SpoolManager(SpoolProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        Path root = Paths.get(properties.getPath()).toAbsolutePath();
+        jobsPath = root.resolve(JOBS_DIR);
+        partialPath = root.resolve(PARTIAL_DIR);
+        try {
+            Files.createDirectories(jobsPath);
+            Files.createDirectories(partialPath);
+        } catch (IOException e) {
+            log.error("Failed to create spool directory: {}", root, e);
+            throw new RuntimeException("Could not create spool directory", e);
+        }
+        cleanupOrphans(root);
+
+        Gauge.builder(METRIC_PREFIX + ".reserved.bytes", this, SpoolManager::getReservedBytes)
+                .description("Bytes reserved by in-flight downloads")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".quota.bytes", properties, SpoolProperties::getMaxBytes)
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".files", activeFiles, Map::size)
+                .description("Spool files currently in use")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".partial.bytes", this, manager -> manager.partialBytes)
+                .description("Bytes kept in partial downloads for resuming")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".oldest.age.seconds", this, SpoolManager::oldestAgeSeconds)
+                .description("Age of the oldest spool file in use")
+                .register(meterRegistry);
+        waitTimer = Timer.builder(METRIC_PREFIX + ".wait")
+                .description("Time spent waiting for spool quota")
+                .register(meterRegistry);
+        log.info("Spool ready: {} (quota {} bytes)", root, properties.getMaxBytes());
+    }
+
+    /**
+     * fileName 을 위한 고유 경로를 발급하고 expectedBytes 만큼 용량을 예약한다.
+     * 용량이 부족하면 자리가 날 때까지 블록된다. 크기를 모르면(0 이하) unknown-size-bytes 만큼 예약한다.
+     */
+    public SpoolFile allocate(String fileName, long expectedBytes) throws InterruptedException {
+        long bytes = expectedBytes > 0 ? expectedBytes : properties.getUnknownSizeBytes();
+        long start = System.nanoTime();
+        lock.lockInterruptibly();
+        try {
+            // 한도보다 큰 파일 하나는 스풀이 비어 있을 때 들어간다 (영원히 대기하지 않도록)
+            while (reservedBytes > 0 && reservedBytes + bytes > properties.getMaxBytes()) {
+                released.await();
+            }
+            reservedBytes += bytes;
+        } finally {
+            lock.unlock();
+        }
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        Path path = jobsPath.resolve(UUID.randomUUID() + "_" + sanitize(fileName));
+        SpoolFile spoolFile = new SpoolFile(path, bytes);
+        activeFiles.put(path, spoolFile);
+        return spoolFile;
+    }
+
+    // 파일이 남아 있으면 지우고 예약한 용량을 반납한다 (여러 번 호출해도 한 번만 반납)
+    public void release(SpoolFile spoolFile) {
+        if (spoolFile == null || activeFiles.remove(spoolFile.getPath()) == null) {
+            return;
+        }
+        try {
+            if (Files.deleteIfExists(spoolFile.getPath())) {
+                log.info("File deleted successfully from local filesystem: {}", spoolFile.getPath());
+            }
+        } catch (IOException e) {
+            log.warn("Failed to delete spool file {}: {}", spoolFile.getPath(), e.getMessage());
+        }
+        lock.lock();
+        try {
+            reservedBytes -= spoolFile.getReservedBytes();
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 이어 받기용 부분 파일 경로. 재시작 후에도 같은 항목이면 같은 경로가 나오도록 항목 ID 와 내용 버전(quickXorHash 또는 cTag/eTag)으로 정한다
+    // (같은 항목의 다른 버전은 서로 다른 부분 파일을 쓴다)
+    public Path partialPath(String fileId, String contentVersion) {
+        String name = sanitize(fileId);
+        if (contentVersion != null && !contentVersion.isBlank()) {
+            // base64 의 '/', '+' 와 패딩은 파일 이름에 쓰지 않는다 (cTag 의 따옴표 등은 sanitize 에서 바뀜)
+            name += "." + contentVersion.replace('+', '-').replace('/', '_').replace("=", "");
+        }
+        return partialPath.resolve(sanitize(name) + ".part");
+    }
+
+    // 부분 파일을 쓰기 전에 호출. 같은 부분 파일을 다른 다운로드가 쓰고 있으면 끝날 때까지 기다린다
+    public void acquirePartial(Path partial) {
+        CompletableFuture<Void> owner = new CompletableFuture<>();
+        CompletableFuture<Void> other;
+        while ((other = activePartials.putIfAbsent(partial, owner)) != null) {
+            other.join();
+        }
+    }
+
+    public void releasePartial(Path partial) {
+        CompletableFuture<Void> owner = activePartials.remove(partial);
+        if (owner != null) {
+            owner.complete(null);
+        }
+    }
+
+    // 보관 기간이 지난 부분 파일을 지우고, 남은 합계가 partial-max-bytes 를 넘으면 오래된 것부터 지운다
+    @Scheduled(fixedDelayString = "${o365.spool.partial-cleanup-interval-ms:600000}",
+            initialDelayString = "${o365.spool.partial-cleanup-interval-ms:600000}")
+    public void cleanupPartials() {
+        // 부분 파일과 체크포인트(.ckpt, .ckpt.tmp)를 부분 파일 경로별로 묶는다
+        Map<Path, List<Path>> groups = new HashMap<>();
+        try (Stream<Path> files = Files.list(partialPath)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(path)) {
+                    groups.computeIfAbsent(partialOf(path), key -> new ArrayList<>()).add(path);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to scan spool directory {}: {}", partialPath, e.getMessage());
+            return;
+        }
+
+        List<PartialGroup> kept = new ArrayList<>();
+        Instant cutoff = Instant.now().minus(Duration.ofHours(properties.getPartialRetentionHours()));
+        int removed = 0;
+        for (Map.Entry<Path, List<Path>> entry : groups.entrySet()) {
+            PartialGroup group = PartialGroup.of(entry.getKey(), entry.getValue());
+            if (group.lastModified.isBefore(cutoff) && deleteIfIdle(group)) {
+                removed++;
+            } else {
+                kept.add(group);
+            }
+        }
+
+        long total = kept.stream().mapToLong(group -> group.bytes).sum();
+        kept.sort(Comparator.comparing(group -> group.lastModified));
+        for (PartialGroup group : kept) {
+            if (total <= properties.getPartialMaxBytes()) {
+                break;
+            }
+            if (deleteIfIdle(group)) {
+                total -= group.bytes;
+                removed++;
+            }
+        }
+        partialBytes = total;
+        if (removed > 0) {
+            log.info("Removed {} partial downloads ({} bytes kept)", removed, total);
+        }
+    }
+
+    // 다운로드 중이 아닐 때만 지운다 (지우는 동안 같은 부분 파일의 다운로드가 시작되지 않도록 맵 안에서 지움)
+    private boolean deleteIfIdle(PartialGroup group) {
+        boolean[] deleted = {false};
+        activePartials.compute(group.partial, (key, owner) -> {
+            if (owner == null) {
+                for (Path path : group.files) {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        log.warn("Failed to delete partial download {}: {}", path, e.getMessage());
+                    }
+                }
+                deleted[0] = true;
+            }
+            return owner;
+        });
+        return deleted[0];
+    }
+
+    private static Path partialOf(Path path) {
+        String name = path.getFileName().toString();
+        int index = name.lastIndexOf(".part");
+        return index < 0 ? path : path.resolveSibling(name.substring(0, index + ".part".length()));
+    }
+
+    private record PartialGroup(Path partial, List<Path> files, long bytes, Instant lastModified) {
+
+        static PartialGroup of(Path partial, List<Path> files) {
+            long bytes = 0;
+            Instant lastModified = Instant.EPOCH;
+            for (Path path : files) {
+                try {
+                    bytes += Files.size(path);
+                    Instant modified = Files.getLastModifiedTime(path).toInstant();
+                    if (modified.isAfter(lastModified)) {
+                        lastModified = modified;
+                    }
+                } catch (IOException e) {
+                    // 그 사이에 지워진 파일
+                }
+            }
+            return new PartialGroup(partial, files, bytes, lastModified);
+        }
+    }
+
+    public long getReservedBytes() {
+        lock.lock();
+        try {
+            return reservedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double oldestAgeSeconds() {
+        Instant now = Instant.now();
+        return activeFiles.values().stream()
+                .mapToLong(file -> Duration.between(file.getCreatedAt(), now).getSeconds())
+                .max()
+                .orElse(0);
+    }
+
+    private void cleanupOrphans(Path root) {
+        int removed = 0;
+        // 시작 시점에는 진행 중인 작업이 없으므로 jobs/ 의 파일은 모두 이전 프로세스가 남긴 것
+        removed += deleteMatching(jobsPath, path -> true);
+        Instant cutoff = Instant.now().minus(Duration.ofHours(properties.getPartialRetentionHours()));
+        removed += deleteMatching(partialPath, path -> isOlderThan(path, cutoff));
+        // 예전 방식(downloads/<file_name>)으로 남은 파일은 이름으로 구분할 수 없으므로 설정한 경우에만 지운다
+        if (properties.isCleanupLegacyFiles()) {
+            removed += deleteMatching(root, path -> true);
+        }
+        if (removed > 0) {
+            log.info("Removed {} orphaned spool files", removed);
+        }
+    }
+
+    private int deleteMatching(Path dir, Predicate<Path> filter) {
+        int removed = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                if (!Files.isRegularFile(path) || !filter.test(path)) {
+                    continue;
+                }
+                try {
+                    Files.deleteIfExists(path);
+                    removed++;
+                } catch (IOException e) {
+                    log.warn("Failed to delete orphaned spool file {}: {}", path, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to scan spool directory {}: {}", dir, e.getMessage());
+        }
+        return removed;
+    }
+
+    private static boolean isOlderThan(Path path, Instant cutoff) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant().isBefore(cutoff);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String sanitize(String name) {
+        if (name == null || name.isBlank()) {
+            return "file";
+        }
+        return name.replaceAll("[\\\\/:*?\"<>|\\x00-\\x1f]", "_");
+    }
+}
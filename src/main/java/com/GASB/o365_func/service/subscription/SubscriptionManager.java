@@ -0,0 +1,248 @@
+package com.GASB.o365_func.service.subscription;
+
+import com.GASB.o365_func.model.entity.MonitoredUsers;
+import com.GASB.o365_func.model.entity.MsSubscription;
+import com.GASB.o365_func.repository.MonitoredUsersRepo;
+import com.GASB.o365_func.repository.MsSubscriptionRepo;
+import com.GASB.o365_func.repository.WorkSpaceConfigRepo;
+import com.GASB.o365_func.service.api_call.MsApiService;
+import com.GASB.o365_func.service.event.MsFileEvent;
+import com.GASB.o365_func.service.pipeline.FileProcessingPipeline;
+import com.GASB.o365_func.service.pipeline.PipelineStage;
+import com.microsoft.graph.http.GraphServiceException;
+import com.microsoft.graph.models.Subscription;
+import com.microsoft.graph.requests.GraphServiceClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 웹훅 구독 수명 관리.
+ * <p>
+ * 만든 구독의 id 와 만료 시각을 ms_subscription 에 저장하고, 만료 전에 주기적으로 갱신한다.
+ * 구독마다 id 로 정해지는 지연(spread-minutes 안)을 두어 같은 시각에 만든 구독들의 갱신이 한꺼번에 몰리지 않게 하고,
+ * 갱신은 batch-size 개씩 병렬로, 한 번의 점검에서 최대 max-per-run 개까지만 수행한다.
+ * 이미 만료되었거나 Graph 에서 사라진 구독은 다시 만들고, 그 사이 놓친 변경분을 delta 로 가져온다.
+ */
+@Service
+@Slf4j
+public class SubscriptionManager {
+
+    private static final int NOT_FOUND = 404;
+
+    private final MsSubscriptionRepo msSubscriptionRepo;
+    private final MonitoredUsersRepo monitoredUsersRepo;
+    private final WorkSpaceConfigRepo workSpaceConfigRepo;
+    private final MsApiService msApiService;
+    private final MsFileEvent msFileEvent;
+    private final FileProcessingPipeline fileProcessingPipeline;
+    private final Executor graphCrawlExecutor;
+
+    private final Counter renewedCounter;
+    private final Counter recreatedCounter;
+    private final Counter failedCounter;
+
+    // Graph 가 driveItem 구독에 허용하는 최대 만료 시간 (42300 분, 약 29 일)
+    @Value("${o365.subscription.expiration-minutes:42300}")
+    private long expirationMinutes;
+
+    @Value("${o365.subscription.renew-ahead-minutes:720}")
+    private long renewAheadMinutes;
+
+    @Value("${o365.subscription.spread-minutes:720}")
+    private long spreadMinutes;
+
+    @Value("${o365.subscription.batch-size:8}")
+    private int batchSize;
+
+    @Value("${o365.subscription.max-per-run:200}")
+    private int maxPerRun;
+
+    public SubscriptionManager(MsSubscriptionRepo msSubscriptionRepo, MonitoredUsersRepo monitoredUsersRepo,
+                               WorkSpaceConfigRepo workSpaceConfigRepo, MsApiService msApiService,
+                               MsFileEvent msFileEvent, FileProcessingPipeline fileProcessingPipeline,
+                               @Qualifier("graphCrawlExecutor") Executor graphCrawlExecutor,
+                               MeterRegistry meterRegistry) {
+        this.msSubscriptionRepo = msSubscriptionRepo;
+        this.monitoredUsersRepo = monitoredUsersRepo;
+        this.workSpaceConfigRepo = workSpaceConfigRepo;
+        this.msApiService = msApiService;
+        this.msFileEvent = msFileEvent;
+        this.fileProcessingPipeline = fileProcessingPipeline;
+        this.graphCrawlExecutor = graphCrawlExecutor;
+        this.renewedCounter = Counter.builder("o365.subscription.renewals").tag("result", "renewed").register(meterRegistry);
+        this.recreatedCounter = Counter.builder("o365.subscription.renewals").tag("result", "recreated").register(meterRegistry);
+        this.failedCounter = Counter.builder("o365.subscription.renewals").tag("result", "failed").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (renewAheadMinutes + spreadMinutes >= expirationMinutes) {
+            log.warn("o365.subscription renew-ahead ({}) + spread ({}) minutes exceed the expiration ({}), renewing right after creation",
+                    renewAheadMinutes, spreadMinutes, expirationMinutes);
+        }
+        batchSize = Math.max(1, batchSize);
+    }
+
+    // 사용자 드라이브 구독을 만들고 저장한다. 이전 구독이 있으면 Graph 에서 지우고 새 구독으로 바꾼다.
+    public MsSubscription createSubscription(GraphServiceClient<?> graphClient, String userId, int workspaceId) {
+        String notificationUrl = workSpaceConfigRepo.findWebhookUrlById(workspaceId).orElse(null);
+        if (notificationUrl == null) {
+            log.error("Failed to create subscription for user {}: Notification URL is null", userId);
+            throw new IllegalArgumentException("Notification URL cannot be null");
+        }
+        MonitoredUsers monitoredUser = monitoredUsersRepo.findByUserIdAndOrgSaaSId(userId, workspaceId)
+                .orElseThrow(() -> new IllegalStateException("Monitored user not found: " + userId));
+
+        Subscription subscription = new Subscription();
+        subscription.changeType = "updated";
+        subscription.notificationUrl = notificationUrl;
+        subscription.resource = "/users/" + userId + "/drive/root";
+        subscription.expirationDateTime = OffsetDateTime.now(ZoneOffset.UTC).plusMinutes(expirationMinutes);
+        subscription.clientState = UUID.randomUUID().toString();
+
+        Subscription created = fileProcessingPipeline.runStage(PipelineStage.GRAPH, () -> graphClient.subscriptions()
+                .buildRequest()
+                .post(subscription));
+
+        LocalDateTime expiration = toUtc(created.expirationDateTime != null ? created.expirationDateTime : subscription.expirationDateTime);
+        MsSubscription previous = msSubscriptionRepo.findByUserIdx(monitoredUser.getId()).orElse(null);
+        MsSubscription saved;
+        if (previous != null
+                && msSubscriptionRepo.replaceSubscription(monitoredUser.getId(), created.id, subscription.clientState, expiration) > 0) {
+            // 기존 행을 그 자리에서 바꾼다 (지우고 다시 넣는 사이에 실패해 구독 기록이 사라지지 않도록)
+            saved = MsSubscription.builder()
+                    .id(previous.getId())
+                    .monitoredUsers(monitoredUser)
+                    .subscriptionId(created.id)
+                    .clientState(subscription.clientState)
+                    .expiration(expiration)
+                    .build();
+        } else {
+            saved = msSubscriptionRepo.save(MsSubscription.builder()
+                    .monitoredUsers(monitoredUser)
+                    .subscriptionId(created.id)
+                    .clientState(subscription.clientState)
+                    .expiration(expiration)
+                    .build());
+        }
+        // 새 구독이 기록된 뒤에 이전 구독을 지운다 (알림이 끊기는 구간이 없도록)
+        if (previous != null && !previous.getSubscriptionId().equals(created.id)) {
+            deleteQuietly(graphClient, previous.getSubscriptionId());
+        }
+        log.info("Created subscription for user {}: {} (expires {})", userId, created.id, saved.getExpiration());
+        return saved;
+    }
+
+    // 갱신할 때가 된 구독을 batch-size 개씩 갱신.
+    // 묶음마다 끝날 때까지 기다리므로 스케줄러 풀(spring.task.scheduling.pool.size)은 스레드가 여럿이어야
+    // 그동안 delta 폴링과 스풀 정리가 밀리지 않는다
+    @Scheduled(fixedDelayString = "${o365.subscription.check-interval-ms:300000}",
+            initialDelayString = "${o365.subscription.initial-delay-ms:60000}")
+    public void renewDueSubscriptions() {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        List<MsSubscription> due;
+        try {
+            due = msSubscriptionRepo.findExpiringBefore(now.plusMinutes(renewAheadMinutes + spreadMinutes)).stream()
+                    .filter(s -> !now.isBefore(renewAt(s)))
+                    .limit(maxPerRun)
+                    .toList();
+        } catch (Exception e) {
+            log.error("Failed to load subscriptions due for renewal: {}", e.getMessage(), e);
+            return;
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        log.info("Renewing {} subscriptions", due.size());
+
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<MsSubscription> batch = due.subList(from, Math.min(from + batchSize, due.size()));
+            CompletableFuture.allOf(batch.stream()
+                    .map(s -> CompletableFuture.runAsync(() -> renew(s, now), graphCrawlExecutor))
+                    .toArray(CompletableFuture[]::new)).join();
+        }
+    }
+
+    // 만료 시각에서 renew-ahead 와 구독별 지연을 뺀 시각 (같은 구독은 항상 같은 지연)
+    private LocalDateTime renewAt(MsSubscription subscription) {
+        long spread = spreadMinutes > 0 ? Math.floorMod(subscription.getSubscriptionId().hashCode(), spreadMinutes + 1) : 0;
+        return subscription.getExpiration().minusMinutes(renewAheadMinutes + spread);
+    }
+
+    private void renew(MsSubscription subscription, LocalDateTime now) {
+        MonitoredUsers monitoredUser = subscription.getMonitoredUsers();
+        String userId = monitoredUser.getUserId();
+        int workspaceId = monitoredUser.getOrgSaaS().getId();
+        try {
+            GraphServiceClient<?> graphClient = msApiService.createGraphClient(workspaceId);
+            if (graphClient == null) {
+                log.warn("No graph client for workspace {}, skipping renewal of subscription for user {}", workspaceId, userId);
+                failedCounter.increment();
+                return;
+            }
+
+            // 이미 만료된 구독은 Graph 에서 지워지므로 갱신할 수 없다
+            if (!subscription.getExpiration().isAfter(now)) {
+                recreate(graphClient, userId, workspaceId, "expired");
+                return;
+            }
+
+            try {
+                Subscription patch = new Subscription();
+                patch.expirationDateTime = OffsetDateTime.now(ZoneOffset.UTC).plusMinutes(expirationMinutes);
+                Subscription renewed = fileProcessingPipeline.runStage(PipelineStage.GRAPH, () -> graphClient
+                        .subscriptions(subscription.getSubscriptionId())
+                        .buildRequest()
+                        .patch(patch));
+                msSubscriptionRepo.updateExpiration(subscription.getId(),
+                        toUtc(renewed != null && renewed.expirationDateTime != null ? renewed.expirationDateTime : patch.expirationDateTime));
+                renewedCounter.increment();
+                log.info("Renewed subscription for user {}: {}", userId, subscription.getSubscriptionId());
+            } catch (GraphServiceException e) {
+                if (e.getResponseCode() != NOT_FOUND) {
+                    throw e;
+                }
+                recreate(graphClient, userId, workspaceId, "missing");
+            }
+        } catch (Exception e) {
+            failedCounter.increment();
+            log.error("Failed to renew subscription {} for user {}: {}", subscription.getSubscriptionId(), userId, e.getMessage());
+        }
+    }
+
+    private void recreate(GraphServiceClient<?> graphClient, String userId, int workspaceId, String reason) {
+        log.warn("Subscription for user {} is {}, recreating", userId, reason);
+        createSubscription(graphClient, userId, workspaceId);
+        recreatedCounter.increment();
+        // 구독이 없던 동안 놓친 변경분은 저장된 delta 토큰부터 다시 가져온다
+        msFileEvent.catchUp(userId);
+    }
+
+    private void deleteQuietly(GraphServiceClient<?> graphClient, String subscriptionId) {
+        try {
+            fileProcessingPipeline.runStage(PipelineStage.GRAPH, () -> graphClient.subscriptions(subscriptionId)
+                    .buildRequest()
+                    .delete());
+        } catch (Exception e) {
+            log.warn("Failed to delete previous subscription {}: {}", subscriptionId, e.getMessage());
+        }
+    }
+
+    private static LocalDateTime toUtc(OffsetDateTime dateTime) {
+        return dateTime.withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+    }
+}
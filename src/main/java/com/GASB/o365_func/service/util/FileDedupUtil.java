@@ -0,0 +1,97 @@
+package com.GASB.o365_func.service.util;
+
+import com.GASB.o365_func.repository.StoredFileRepo;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 내용 기반(SHA-256) 중복 제거.
+ * StoredFileRepo 앞에 LRU 캐시를 두어 이미 저장된 내용인지 빠르게 확인하고,
+ * Graph 가 알려주는 quickXorHash 로 이미 처리한 내용을 찾으면 다운로드 자체를 건너뛸 수 있게 한다.
+ */
+@Component
+@Slf4j
+public class FileDedupUtil {
+
+    private final StoredFileRepo storedFileRepo;
+
+    // SHA-256 -> 저장 여부 (저장된 것만 캐시)
+    private final Map<String, Boolean> storedHashes;
+
+    // quickXorHash -> 이전에 처리한 내용 정보
+    private final Map<String, DedupEntry> quickXorIndex;
+
+    public FileDedupUtil(StoredFileRepo storedFileRepo,
+                         @Value("${file.dedup.cache-size:10000}") int cacheSize) {
+        this.storedFileRepo = storedFileRepo;
+        this.storedHashes = Collections.synchronizedMap(lruMap(cacheSize));
+        this.quickXorIndex = Collections.synchronizedMap(lruMap(cacheSize));
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class DedupEntry {
+        private final String hash;
+        private final String tlsh;
+        private final byte[] header;
+    }
+
+    public boolean isStored(String hash) {
+        if (hash == null) {
+            return false;
+        }
+        if (storedHashes.containsKey(hash)) {
+            return true;
+        }
+        boolean stored = storedFileRepo.existsBySaltedHash(hash);
+        if (stored) {
+            storedHashes.put(hash, Boolean.TRUE);
+        }
+        return stored;
+    }
+
+    public void markStored(String hash) {
+        if (hash != null) {
+            storedHashes.put(hash, Boolean.TRUE);
+        }
+    }
+
+    // 다운로드 없이 처리할 수 있는 내용인지 확인 (캐시와 DB 모두에 저장되어 있어야 함)
+    public DedupEntry findByQuickXorHash(String quickXorHash) {
+        if (quickXorHash == null) {
+            return null;
+        }
+        DedupEntry entry = quickXorIndex.get(quickXorHash);
+        if (entry == null) {
+            return null;
+        }
+        if (!isStored(entry.getHash())) {
+            quickXorIndex.remove(quickXorHash);
+            return null;
+        }
+        return entry;
+    }
+
+    public void remember(String quickXorHash, DedupEntry entry) {
+        if (quickXorHash == null || entry == null || entry.getHash() == null) {
+            return;
+        }
+        quickXorIndex.put(quickXorHash, entry);
+    }
+
+    private static <K, V> Map<K, V> lruMap(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
@@ -1,20 +1,24 @@
 package com.GASB.o365_func.service.util;
 
+import com.GASB.o365_func.model.dto.MsDownloadResultDto;
 import com.GASB.o365_func.model.dto.MsFileInfoDto;
 import com.GASB.o365_func.model.entity.*;
 import com.GASB.o365_func.model.mapper.MsFileMapper;
 import com.GASB.o365_func.repository.*;
 import com.GASB.o365_func.service.message.MessageSender;
-import com.GASB.o365_func.tlsh.Tlsh;
-import com.GASB.o365_func.tlsh.TlshCreator;
+import com.GASB.o365_func.service.persistence.FileWriteBatcher;
+import com.GASB.o365_func.service.persistence.FileWriteResult;
+import com.GASB.o365_func.service.pipeline.FileProcessingPipeline;
+import com.GASB.o365_func.service.pipeline.PipelineStage;
+import com.GASB.o365_func.service.scan.MagicDetector;
+import com.GASB.o365_func.service.spool.SpoolFile;
+import com.GASB.o365_func.service.spool.SpoolManager;
+import com.google.gson.JsonElement;
+import com.microsoft.graph.models.DriveItem;
 import com.microsoft.graph.requests.GraphServiceClient;
-import jakarta.annotation.PostConstruct;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -26,15 +30,18 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
@@ -47,87 +54,94 @@ public class FileDownloadUtil {
     @Value("{aes.key}")
     private String key;
 
+    // quickXorHash 불일치 처리: strict (항상 실패), lenient (사이트 드라이브와 Office 문서는 경고만), warn (항상 경고만)
+    @Value("${file.download.quick-xor-hash.mode:lenient}")
+    private String quickXorHashMode;
+
+    // quickXorHash 는 충돌을 만들기 쉬우므로 기본적으로 다운로드를 건너뛰는 데 쓰지 않는다 (다운로드와 검사는 하고 SHA-256 으로 중복 판단).
+    // true 이면 이미 처리한 quickXorHash 와 같은 파일은 다운로드 없이 이전 결과를 재사용한다
+    @Value("${file.dedup.trust-quick-xor-hash:false}")
+    private boolean trustQuickXorHash;
+
     private final RestTemplate restTemplate;
-    private final StoredFileRepo storedFileRepo;
-    private final ActivitiesRepo activitiesRepo;
     private final MessageSender messageSender;
-    private final FileUploadTableRepo fileUploadTableRepo;
     private final S3Client s3Client;
     private final MsFileMapper msFileMapper;
     private final MonitoredUsersRepo monitoredUsersRepo;
     private final ScanUtil scanUtil;
     private final FileEncUtil fileEncUtil;
+    private final FileDedupUtil fileDedupUtil;
+    private final FileProcessingPipeline fileProcessingPipeline;
+    private final FileWriteBatcher fileWriteBatcher;
 
+    // 저장(기록 + 업로드) 중인 내용 (같은 내용을 두 번 업로드하지 않도록)
+    private final Map<String, CompletableFuture<Void>> contentInFlight = new ConcurrentHashMap<>();
+    private final RangeDownloader rangeDownloader;
+    private final SpoolManager spoolManager;
+    // 시그니처 검사에 쓸 파일 앞부분을 다운로드 중에 read-budget 만큼 보관한다
+    private final MagicDetector magicDetector;
 
-    private static final String HASH_ALGORITHM = "SHA-256";
-    private static final Path BASE_PATH = Paths.get("downloads");
 
-    @PostConstruct
-    public void init() {
-        try {
-            Files.createDirectories(BASE_PATH);
-            log.info("Base path directory created or already exists: {}", BASE_PATH.toAbsolutePath());
-        } catch (IOException e) {
-            log.error("Failed to create base path directory: {}", BASE_PATH.toAbsolutePath(), e);
-            throw new RuntimeException("Could not create base directory", e);
-        }
-    }
 
-    @Async("threadPoolTaskExecutor")
-    @Transactional
+    // 화면 표시용 경로 (실제 파일은 SpoolManager 가 발급한 경로에 저장)
+    private static final Path BASE_PATH = Paths.get("downloads");
+    private static final int BUFFER_SIZE = 8192;
+    private static final int RANGED_DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    // 파일 하나의 처리를 처리 엔진에 맡긴다. 대기열이 가득 차 있으면 자리가 날 때까지 블록된다 (back-pressure).
     public CompletableFuture<Void> processAndStoreFile(MsFileInfoDto file, OrgSaaS orgSaaSObject, int workspaceId, String event_type, GraphServiceClient graphClient) {
+        return submitFile(file, orgSaaSObject, workspaceId, event_type, graphClient)
+                .exceptionally(ex -> null);
+    }
 
-        return downloadFileAsync(file.getFile_download_url(),file, graphClient)
-                .thenApply(fileData -> {
-                    try {
-                        return handleFileProcessing(file, orgSaaSObject, fileData, workspaceId, event_type);
-                    } catch (IOException | NoSuchAlgorithmException e) {
-                        throw new RuntimeException("File processing failed", e);
+    // processAndStoreFile 과 같지만 실패를 그대로 전달한다 (delta 사이클이 토큰 저장 여부를 판단할 때 사용)
+    public CompletableFuture<Void> submitFile(MsFileInfoDto file, OrgSaaS orgSaaSObject, int workspaceId, String event_type, GraphServiceClient graphClient) {
+        return fileProcessingPipeline.submit(workspaceId,
+                        () -> processFile(file, orgSaaSObject, workspaceId, event_type, graphClient))
+                .whenComplete((v, ex) -> {
+                    if (ex != null) {
+                        log.error("Error processing file: {}", file.getFile_name(), ex);
                     }
-                })
-                .exceptionally(ex -> {
-                    log.error("Error processing file: {}", file.getFile_name(), ex);
-                    return null;
                 });
     }
-    @Async("threadPoolTaskExecutor")
-    public CompletableFuture<byte[]> downloadFileAsync(String fileUrl, MsFileInfoDto fileData, GraphServiceClient graphClient) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return downloadFileWithSDK(BASE_PATH.resolve(fileData.file_name).toString(), fileData, graphClient);
-            } catch (Exception e) {
-                log.error("Error downloading file: {}", fileUrl, e);
-                throw new RuntimeException("File download failed", e);
-            }
-        }).exceptionally(ex -> {
-            log.error("Async error occurred during file download: {}", fileUrl, ex);
-            return null; // 또는 예외 상황에서 반환할 기본값
-        });
-    }
 
+    private void processFile(MsFileInfoDto file, OrgSaaS orgSaaSObject, int workspaceId, String event_type, GraphServiceClient graphClient) {
+
+        // Graph 의 quickXorHash 를 믿도록 설정한 경우에만, 이미 저장된 내용이면 다운로드하지 않는다
+        FileDedupUtil.DedupEntry knownContent = trustQuickXorHash
+                ? fileProcessingPipeline.runStage(PipelineStage.DB, () -> fileDedupUtil.findByQuickXorHash(file.getFile_quick_xor_hash()))
+                : null;
+        if (knownContent != null) {
+            log.info("Known content by quickXorHash, skipping download: {}", file.getFile_name());
+            storeFileData(file, orgSaaSObject, workspaceId, event_type,
+                    knownContent.getHash(), knownContent.getTlsh(), knownContent.getHeader(), null, false,
+                    file.getFile_quick_xor_hash());
+            return;
+        }
 
-    private byte[] downloadFileWithSDK(String filePath, MsFileInfoDto file, GraphServiceClient graphClient) {
+        // 스풀 용량이 부족하면 여기서 대기한다 (다운로드 단계 한도를 잡기 전에 대기)
+        SpoolFile spoolFile;
         try {
-            // Microsoft Graph API를 통한 파일 다운로드
-            InputStream inputStream;
-            if (file.isOneDrive()) {
-                inputStream = graphClient.users(file.getFile_owner_id())
-                        .drive()
-                        .items(file.getFile_id())
-                        .content()
-                        .buildRequest()
-                        .get();
-            } else if (!file.isOneDrive()) {
-                inputStream = graphClient.sites(file.getSite_id())
-                        .drive()
-                        .items(file.getFile_id())
-                        .content()
-                        .buildRequest()
-                        .get();
-            } else {
-                throw new IllegalArgumentException("Unsupported file source.");
-            }
+            spoolFile = spoolManager.allocate(file.getFile_name(), file.getFile_size() != null ? file.getFile_size() : 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for spool space: " + file.getFile_name(), e);
+        }
+        try {
+            MsDownloadResultDto downloadResult = fileProcessingPipeline.runStage(PipelineStage.DOWNLOAD,
+                    () -> downloadFileWithSDK(spoolFile.getPath().toString(), file, graphClient, workspaceId));
+            handleFileProcessing(file, orgSaaSObject, downloadResult, workspaceId, event_type);
+        } finally {
+            // 검사/업로드가 끝났거나 중간에 실패한 경우 모두 스풀 파일을 정리하고 용량을 반납
+            spoolManager.release(spoolFile);
+        }
+    }
 
+    // 다운로드 스트림을 한 번만 읽으면서 파일 저장, SHA-256, TLSH 계산을 동시에 수행한다.
+    // 파일 전체를 byte[] 로 들고 있지 않고 고정 크기 버퍼 하나만 사용한다.
+    private MsDownloadResultDto downloadFileWithSDK(String filePath, MsFileInfoDto file, GraphServiceClient graphClient,
+                                                    int workspaceId) {
+        try {
             // 절대 경로로 변환하여 출력
             Path absolutePath = Paths.get(filePath).toAbsolutePath();
             log.info("Saving file to absolute path: {}", absolutePath);
@@ -142,39 +156,157 @@ public class FileDownloadUtil {
                 Files.createDirectories(parentDir);
             }
 
-            // 바이트 배열로 데이터를 다운로드 및 저장
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                 FileOutputStream fileOutputStream = new FileOutputStream(absolutePath.toString())) {
-
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
+            StreamingFileDigest digest;
+            if (rangeDownloader.supports(file.getFile_size(), file.getFile_download_url())) {
+                // 큰 파일은 downloadUrl 에 Range 요청으로 구간을 나눠 받고, 중단되면 체크포인트부터 이어 받는다
+                downloadRanged(absolutePath, file, graphClient, workspaceId);
+                digest = digestFile(absolutePath);
+            } else {
+                digest = new StreamingFileDigest(magicDetector.getReadBudget());
+
+                // Microsoft Graph API를 통한 파일 다운로드
+                // Graph 요청(리다이렉트 포함)만 GRAPH 한도 안에서 열고, 본문은 한도 밖에서 읽는다
+                try (InputStream inputStream = fileProcessingPipeline.runStage(PipelineStage.GRAPH, () -> openContentStream(file, graphClient));
+                     OutputStream fileOutputStream = new BufferedOutputStream(Files.newOutputStream(absolutePath), BUFFER_SIZE)) {
+
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int bytesRead;
+                    while ((bytesRead = inputStream.read(buffer)) != -1) {
+                        fileOutputStream.write(buffer, 0, bytesRead);
+                        digest.update(buffer, 0, bytesRead);
+                    }
+                } catch (IOException e) {
+                    log.error("IO error while downloading file: {}", e.getMessage(), e);
+                    throw new RuntimeException("File download failed", e);
                 }
-                outputStream.writeTo(fileOutputStream);
-
-                byte[] fileData = outputStream.toByteArray();
-                long downloadedSize = fileData.length;
-
-                log.info("File size: {} bytes", downloadedSize);
-                log.info("Download Successful, FileName: {}, File SavePath: {}", file.getFile_name(), absolutePath);
-
-                return fileData;
+            }
 
-            } catch (IOException e) {
-                log.error("IO error while downloading file: {}", e.getMessage(), e);
-                throw new RuntimeException("File download failed", e);
+            log.info("File size: {} bytes", digest.getSize());
+
+            // Graph 가 알려준 quickXorHash 와 비교해 다운로드 무결성 검증
+            String quickXorHash = digest.getQuickXorHash();
+            String expectedQuickXorHash = file.getFile_quick_xor_hash();
+            if (expectedQuickXorHash != null && !expectedQuickXorHash.equals(quickXorHash)) {
+                if (!failsOnQuickXorHashMismatch(file)) {
+                    // SharePoint 는 Office 문서를 내려줄 때 속성을 다시 써 넣으므로 Graph 의 해시와 다를 수 있다
+                    log.warn("quickXorHash mismatch for file {} (keeping download): expected {}, actual {}",
+                            file.getFile_name(), expectedQuickXorHash, quickXorHash);
+                } else {
+                    log.error("quickXorHash mismatch for file {}: expected {}, actual {}", file.getFile_name(), expectedQuickXorHash, quickXorHash);
+                    Files.deleteIfExists(absolutePath);
+                    throw new IllegalStateException("Downloaded content is corrupted: " + file.getFile_name());
+                }
             }
+            log.info("Download Successful, FileName: {}, File SavePath: {}", file.getFile_name(), absolutePath);
+
+            return MsDownloadResultDto.builder()
+                    .filePath(filePath)
+                    .size(digest.getSize())
+                    .hash(digest.getHash())
+                    .tlsh(digest.getTlsh())
+                    .quickXorHash(quickXorHash)
+                    .header(digest.getHeader())
+                    .build();
 
         } catch (IOException e) {
             log.error("IO error while downloading file: {}", e.getMessage(), e);
             throw new RuntimeException("File download failed", e);
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
             log.error("An unexpected error occurred while downloading the file: {}", e.getMessage(), e);
-            throw new RuntimeException("Unexpected error", e);
+            throw e;
         }
     }
 
+    private boolean failsOnQuickXorHashMismatch(MsFileInfoDto file) {
+        return switch (quickXorHashMode) {
+            case "strict" -> true;
+            case "warn" -> false;
+            default -> file.isOneDrive() && !isOfficeMimeType(file.getFile_mimetype());
+        };
+    }
+
+    private static boolean isOfficeMimeType(String mimeType) {
+        return mimeType != null && (mimeType.startsWith("application/vnd.openxmlformats-officedocument.")
+                || mimeType.startsWith("application/vnd.ms-")
+                || mimeType.equals("application/msword"));
+    }
+
+    // 부분 파일은 파일 ID 와 내용 버전(quickXorHash, 없으면 cTag/eTag)으로 경로가 정해지므로 재시작 후에도 같은 파일을 찾아 이어 받을 수 있다.
+    // 내용 버전을 알 수 없으면 이어 받지 않는다. 같은 부분 파일을 쓰는 다운로드(같은 항목의 같은 버전)는 한 번에 하나만 실행한다
+    private void downloadRanged(Path target, MsFileInfoDto file, GraphServiceClient graphClient, int workspaceId) throws IOException {
+        String contentVersion = file.getFile_quick_xor_hash() != null ? file.getFile_quick_xor_hash() : file.getFile_content_tag();
+        Path partialPath = spoolManager.partialPath(file.getFile_id(), contentVersion);
+        // 앞선 다운로드가 끝나면 부분 파일은 옮겨졌거나 (실패한 경우) 체크포인트와 함께 남아 있다
+        spoolManager.acquirePartial(partialPath);
+        try {
+            String identity = contentVersion != null ? file.getFile_id() + ":" + contentVersion : null;
+            rangeDownloader.download(workspaceId, identity, file.getFile_size(), file.getFile_download_url(),
+                    () -> fileProcessingPipeline.runStage(PipelineStage.GRAPH, () -> fetchDownloadUrl(file, graphClient)),
+                    partialPath);
+            Files.move(partialPath, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            spoolManager.releasePartial(partialPath);
+        }
+    }
+
+    // 구간이 순서 없이 도착하므로 해시는 완성된 파일을 한 번 순차로 읽어 계산한다
+    private StreamingFileDigest digestFile(Path path) throws IOException {
+        StreamingFileDigest digest = new StreamingFileDigest(magicDetector.getReadBudget());
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            byte[] buffer = new byte[RANGED_DIGEST_BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+        return digest;
+    }
+
+    // downloadUrl 은 짧은 시간만 유효하므로 만료되면 항목을 다시 조회해 새 URL 을 받는다
+    private String fetchDownloadUrl(MsFileInfoDto file, GraphServiceClient graphClient) {
+        DriveItem item;
+        if (file.isOneDrive()) {
+            item = graphClient.users(file.getFile_owner_id())
+                    .drive()
+                    .items(file.getFile_id())
+                    .buildRequest()
+                    .select("id,@microsoft.graph.downloadUrl")
+                    .get();
+        } else {
+            item = graphClient.sites(file.getSite_id())
+                    .drive()
+                    .items(file.getFile_id())
+                    .buildRequest()
+                    .select("id,@microsoft.graph.downloadUrl")
+                    .get();
+        }
+        JsonElement downloadUrl = item != null ? item.additionalDataManager().get("@microsoft.graph.downloadUrl") : null;
+        return downloadUrl != null ? downloadUrl.getAsString() : null;
+    }
+
+    private InputStream openContentStream(MsFileInfoDto file, GraphServiceClient graphClient) {
+        InputStream inputStream;
+        if (file.isOneDrive()) {
+            inputStream = graphClient.users(file.getFile_owner_id())
+                    .drive()
+                    .items(file.getFile_id())
+                    .content()
+                    .buildRequest()
+                    .get();
+        } else {
+            inputStream = graphClient.sites(file.getSite_id())
+                    .drive()
+                    .items(file.getFile_id())
+                    .content()
+                    .buildRequest()
+                    .get();
+        }
+        if (inputStream == null) {
+            throw new IllegalStateException("Empty content stream for file: " + file.getFile_id());
+        }
+        return inputStream;
+    }
+
 
     public void deleteFileInS3(String filePath) {
         try {
@@ -196,45 +328,80 @@ public class FileDownloadUtil {
 
 
 
-    private Void handleFileProcessing(MsFileInfoDto file, OrgSaaS orgSaaSObject, byte[] fileData, int workspaceId, String event_type) throws IOException, NoSuchAlgorithmException {
-        String file_name = file.getFile_name();
-        log.info("Processing file: {}", file_name);
-        log.info("file event type : {}", event_type);
-
-        String hash = calculateHash(fileData);
+    private void handleFileProcessing(MsFileInfoDto file, OrgSaaS orgSaaSObject, MsDownloadResultDto downloadResult, int workspaceId, String event_type) {
+        // SHA-256, TLSH 는 다운로드 중에 이미 계산되어 있음
+        String hash = downloadResult.getHash();
 
-        // TLSH 계산 시 예외가 발생해도 프로세스를 멈추지 않도록 예외 처리
-        String tlsh = null;
+        // 같은 내용을 처음 저장하는 작업만 등록해 두고, 같은 내용의 다른 파일은 그 작업이 끝난 뒤 저장 여부를 다시 확인한다.
+        // 내용이 다른 파일끼리는 서로 기다리지 않는다 (락을 잡은 채 업로드하지 않음).
+        CompletableFuture<Void> inFlight = new CompletableFuture<>();
+        CompletableFuture<Void> other;
+        while ((other = contentInFlight.putIfAbsent(hash, inFlight)) != null) {
+            try {
+                other.join();
+            } catch (CompletionException | CancellationException e) {
+                // 앞선 작업이 실패했으면 이 작업이 다시 저장을 시도한다
+                log.info("Previous store of the same content failed, retrying: {}", file.getFile_name());
+            }
+        }
         try {
-            Tlsh tlshResult = computeTlsHash(fileData);
-            if (tlshResult != null) {
-                tlsh = tlshResult.toString();
-            } else {
-                tlsh = "TLSH calculation failed"; // TLSH 계산 실패 시 대체 값
+            // 이미 저장된 내용이면 암호화/S3 업로드는 건너뛰고 메타데이터만 기록 (등록은 바로 풀어 기다리지 않게 함)
+            boolean uploadRequired = !fileProcessingPipeline.runStage(PipelineStage.DB, () -> fileDedupUtil.isStored(hash));
+            if (!uploadRequired) {
+                log.info("Duplicate content detected, skipping S3 upload: {}", file.getFile_name());
+                contentInFlight.remove(hash, inFlight);
+                inFlight.complete(null);
             }
-        } catch (Exception e) {
-            log.error("Error computing TLSH hash", e);
-            tlsh = "TLSH calculation failed";
+            storeFileData(file, orgSaaSObject, workspaceId, event_type, hash, downloadResult.getTlsh(),
+                    downloadResult.getHeader(), downloadResult.getFilePath(), uploadRequired, downloadResult.getQuickXorHash());
+        } catch (RuntimeException e) {
+            contentInFlight.remove(hash, inFlight);
+            inFlight.completeExceptionally(e);
+            throw e;
+        } finally {
+            // 등록을 먼저 풀고 완료시켜야 기다리던 작업이 바로 다시 등록할 수 있다
+            contentInFlight.remove(hash, inFlight);
+            inFlight.complete(null);
         }
+    }
+
+    private void storeFileData(MsFileInfoDto file, OrgSaaS orgSaaSObject, int workspaceId, String event_type,
+                               String hash, String tlshValue, byte[] header, String filePath, boolean uploadRequired,
+                               String quickXorHash) {
+        String file_name = file.getFile_name();
+        log.info("Processing file: {}", file_name);
+        log.info("file event type : {}", event_type);
+
+        String tlsh = tlshValue != null ? tlshValue : "TLSH calculation failed";
         log.info("TLSH: {}", tlsh);
 
         LocalDateTime changeTime = extractChangeTime(event_type);
         String userId = file.getFile_owner_id();
 
-        MonitoredUsers user = monitoredUsersRepo.fineByUserIdAndorgSaaSId(userId, workspaceId).orElse(null);
-        if (user == null) return null;
+        MonitoredUsers user = fileProcessingPipeline.runStage(PipelineStage.DB,
+                () -> monitoredUsersRepo.fineByUserIdAndorgSaaSId(userId, workspaceId).orElse(null));
+        if (user == null) {
+            if (filePath != null) {
+                scanUtil.deleteFileInLocal(filePath);
+            }
+            return;
+        }
 
         String saasName = orgSaaSObject.getSaas().getSaasName();
         String orgName = orgSaaSObject.getOrg().getOrgName();
 
-        String filePath = BASE_PATH.resolve(file.getFile_name()).toString();
         String s3Key = getFullPath(file, saasName, orgName, hash);
-        String displayPath = createDisplayPath(orgName, saasName, file.file_owner_name, filePath);
+        String displayPath = createDisplayPath(orgName, saasName, file.file_owner_name, BASE_PATH.resolve(file_name).toString());
 
-        // 다른 작업을 계속 수행
-        processAndSaveFileData(file, hash, s3Key, orgSaaSObject, changeTime, event_type, user, displayPath, tlsh, filePath);
+        // 기록과 업로드가 끝나야 반환된다 (실패하면 예외)
+        processAndSaveFileData(file, hash, s3Key, orgSaaSObject, changeTime, event_type, user, displayPath, tlsh, filePath, header, uploadRequired);
 
-        return null;
+        // 내용이 S3 에 있는 것이 확인된 뒤에만 캐시에 올린다
+        fileDedupUtil.markStored(hash);
+        // 직접 계산해 검증한 quickXorHash 로 색인 (다음부터는 다운로드 없이 처리)
+        if (trustQuickXorHash) {
+            fileDedupUtil.remember(quickXorHash, new FileDedupUtil.DedupEntry(hash, tlshValue, header));
+        }
     }
 
 
@@ -245,57 +412,6 @@ public class FileDownloadUtil {
         return "";
     }
 
-    public static String calculateHash(byte[] fileData) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
-        log.info("Hash value : {} ", digest);
-        byte[] hash = digest.digest(fileData);
-
-        return bytesToHex(hash);
-    }
-
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder hexString = new StringBuilder(2 * bytes.length);
-        for (byte b : bytes) {
-            String hex = Integer.toHexString(0xff & b);
-            hexString.append(hex.length() == 1 ? "0" : "").append(hex);
-        }
-        return hexString.toString();
-    }
-
-    //TLSH 해시 계산
-    private Tlsh computeTlsHash(byte[] fileData) {
-        if (fileData == null || fileData.length == 0) {
-            throw new IllegalArgumentException("fileData cannot be null or empty");
-        }
-
-        final int BUFFER_SIZE = 4096;
-        TlshCreator tlshCreator = new TlshCreator();
-
-        try (InputStream is = new ByteArrayInputStream(fileData)) {
-            byte[] buf = new byte[BUFFER_SIZE];
-            int bytesRead;
-            while ((bytesRead = is.read(buf)) != -1) {
-                // buf 자체의 null 체크는 불필요, 내부적으로 초기화된 배열
-                tlshCreator.update(buf, 0, bytesRead);
-            }
-        } catch (IOException e) {
-            log.error("Error reading file data for TLSH hash calculation", e);
-            return null; // TLSH 계산 실패 시 null 반환
-        }
-
-        try {
-            Tlsh hash = tlshCreator.getHash();
-            if (hash == null) {
-                log.warn("TLSH hash is null, calculation may have failed");
-                return null;
-            }
-            return hash;
-        } catch (IllegalStateException e) {
-            log.warn("TLSH not valid; either not enough data or data has too little variance");
-            return null; // TLSH 계산 실패 시 null 반환
-        }
-    }
-
 
 
     private LocalDateTime extractChangeTime(String event_type) {
@@ -312,78 +428,77 @@ public class FileDownloadUtil {
         }
         return changeTime;
     }
+    // 메타데이터를 기록하고, 새 file_upload 면 타입 검사, 새 내용이면 S3 업로드까지 마친다.
+    // 기록이나 업로드에 실패하면 예외를 던진다 (업로드 실패 시 이번에 넣은 내용 기록은 되돌림)
     private void processAndSaveFileData(MsFileInfoDto file, String hash, String s3Key, OrgSaaS orgSaaSObject,
                                         LocalDateTime changeTime, String event_type, MonitoredUsers user,
-                                        String uploadedChannelPath, String tlsh, String filePath) {
+                                        String uploadedChannelPath, String tlsh, String filePath,
+                                        byte[] header, boolean uploadRequired) {
 
         if (file == null) {
-            log.error("Invalid file data: null");
-            return;
+            throw new IllegalArgumentException("Invalid file data: null");
         }
 
         StoredFile storedFile = msFileMapper.toStoredFileEntity(file, hash, s3Key);
         if (storedFile == null) {
-            log.error("Error creating stored file entity: {}", file.getFile_name());
-            return;
+            throw new IllegalStateException("Error creating stored file entity: " + file.getFile_name());
         }
         FileUploadTable fileUploadTableObject = msFileMapper.toFileUploadEntity(file, orgSaaSObject, hash, changeTime);
         if (fileUploadTableObject == null) {
-            log.error("Error creating file upload entity: {}", file.getFile_name());
-            return;
+            throw new IllegalStateException("Error creating file upload entity: " + file.getFile_name());
         }
         Activities activity = msFileMapper.toActivityEntity(file, event_type, user, uploadedChannelPath,tlsh);
         if (activity == null) {
-            log.error("Error creating activity entity: {}", file.getFile_name());
-            return;
+            throw new IllegalStateException("Error creating activity entity: " + file.getFile_name());
         }
 
-        synchronized (this) {
-            saveActivity(activity, file.getFile_name());
-            saveFileUpload(fileUploadTableObject, file, filePath,s3Key);
-            saveStoredFile(storedFile, file.getFile_name());
+        // 세 테이블의 기록을 write-behind 단계에 맡기고 결과(새로 기록된 행의 ID)를 기다린다.
+        // 다른 파일의 기록과 한 번의 JDBC 배치로 묶이며, 중복은 SQL 로 걸러진다.
+        FileWriteResult result;
+        try {
+            result = fileWriteBatcher.writeFile(storedFile, fileUploadTableObject, activity).join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Error saving file data: " + file.getFile_name(), e.getCause());
         }
-    }
 
-    private void saveActivity(Activities activity, String file_name) {
-        try {
-            if (!activitiesRepo.existsBySaasFileIdAndEventTs(activity.getSaasFileId(), activity.getEventTs())) {
-                activitiesRepo.save(activity);
-                messageSender.sendGroupingMessage(activity.getId());
-            } else {
-                log.warn("Duplicate activity detected and ignored: {}", file_name);
-            }
-        } catch (DataIntegrityViolationException e) {
-            log.error("Error saving activity: {}", e.getMessage(), e);
+        if (result.getActivityId() != null) {
+            messageSender.sendGroupingMessage(result.getActivityId());
+        } else {
+            log.warn("Duplicate activity detected and ignored: {}", file.getFile_name());
         }
-    }
 
-    private void saveFileUpload(FileUploadTable fileUploadTableObject, MsFileInfoDto file_data, String file_path, String s3Key) {
-        try {
-            if (!fileUploadTableRepo.existsBySaasFileIdAndTimestamp(fileUploadTableObject.getSaasFileId(), fileUploadTableObject.getTimestamp())){
-                fileUploadTableRepo.save(fileUploadTableObject);
-                scanUtil.scanFile(file_data, fileUploadTableObject, file_path, s3Key);
-            } else {
-                log.warn("Duplicate file upload detected and ignored: {}", file_data.getFile_name());
+        Long uploadId = result.getUploadId();
+        // 새로 기록된 경우에만 타입 검사 (동시 실행 수는 SCAN 단계 한도로 제한)
+        if (uploadId != null) {
+            scanUtil.scanFile(file, uploadId, hash, header);
+        } else {
+            log.warn("Duplicate file upload detected and ignored: {}", file.getFile_name());
+        }
+
+        boolean uploadTarget = scanUtil.isUploadTarget(file.getFile_name());
+        // 이번에 stored_file 을 새로 넣은 경우에만 업로드 (이미 있던 내용이면 S3 에도 이미 있음)
+        if (uploadRequired && uploadTarget && result.isStoredFileInserted()) {
+            try {
+                scanUtil.uploadFileToS3(filePath, s3Key);
+            } catch (RuntimeException e) {
+                rollbackContent(file, hash, uploadId);
+                throw e;
             }
-        } catch (DataIntegrityViolationException e) {
-            log.error("Error saving file upload: {}", e.getMessage(), e);
+            log.info("File uploaded successfully: {}", file.getFile_name());
+        }
+
+        // 검사 서비스는 S3 의 내용을 읽으므로 업로드가 끝난 뒤에 알린다
+        if (uploadId != null && uploadTarget) {
+            messageSender.sendMessage(uploadId);
         }
     }
 
-    private void saveStoredFile(StoredFile storedFile, String file_name) {
+    private void rollbackContent(MsFileInfoDto file, String hash, Long uploadId) {
         try {
-            if (!storedFileRepo.existsBySaltedHash(storedFile.getSaltedHash())) {
-                try {
-                    storedFileRepo.save(storedFile);
-                    log.info("File uploaded successfully: {}", file_name);
-                } catch (DataIntegrityViolationException e) {
-                    log.warn("Duplicate entry detected and ignored: {}", file_name);
-                }
-            } else {
-                log.warn("Duplicate file detected: {}", file_name);
-            }
-        } catch (DataIntegrityViolationException e) {
-            log.error("Error saving file: {}", e.getMessage(), e);
+            fileProcessingPipeline.runStage(PipelineStage.DB, () -> fileWriteBatcher.rollbackContent(hash, uploadId));
+            log.warn("Rolled back stored content after failed upload: {}", file.getFile_name());
+        } catch (RuntimeException e) {
+            log.error("Failed to roll back stored content for {}: {}", file.getFile_name(), e.getMessage(), e);
         }
     }
 
@@ -6,12 +6,14 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.Base64;
 
 @Component
@@ -21,8 +23,9 @@ public class FileEncUtil {
     @Value("${file.aes.key}")
     private String fileEncAESkey;
 
-    @Value("${file.enc.basepath}")
-    private String basePath;
+    private static final String ALGORITHM = "AES";
+    private static final int AES_BLOCK_SIZE = 16;
+    private static final int STREAM_BUFFER_SIZE = 8192;
 
     private SecretKey secretKey;
 
@@ -36,9 +39,15 @@ public class FileEncUtil {
         }
     }
 
-    // 파일 암호화 및 저장
-    public Path encryptAndSaveFile(String sourceFilePath) throws Exception {
-        if (sourceFilePath == null || sourceFilePath.isEmpty()) {
+    // 암호문 길이 계산 (AES/ECB/PKCS5Padding 은 항상 1~16 바이트의 패딩이 붙는다)
+    public static long getEncryptedSize(long plainSize) {
+        return (plainSize / AES_BLOCK_SIZE + 1) * AES_BLOCK_SIZE;
+    }
+
+    // 파일을 읽으면서 청크 단위로 암호화하는 스트림을 연다.
+    // 평문/암호문 전체를 메모리나 디스크에 다시 쓰지 않고 바로 업로드 스트림으로 넘길 수 있다.
+    public InputStream openEncryptedStream(Path sourceFilePath) throws IOException {
+        if (sourceFilePath == null) {
             log.error("파일 경로가 null이거나 빈 값입니다.");
             throw new IllegalArgumentException("파일 경로는 null이거나 빈 값일 수 없습니다.");
         }
@@ -47,57 +56,23 @@ public class FileEncUtil {
             throw new IllegalStateException("AES 키가 설정되지 않았습니다.");
         }
 
+        Cipher cipher;
         try {
-            // 파일명 추출
-            String fileName = Paths.get(sourceFilePath).getFileName().toString();
-            log.info("암호화할 파일명: {}", fileName);
-
-            // 파일 읽기
-            byte[] fileContent = readFileContent(sourceFilePath);
-            log.info("파일 읽기 성공: {} (크기: {} bytes)", sourceFilePath, fileContent.length);
-
-            // 파일 암호화
-            byte[] encryptedContent = encryptFile(fileContent, secretKey);
-            log.info("파일 암호화 성공. 파일명: {}", fileName);
-
-            // 암호화된 파일 저장
-            return saveFileContent(encryptedContent, fileName);
-        } catch (IOException e) {
-            log.error("파일 처리 중 IO 오류 발생: {}", e.getMessage());
-            throw new IOException("파일 처리 중 오류가 발생했습니다.", e);
+            cipher = Cipher.getInstance(ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
         } catch (Exception e) {
-            log.error("파일 암호화 중 오류 발생: {}", e.getMessage());
-            throw new Exception("파일 암호화 중 오류가 발생했습니다.", e);
+            log.error("AES 암호화 준비 중 오류 발생: {}", e.getMessage());
+            throw new IllegalStateException("AES 암호화 준비 중 오류가 발생했습니다.", e);
         }
-    }
 
-    private Path saveFileContent(byte[] content, String fileName) throws IOException {
-        try {
-            Path dstPath = Paths.get(basePath).resolve(fileName);
-            Files.createDirectories(dstPath.getParent()); // 상위 디렉터리 생성
-            Files.write(dstPath, content);
-            return dstPath;
-        } catch (IOException e) {
-            log.error("암호화된 파일 저장 중 오류 발생: {}", e.getMessage());
-            throw new IOException("암호화된 파일 저장 중 오류가 발생했습니다.", e);
-        }
-    }
-
-    private byte[] readFileContent(String filePath) throws IOException {
-        try {
-            Path path = Paths.get(filePath);
-            byte[] fileContent = Files.readAllBytes(path);
-            log.info("파일 읽기 성공: {}", filePath);
-            return fileContent;
-        } catch (IOException e) {
-            log.error("파일 읽기 중 오류 발생: {}", e.getMessage());
-            throw new IOException("파일을 읽는 중 오류가 발생했습니다.", e);
-        }
+        InputStream plain = new BufferedInputStream(Files.newInputStream(sourceFilePath), STREAM_BUFFER_SIZE);
+        log.info("스트리밍 암호화 시작: {}", sourceFilePath.getFileName());
+        return new CipherInputStream(plain, cipher);
     }
 
     public static byte[] encryptFile(byte[] content, SecretKey secretKey) throws Exception {
         try {
-            Cipher cipher = Cipher.getInstance("AES");
+            Cipher cipher = Cipher.getInstance(ALGORITHM);
             cipher.init(Cipher.ENCRYPT_MODE, secretKey);
             log.debug("AES 암호화 준비 완료.");
             return cipher.doFinal(content);
@@ -114,6 +89,6 @@ public class FileEncUtil {
         }
         log.debug("AES 키 복호화 시작.");
         byte[] decodedKey = Base64.getDecoder().decode(base64Key);
-        return new SecretKeySpec(decodedKey, 0, decodedKey.length, "AES");
+        return new SecretKeySpec(decodedKey, 0, decodedKey.length, ALGORITHM);
     }
 }
@@ -0,0 +1,309 @@
+package com.GASB.o365_func.service.util;
+
+import com.GASB.o365_func.service.api_call.GraphRateGovernor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 큰 파일을 @microsoft.graph.downloadUrl 에 대한 HTTP Range 요청으로 나눠 받는 다운로더.
+ * <p>
+ * 파일을 segment-size 단위 구간으로 나누어 rangeDownloadExecutor 에서 최대 parallelism 개씩 동시에 받고,
+ * 구간을 디스크에 쓰고 force 한 뒤에만 체크포인트(.ckpt)에 완료로 기록한다. 체크포인트와 부분 파일은
+ * 파일 ID 와 quickXorHash 로 정해진 경로에 남으므로, 연결이 끊기거나 파드가 재시작돼도 같은 파일을 다시 받을 때
+ * 마지막으로 확인된 구간부터 이어 받는다. downloadUrl 이 만료되면(401/403/404/410) urlRefresher 로 새 URL 을 받아 계속한다.
+ * 구간 요청도 테넌트의 GraphRateGovernor 를 거치므로 429/503 은 그 테넌트의 동시 요청 한도와 Retry-After 에 반영된다.
+ */
+@Component
+@Slf4j
+public class RangeDownloader {
+
+    private static final String CHECKPOINT_SUFFIX = ".ckpt";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_URL_REFRESHES = 3;
+
+    private final Executor rangeDownloadExecutor;
+    private final GraphRateGovernor graphRateGovernor;
+
+    // downloadUrl 은 미리 인증된 URL 이므로 인증 없이 요청한다 (속도 조절 인터셉터는 다운로드마다 테넌트별로 붙임)
+    private final OkHttpClient httpClient = new OkHttpClient.Builder()
+            .readTimeout(Duration.ofMinutes(2))
+            .build();
+
+    @Value("${file.download.range.threshold:67108864}")
+    private long threshold;
+
+    @Value("${file.download.range.segment-size:16777216}")
+    private long segmentSize;
+
+    @Value("${file.download.range.parallelism:4}")
+    private int parallelism;
+
+    @Value("${file.download.range.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${file.download.range.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    public RangeDownloader(@Qualifier("rangeDownloadExecutor") Executor rangeDownloadExecutor,
+                           GraphRateGovernor graphRateGovernor) {
+        this.rangeDownloadExecutor = rangeDownloadExecutor;
+        this.graphRateGovernor = graphRateGovernor;
+    }
+
+    public boolean supports(Long size, String downloadUrl) {
+        return downloadUrl != null && size != null && size >= threshold;
+    }
+
+    public static Path checkpointPath(Path partialPath) {
+        return partialPath.resolveSibling(partialPath.getFileName() + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * partialPath 에 파일을 받는다. identity 가 체크포인트와 같으면 이어 받고, 다르면 처음부터 받는다.
+     * identity 가 null 이면 (내용을 식별할 값이 없음) 남은 부분 파일이 같은 내용인지 알 수 없으므로 항상 처음부터 받는다.
+     * 완료되면 체크포인트를 지운다 (부분 파일을 옮기는 것은 호출하는 쪽에서 한다).
+     */
+    public void download(int workspaceId, String identity, long size, String downloadUrl, Supplier<String> urlRefresher,
+                         Path partialPath) throws IOException {
+        Files.createDirectories(partialPath.toAbsolutePath().getParent());
+        Path checkpointPath = checkpointPath(partialPath);
+        OkHttpClient client = httpClient.newBuilder()
+                .addInterceptor(graphRateGovernor.interceptor(workspaceId))
+                .build();
+
+        Checkpoint checkpoint = identity != null ? Checkpoint.load(checkpointPath, identity, size, segmentSize) : null;
+        if (checkpoint == null || !Files.exists(partialPath)) {
+            checkpoint = new Checkpoint(checkpointPath, Objects.requireNonNullElse(identity, ""), size, segmentSize, new BitSet());
+            try (FileChannel channel = FileChannel.open(partialPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // 구간을 순서와 상관없이 쓸 수 있도록 미리 크기를 잡아 둔다
+                if (size > 0) {
+                    channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+                }
+            }
+            checkpoint.save();
+        } else {
+            log.info("Resuming ranged download {}: {}/{} segments already done",
+                    partialPath.getFileName(), checkpoint.completedCount(), checkpoint.segmentCount());
+        }
+
+        String url = downloadUrl;
+        for (int refresh = 0; ; refresh++) {
+            List<Integer> missing = checkpoint.missingSegments();
+            if (missing.isEmpty()) {
+                break;
+            }
+            try {
+                downloadSegments(client, url, partialPath, checkpoint, missing);
+            } catch (UrlExpiredException e) {
+                if (refresh >= MAX_URL_REFRESHES) {
+                    throw new IOException("Download URL kept expiring for " + partialPath.getFileName(), e);
+                }
+                log.warn("Download URL expired for {}, refreshing", partialPath.getFileName());
+                url = urlRefresher.get();
+                if (url == null) {
+                    throw new IOException("Could not refresh download URL for " + partialPath.getFileName(), e);
+                }
+            }
+        }
+        Files.deleteIfExists(checkpointPath);
+        log.info("Ranged download finished: {} ({} bytes, {} segments)", partialPath.getFileName(), size, checkpoint.segmentCount());
+    }
+
+    private void downloadSegments(OkHttpClient client, String url, Path partialPath, Checkpoint checkpoint, List<Integer> missing) throws IOException {
+        Queue<Integer> queue = new ConcurrentLinkedQueue<>(missing);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        try (FileChannel channel = FileChannel.open(partialPath, StandardOpenOption.WRITE)) {
+            int workers = Math.max(1, Math.min(parallelism, missing.size()));
+            List<CompletableFuture<Void>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    Integer segment;
+                    while (!failed.get() && (segment = queue.poll()) != null) {
+                        try {
+                            downloadSegmentWithRetry(client, url, channel, checkpoint, segment);
+                            // 디스크에 반영된 뒤에만 완료로 기록
+                            channel.force(false);
+                            checkpoint.markDone(segment);
+                        } catch (IOException e) {
+                            failed.set(true);
+                            throw new CompletionException(e);
+                        }
+                    }
+                }, rangeDownloadExecutor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Ranged download failed: " + partialPath.getFileName(), cause);
+        }
+    }
+
+    private void downloadSegmentWithRetry(OkHttpClient client, String url, FileChannel channel, Checkpoint checkpoint, int segment) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                downloadSegment(client, url, channel, checkpoint, segment);
+                return;
+            } catch (UrlExpiredException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                long delay = retryBackoffMs * (1L << attempt);
+                log.warn("Retrying segment {} in {} ms (attempt {}): {}", segment, delay, attempt + 1, e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while retrying segment " + segment);
+                }
+            }
+        }
+    }
+
+    private void downloadSegment(OkHttpClient client, String url, FileChannel channel, Checkpoint checkpoint, int segment) throws IOException {
+        long start = segment * checkpoint.segmentSize;
+        long end = Math.min(checkpoint.size, start + checkpoint.segmentSize) - 1;
+        Request request = new Request.Builder()
+                .url(url)
+                .header("Range", "bytes=" + start + "-" + end)
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            int code = response.code();
+            if (code == 401 || code == 403 || code == 404 || code == 410) {
+                throw new UrlExpiredException("Download URL rejected with " + code);
+            }
+            if (code != 206) {
+                throw new IOException("Unexpected response for range " + start + "-" + end + ": " + code);
+            }
+            ResponseBody body = response.body();
+            if (body == null) {
+                throw new IOException("Empty body for range " + start + "-" + end);
+            }
+
+            long position = start;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = body.byteStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position);
+                    }
+                }
+            }
+            if (position != end + 1) {
+                throw new IOException("Short range read " + start + "-" + end + ": got " + (position - start) + " bytes");
+            }
+        }
+    }
+
+    private static class UrlExpiredException extends IOException {
+        UrlExpiredException(String message) {
+            super(message);
+        }
+    }
+
+    // 완료된 구간 목록. 파일 ID / 내용 버전 / 크기가 같은 경우에만 이어 받는다
+    private static class Checkpoint {
+        private final Path path;
+        private final String identity;
+        private final long size;
+        private final long segmentSize;
+        private final BitSet done;
+
+        Checkpoint(Path path, String identity, long size, long segmentSize, BitSet done) {
+            this.path = path;
+            this.identity = identity;
+            this.size = size;
+            this.segmentSize = segmentSize;
+            this.done = done;
+        }
+
+        static Checkpoint load(Path path, String identity, long size, long segmentSize) {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(path)) {
+                properties.load(in);
+                if (!identity.equals(properties.getProperty("identity"))
+                        || size != Long.parseLong(properties.getProperty("size"))) {
+                    log.info("Discarding stale download checkpoint: {}", path.getFileName());
+                    return null;
+                }
+                long savedSegmentSize = Long.parseLong(properties.getProperty("segmentSize"));
+                BitSet done = BitSet.valueOf(Base64.getDecoder().decode(properties.getProperty("done", "")));
+                return new Checkpoint(path, identity, size, savedSegmentSize, done);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Unreadable download checkpoint {}: {}", path.getFileName(), e.getMessage());
+                return null;
+            }
+        }
+
+        int segmentCount() {
+            return (int) ((size + segmentSize - 1) / segmentSize);
+        }
+
+        synchronized int completedCount() {
+            return done.cardinality();
+        }
+
+        synchronized List<Integer> missingSegments() {
+            List<Integer> missing = new ArrayList<>();
+            for (int i = done.nextClearBit(0); i < segmentCount(); i = done.nextClearBit(i + 1)) {
+                missing.add(i);
+            }
+            return missing;
+        }
+
+        synchronized void markDone(int segment) throws IOException {
+            done.set(segment);
+            save();
+        }
+
+        // 임시 파일에 쓴 뒤 원자적으로 교체 (쓰는 도중 죽어도 이전 체크포인트가 남음)
+        synchronized void save() throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("identity", identity);
+            properties.setProperty("size", String.valueOf(size));
+            properties.setProperty("segmentSize", String.valueOf(segmentSize));
+            properties.setProperty("done", Base64.getEncoder().encodeToString(done.toByteArray()));
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.GASB.o365_func.service.util;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * S3 업로드 엔진.
+ * 파트 크기 이하의 객체는 단일 putObject 로, 그보다 큰 객체는 멀티파트로 올린다.
+ * 파트는 s3UploadExecutor 에서 병렬로 업로드되고, 동시에 메모리에 올라가는 파트 수는
+ * max-in-flight-parts 로 제한된다. 파트 단위로 재시도하며, 실패하면 업로드를 abort 한다.
+ */
+@Component
+@Slf4j
+public class S3MultipartUploader {
+
+    // S3 가 허용하는 최소 파트 크기 (마지막 파트 제외)
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3Client;
+    private final Executor s3UploadExecutor;
+
+    @Value("${aws.s3.multipart.part-size:8388608}")
+    private int partSize;
+
+    @Value("${aws.s3.multipart.max-in-flight-parts:8}")
+    private int maxInFlightParts;
+
+    @Value("${aws.s3.multipart.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${aws.s3.multipart.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    private Semaphore inFlightParts;
+
+    public S3MultipartUploader(S3Client s3Client, @Qualifier("s3UploadExecutor") Executor s3UploadExecutor) {
+        this.s3Client = s3Client;
+        this.s3UploadExecutor = s3UploadExecutor;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (partSize < MIN_PART_SIZE) {
+            log.warn("aws.s3.multipart.part-size {} is below the S3 minimum, using {}", partSize, MIN_PART_SIZE);
+            partSize = MIN_PART_SIZE;
+        }
+        inFlightParts = new Semaphore(Math.max(1, maxInFlightParts));
+    }
+
+    public void upload(String bucket, String key, InputStream content, long contentLength) throws IOException {
+        if (contentLength <= partSize) {
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build();
+            s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(content, contentLength));
+            return;
+        }
+        multipartUpload(bucket, key, content);
+    }
+
+    private void multipartUpload(String bucket, String key, InputStream content) throws IOException {
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build()).uploadId();
+
+        List<CompletableFuture<CompletedPart>> futures = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean(false);
+        try {
+            int partNumber = 1;
+            while (!failed.get()) {
+                // 파트 버퍼를 만들기 전에 허가를 받아 메모리 사용량을 제한 (읽는 쪽에 back-pressure)
+                inFlightParts.acquire();
+                byte[] partBuffer;
+                int bytesRead;
+                try {
+                    partBuffer = new byte[partSize];
+                    bytesRead = content.readNBytes(partBuffer, 0, partSize);
+                } catch (IOException | RuntimeException e) {
+                    inFlightParts.release();
+                    throw e;
+                }
+                if (bytesRead <= 0) {
+                    inFlightParts.release();
+                    break;
+                }
+
+                int currentPart = partNumber++;
+                int partLength = bytesRead;
+                CompletableFuture<CompletedPart> future = CompletableFuture
+                        .supplyAsync(() -> uploadPartWithRetry(bucket, key, uploadId, currentPart, partBuffer, partLength), s3UploadExecutor)
+                        .whenComplete((part, ex) -> {
+                            inFlightParts.release();
+                            if (ex != null) {
+                                failed.set(true);
+                            }
+                        });
+                futures.add(future);
+            }
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+            List<CompletedPart> completedParts = futures.stream()
+                    .map(CompletableFuture::join)
+                    .sorted(Comparator.comparing(CompletedPart::partNumber))
+                    .toList();
+
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+            log.info("Multipart upload completed: {} ({} parts)", key, completedParts.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(bucket, key, uploadId);
+            throw new IOException("Multipart upload interrupted: " + key, e);
+        } catch (CompletionException e) {
+            abort(bucket, key, uploadId);
+            throw new IOException("Multipart upload failed: " + key, e.getCause());
+        } catch (IOException | RuntimeException e) {
+            abort(bucket, key, uploadId);
+            throw e;
+        }
+    }
+
+    private CompletedPart uploadPartWithRetry(String bucket, String key, String uploadId, int partNumber, byte[] buffer, int length) {
+        UploadPartRequest request = UploadPartRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) length)
+                .build();
+
+        int attempt = 0;
+        while (true) {
+            try {
+                // 파트 버퍼를 복사하지 않고 그대로 넘긴다 (재시도 시에도 새 스트림을 만들어 읽음)
+                UploadPartResponse response = s3Client.uploadPart(request,
+                        RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buffer, 0, length),
+                                length, "application/octet-stream"));
+                return CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(response.eTag())
+                        .build();
+            } catch (SdkException e) {
+                if (!isRetryable(e)) {
+                    log.error("Upload of part {} for {} failed with a non-retryable error: {}", partNumber, key, e.getMessage());
+                    throw e;
+                }
+                if (++attempt > maxRetries) {
+                    log.error("Upload of part {} for {} failed after {} attempts: {}", partNumber, key, attempt, e.getMessage());
+                    throw e;
+                }
+                log.warn("Retrying part {} for {} (attempt {}): {}", partNumber, key, attempt, e.getMessage());
+                try {
+                    Thread.sleep(retryBackoffMs * (1L << (attempt - 1)));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // 일시적인 실패(스로틀링, 5xx, SDK 가 재시도 가능으로 표시한 오류)만 재시도한다.
+    // AccessDenied, NoSuchBucket, NoSuchUpload 같은 오류는 다시 보내도 같으므로 바로 실패시켜 abort 한다
+    static boolean isRetryable(SdkException e) {
+        if (e.retryable()) {
+            return true;
+        }
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return false;
+    }
+
+    // 실패한 업로드의 파트가 버킷에 남지 않도록 정리
+    private void abort(String bucket, String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+            log.error("Multipart upload aborted: {}", key);
+        } catch (SdkException e) {
+            log.error("Failed to abort multipart upload {} ({}): {}", key, uploadId, e.getMessage());
+        }
+    }
+}
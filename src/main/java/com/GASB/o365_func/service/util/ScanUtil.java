@@ -1,25 +1,23 @@
 package com.GASB.o365_func.service.util;
 
 import com.GASB.o365_func.model.dto.MsFileInfoDto;
-import com.GASB.o365_func.model.entity.FileUploadTable;
 import com.GASB.o365_func.model.entity.TypeScan;
-import com.GASB.o365_func.repository.TypeScanRepo;
-import com.GASB.o365_func.service.enumset.HeaderSignature;
 import com.GASB.o365_func.service.enumset.MimeType;
-import com.GASB.o365_func.service.message.MessageSender;
-import jakarta.transaction.Transactional;
-import jakarta.validation.constraints.Null;
+import com.GASB.o365_func.service.persistence.FileWriteBatcher;
+import com.GASB.o365_func.service.pipeline.FileProcessingPipeline;
+import com.GASB.o365_func.service.pipeline.PipelineStage;
+import com.GASB.o365_func.service.scan.FileFormat;
+import com.GASB.o365_func.service.scan.MagicDetector;
+import com.GASB.o365_func.service.scan.TikaMimeDetector;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.mime.MediaType;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -30,94 +28,80 @@ import java.nio.file.Paths;
 public class ScanUtil {
 
 
-    private final TypeScanRepo typeScanRepo;
-    private final MessageSender messageSender;
-    private final S3Client s3Client;
+    private final FileWriteBatcher fileWriteBatcher;
     private final FileEncUtil fileEncUtil;
+    private final S3MultipartUploader s3MultipartUploader;
+    private final FileProcessingPipeline fileProcessingPipeline;
+    private final MagicDetector magicDetector;
+    private final TikaMimeDetector tikaMimeDetector;
 
     @Value("${aws.s3.bucket}")
     private String bucketName;
 
-    @Async
-    public void scanFile(MsFileInfoDto fileData, FileUploadTable fileUploadTableObject, String filePath, String s3Key){
-        try{
-            File inputFile = new File(filePath);
 
-            // 파일이 존재하는지 확인
-            if (!inputFile.exists()) {
-                log.error("File does not exist: {}", inputFile.getAbsolutePath());
-                return;
-            }
-            if (!inputFile.isFile()) {
-                log.error("Path is not a file: {}", inputFile.getAbsolutePath());
-                return;
-            }
-
-            String fileExtension = extractFileExtensionByFileName(fileData.getFile_name());
-            String expectedFileTypeByExtension = MimeType.getMimeTypeByExtension(fileExtension);
-
-            String mimeType = fileData.getFile_mimetype();
-
-            String fileSignature = null;
-
-            boolean isMatched;
+    // header: 다운로드 중에 보관한 파일 앞부분 (내용이 같은 파일을 건너뛴 경우에는 이전에 보관한 값)
+    // 처리 엔진의 워커 스레드에서 호출되며, 검사는 SCAN 단계 한도 안에서 실행된다.
+    // 검사나 결과 기록에 실패하면 예외를 그대로 던진다 (호출한 쪽이 파일 처리를 실패로 본다)
+    public void scanFile(MsFileInfoDto fileData, Long uploadId, String hash, byte[] header) {
+        // 시그니처는 다운로드 중에 보관한 header 로만 검사한다 (저장된 파일을 다시 읽지 않음)
+        if (header == null) {
+            log.warn("No header captured for file: {}", fileData.getFile_name());
+        }
 
-            if (fileExtension.equals("txt")) {
-                // txt 파일의 경우 시그니처가 없으므로 MIME 타입만으로 검증
-                isMatched = mimeType.equals(expectedFileTypeByExtension);
-                addData(fileUploadTableObject, isMatched, mimeType, "unknown", fileExtension);
-            } else {
-                fileSignature = extractSignature(inputFile, fileData,fileExtension);
-                if (fileSignature == "unknown"){
-                    // 확장자와 MIME타입만 검사함
-                    isMatched = checkWithoutSignature(mimeType, expectedFileTypeByExtension, fileExtension);
-                    addData(fileUploadTableObject, isMatched, mimeType, "unknown", fileExtension);
-                }
-                if (fileSignature == null || fileSignature.isEmpty()) {
-                    // 확장자와 MIME 타입만 존재하는 경우
+        String fileExtension = extractFileExtensionByFileName(fileData.getFile_name());
+        String expectedFileTypeByExtension = MimeType.getMimeTypeByExtension(fileExtension);
+
+        String mimeType = fileData.getFile_mimetype();
+
+        if (fileExtension.equals("txt")) {
+            // txt 파일의 경우 시그니처가 없으므로 MIME 타입만으로 검증
+            fileProcessingPipeline.runStage(PipelineStage.SCAN, () -> {
+                boolean isMatched = mimeType.equals(expectedFileTypeByExtension);
+                addData(uploadId, isMatched, mimeType, "unknown", fileExtension);
+            });
+        } else {
+            fileProcessingPipeline.runStage(PipelineStage.SCAN, () -> {
+                String fileSignature = extractSignature(header, fileExtension);
+                boolean isMatched;
+                if (fileSignature == null) {
+                    // 내용으로 형식을 알 수 없으면 확장자와 MIME 타입만 검사함
                     isMatched = checkWithoutSignature(mimeType, expectedFileTypeByExtension, fileExtension);
-                    addData(fileUploadTableObject, isMatched, mimeType, "unknown", fileExtension);
                 } else {
                     // MIME 타입, 확장자, 시그니처가 모두 존재하는 경우
                     isMatched = checkAllType(mimeType, fileExtension, fileSignature, expectedFileTypeByExtension);
-                    addData(fileUploadTableObject, isMatched, mimeType, fileSignature, fileExtension);
                 }
-
-                messageSender.sendMessage(fileUploadTableObject.getId());
-
-                uploadFileToS3(filePath,s3Key);
-
-            }
-        } catch (IllegalArgumentException e){
-            log.error("Error scanning file: {}", e.getMessage(), e);
-        } catch (NullPointerException e){
-            log.error("Error scanning file: {}", e.getMessage(), e);
-        } catch (Exception e){
-            log.error("Error scanning file: {}", e.getMessage(), e);
+                if (isMatched && tikaMimeDetector.isEnabled()) {
+                    // Graph 가 알려준 MIME 타입을 내용 기반 판별 결과와 비교 (MIME 위조 탐지)
+                    MediaType detected = tikaMimeDetector.detect(hash, header);
+                    if (!tikaMimeDetector.isConsistent(mimeType, detected)) {
+                        log.warn("MIME type mismatch for {}: reported {}, detected {}", fileData.getFile_name(), mimeType, detected);
+                        isMatched = false;
+                    }
+                }
+                addData(uploadId, isMatched, mimeType, fileSignature != null ? fileSignature : "unknown", fileExtension);
+            });
         }
     }
 
-    @Async
-    @Transactional
-    protected void addData(FileUploadTable fileUploadTableObject, boolean correct, String mimeType, String signature, String extension) {
-        if (fileUploadTableObject == null) {
-            log.error("Invalid file upload object: null");
-            throw new IllegalArgumentException("fileUploadTableObject cannot be null");
-        }
+    // txt 파일은 타입 검사만 하고 검사 메시지 발송과 S3 업로드 대상에서 제외한다
+    public boolean isUploadTarget(String fileName) {
+        return !extractFileExtensionByFileName(fileName).equals("txt");
+    }
 
-        if (fileUploadTableObject.getId() == null) {
-            log.error("Invalid file upload object ID: null for object: {}", fileUploadTableObject);
-            throw new IllegalArgumentException("fileUploadTableObject ID cannot be null");
+    // 검사 결과는 write-behind 단계에 맡기고, 기록된 뒤에 검사 완료 메시지를 보내도록 기다린다
+    protected void addData(Long uploadId, boolean correct, String mimeType, String signature, String extension) {
+        if (uploadId == null) {
+            log.error("Invalid file upload ID: null");
+            throw new IllegalArgumentException("uploadId cannot be null");
         }
 
         TypeScan typeScan = TypeScan.builder()
-                .file_upload(fileUploadTableObject)
                 .correct(correct)
                 .mimetype(mimeType)
                 .signature(signature)
                 .extension(extension)
                 .build();
-        typeScanRepo.save(typeScan);
+        fileWriteBatcher.writeTypeScan(uploadId, typeScan).join();
     }
 
 
@@ -125,51 +109,15 @@ public class ScanUtil {
         return file_name.substring(file_name.lastIndexOf(".")+1);
     }
 
-    private String extractSignature(File file, MsFileInfoDto fileData, String fileExtension) {
-        if (fileExtension == null || fileExtension.isEmpty()) {
-            log.error("Invalid file extension: {}", fileExtension);
-            return null; // 기본값으로 "unknown"을 반환
-        }
-
-        int signatureLength = HeaderSignature.getSignatureLengthByExtension(fileExtension);
-        if (signatureLength == 0) {
-            log.info("No signature length for extension: {}", fileExtension);
-            return "unknown";
-        }
-
-        if (fileData.getFile_size() < signatureLength) {
-            log.error("File data is smaller than the expected signature length");
-            return "unknown";
-        }
-
-        byte[] signatureBytes = new byte[signatureLength];
-
-        try (FileInputStream fis = new FileInputStream(file)) {
-            int bytesRead = fis.read(signatureBytes);
-            if (bytesRead < signatureLength) {
-                log.error("Could not read the complete file signature");
-                return "unknown";
-            }
-        } catch (NullPointerException e) {
-            log.error("Error reading file signature: {}", e.getMessage(), e);
-            return null;
-        } catch (IOException e){
-            log.error("Error reading file signature: {}", e.getMessage(), e);
+    // 다운로드 중에 보관한 파일 앞부분으로 내용의 형식을 판별하고, 결과로 기록할 확장자를 반환 (판별하지 못하면 null)
+    private String extractSignature(byte[] header, String fileExtension) {
+        FileFormat format = magicDetector.detect(header);
+        if (format == null) {
+            log.info("No known signature for file with extension: {}", fileExtension);
             return null;
-        } catch (Exception e) {
-            log.error("Error reading file signature: {}", e.getMessage(), e);
-            return null;
-        }
-
-        StringBuilder sb = new StringBuilder(signatureLength * 2);
-        for (byte b : signatureBytes) {
-            sb.append(String.format("%02X", b));
         }
-
-        String signatureHex = sb.toString();
-        String detectedExtension = HeaderSignature.getExtensionBySignature(signatureHex, fileExtension);
-        log.info("Detected extension for signature {}: {}", signatureHex, detectedExtension);
-
+        String detectedExtension = format.resolveExtension(fileExtension);
+        log.info("Detected format {} for extension {}: {}", format, fileExtension, detectedExtension);
         return detectedExtension;
     }
 
@@ -186,25 +134,29 @@ public class ScanUtil {
     }
 
 
-    private void uploadFileToS3(String filePath, String s3Key) {
-
-        //암호화 진행
-        try {
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(s3Key)
-                    .build();
-            // 암호화한 파일을 업로드
-            s3Client.putObject(putObjectRequest, fileEncUtil.encryptAndSaveFile(filePath));
-            log.info("File uploaded successfully to S3: {}", s3Key);
-        } catch (RuntimeException e) {
-            log.error("Error uploading file to S3: {}", e.getMessage(), e);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        } finally {
-            deleteFileInLocal(filePath);
-        }
+    // 평문 파일을 읽으면서 암호화하고, 암호문은 디스크에 쓰지 않고 바로 S3 로 올린다 (UPLOAD 단계 한도 안에서 실행).
+    // 실패하면 예외를 던진다 (업로드되지 않은 내용을 저장된 것으로 기록하지 않도록)
+    public void uploadFileToS3(String filePath, String s3Key) {
+        fileProcessingPipeline.runStage(PipelineStage.UPLOAD, () -> {
+            Path sourcePath = Paths.get(filePath);
+            try {
+                long encryptedSize = FileEncUtil.getEncryptedSize(Files.size(sourcePath));
+                try (InputStream encryptedStream = fileEncUtil.openEncryptedStream(sourcePath)) {
+                    s3MultipartUploader.upload(bucketName, s3Key, encryptedStream, encryptedSize);
+                }
+                log.info("File uploaded successfully to S3: {} ({} bytes)", s3Key, encryptedSize);
+            } catch (IOException e) {
+                log.error("Error uploading file to S3: {}", e.getMessage(), e);
+                throw new UncheckedIOException("S3 upload failed: " + s3Key, e);
+            } catch (RuntimeException e) {
+                log.error("Error uploading file to S3: {}", e.getMessage(), e);
+                throw e;
+            } finally {
+                deleteFileInLocal(filePath);
+            }
+        });
     }
+
     public void deleteFileInLocal(String filePath) {
         try {
             // 파일 경로를 Path 객체로 변환
@@ -0,0 +1,91 @@
+package com.GASB.o365_func.service.util;
+
+import com.GASB.o365_func.quickxor.QuickXorHash;
+import com.GASB.o365_func.tlsh.Tlsh;
+import com.GASB.o365_func.tlsh.TlshCreator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * 다운로드 스트림을 한 번만 읽으면서 SHA-256, TLSH, quickXorHash 를 동시에 계산한다.
+ * 파일 전체를 메모리에 올리지 않고, 읽어 들인 청크를 그대로 update() 로 넘기면 된다.
+ * 시그니처 검사를 위해 파일 앞부분(headerCapacity 바이트)만 따로 보관한다.
+ */
+@Slf4j
+public class StreamingFileDigest {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final MessageDigest messageDigest;
+    private final TlshCreator tlshCreator;
+    private final QuickXorHash quickXorHash;
+    private final byte[] header;
+    private int headerLength;
+    private long size;
+
+    public StreamingFileDigest(int headerCapacity) {
+        try {
+            this.messageDigest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        this.tlshCreator = new TlshCreator();
+        this.quickXorHash = new QuickXorHash();
+        this.header = new byte[headerCapacity];
+    }
+
+    public void update(byte[] buffer, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        if (headerLength < header.length) {
+            int copy = Math.min(length, header.length - headerLength);
+            System.arraycopy(buffer, offset, header, headerLength, copy);
+            headerLength += copy;
+        }
+        messageDigest.update(buffer, offset, length);
+        tlshCreator.update(buffer, offset, length);
+        quickXorHash.update(buffer, offset, length);
+        size += length;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public byte[] getHeader() {
+        return headerLength == header.length ? header : Arrays.copyOf(header, headerLength);
+    }
+
+    // 스트림을 끝까지 읽은 뒤 한 번만 호출해야 한다 (MessageDigest 가 리셋됨)
+    public String getHash() {
+        return bytesToHex(messageDigest.digest());
+    }
+
+    // Graph 의 file.hashes.quickXorHash 와 같은 형식 (Base64)
+    public String getQuickXorHash() {
+        return quickXorHash.getBase64();
+    }
+
+    // TLSH 는 데이터가 부족하거나 분산이 작으면 계산되지 않으므로 null 을 반환
+    public String getTlsh() {
+        if (!tlshCreator.isValid()) {
+            log.warn("TLSH not valid; either not enough data or data has too little variance");
+            return null;
+        }
+        Tlsh hash = tlshCreator.getHashNoThrow();
+        return hash != null ? hash.toString() : null;
+    }
+
+    public static String bytesToHex(byte[] bytes) {
+        StringBuilder hexString = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            String hex = Integer.toHexString(0xff & b);
+            hexString.append(hex.length() == 1 ? "0" : "").append(hex);
+        }
+        return hexString.toString();
+    }
+}
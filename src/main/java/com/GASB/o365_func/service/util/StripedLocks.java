@@ -0,0 +1,31 @@
+package com.GASB.o365_func.service.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 키별 동시성 제어용 락 묶음.
+ * 키의 해시로 고정 개수의 ReentrantLock 중 하나를 고르므로, 같은 키는 항상 같은 락을 쓰고
+ * 서로 다른 키는 (같은 칸에 걸리지 않는 한) 병렬로 진행된다. 키마다 락을 만들지 않아 메모리가 늘지 않는다.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public StripedLocks(int stripes) {
+        // 비트 마스크로 칸을 고를 수 있도록 2 의 거듭제곱으로 맞춘다
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock get(Object key) {
+        int h = key.hashCode();
+        // 해시 상위 비트도 칸 선택에 반영
+        h ^= (h >>> 16);
+        return locks[h & mask];
+    }
+}
@@ -1,24 +1,17 @@
 package com.GASB.o365_func.service.util;
 
+import com.GASB.o365_func.model.entity.MsSubscription;
 import com.GASB.o365_func.repository.MonitoredUsersRepo;
-import com.GASB.o365_func.repository.WorkSpaceConfigRepo;
 import com.GASB.o365_func.service.api_call.MsApiService;
+import com.GASB.o365_func.service.subscription.SubscriptionManager;
 import com.microsoft.graph.http.GraphFatalServiceException;
-import com.microsoft.graph.models.Request;
-import com.microsoft.graph.models.Subscription;
 import com.microsoft.graph.requests.GraphServiceClient;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.OffsetDateTime;
 import java.util.List;
-import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -27,38 +20,23 @@ public class WebhookUtil {
 
 
 
-    private final WorkSpaceConfigRepo workSpaceConfigRepo;
+    private final SubscriptionManager subscriptionManager;
     private final MsApiService msApiService;
     private final MonitoredUsersRepo monitoredUsersRepo;
 
 
-    // 구독을 생성하는 부분
+    // 구독을 생성하는 부분 (구독 id 와 만료 시각은 SubscriptionManager 가 저장하고 만료 전에 갱신한다)
     public CompletableFuture<Void> createSubscriptionAsync(GraphServiceClient<?> graphClient, String userId, int workspaceId) {
         return CompletableFuture.runAsync(() -> {
             try {
-                // Notification URL 체크
-                String notificationUrl = workSpaceConfigRepo.findWebhookUrlById(workspaceId).orElse(null);
-                if (notificationUrl == null) {
-                    log.error("Failed to create subscription for user {}: Notification URL is null", userId);
-                    throw new IllegalArgumentException("Notification URL cannot be null");
-                }
-
-                Subscription subscription = new Subscription();
-                subscription.changeType = "updated";
-                subscription.notificationUrl = notificationUrl;
-                subscription.resource = "/users/" + userId + "/drive/root";
-                subscription.expirationDateTime = OffsetDateTime.now().plusMinutes(1440);  // 최대 구독 만료 시간 설정
-                subscription.clientState = generateClientState();
+                MsSubscription createdSubscription = subscriptionManager.createSubscription(graphClient, userId, workspaceId);
 
-                Subscription createdSubscription = graphClient.subscriptions()
-                        .buildRequest()
-                        .post(subscription);
-
-                msApiService.initDeltaLink(userId,graphClient);
-                log.info("init delta link for user {}", userId);
+                // 초기 수집에서 저장한 deltaLink 가 있으면 그대로 두고, 없을 때만 현재 시점부터 추적을 시작
+                if (msApiService.initDeltaLink(userId,graphClient) != null) {
+                    log.info("init delta link for user {}", userId);
+                }
 
-                log.info("Created subscription for user {}: {}", userId, createdSubscription.id);
-                log.info("Created subscription details: {}", createdSubscription);
+                log.info("Created subscription for user {}: {}", userId, createdSubscription.getSubscriptionId());
 
             } catch (GraphFatalServiceException e) {
                 log.error("GraphFatalServiceException :: Failed to create subscription for user {}: {} - Response code: {}",
@@ -91,36 +69,4 @@ public class WebhookUtil {
 
     // 델타 api를 이용해 변경된 파일을 가져오는 부분
 
-
-    // 구독 자동 갱신
-//    @Scheduled(fixedRate = 172800000) // 1시간마다 실행
-//    public void renewSubscriptions() {
-//        List<String> userIds = monitoredUsersRepo.getMonitoredUserList();
-//
-//        userIds.forEach(userId -> {
-//            try {
-//                // 기존 구독 ID 가져오기 로직 필요
-//                String subscriptionId = monitoredUsersRepo.getSubscriptionId(userId);
-//
-//                // 구독 갱신
-//                Subscription subscription = new Subscription();
-//                subscription.expirationDateTime = OffsetDateTime.now().plusMinutes(4230);  // 최대 구독 시간
-//
-//                GraphServiceClient<Request> graphClient = getClient(id);
-//                graphClient.subscriptions(subscriptionId)
-//                        .buildRequest()
-//                        .patch(subscription);
-//
-//                log.info("Renewed subscription for user {}: {}", userId, subscriptionId);
-//
-//            } catch (Exception e) {
-//                log.error("Failed to renew subscription for user {}: {}", userId, e.getMessage());
-//            }
-//        });
-//    }
-
-    private String generateClientState() {
-        return UUID.randomUUID().toString();
-    }
-
 }
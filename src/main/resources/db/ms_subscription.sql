@@ -0,0 +1,21 @@
+-- SubscriptionManager 가 사용하는 웹훅 구독 테이블 (MySQL)
+
+-- 사용자마다 구독 기록은 하나만 둔다 (createSubscription 은 기존 행을 그 자리에서 바꾼다).
+-- expiration_ts 인덱스는 갱신할 구독을 찾는 findExpiringBefore 가 사용한다.
+CREATE TABLE IF NOT EXISTS ms_subscription (
+    id              INT          NOT NULL AUTO_INCREMENT,
+    ms_user_id      INT          NOT NULL,
+    subscription_id VARCHAR(100),
+    client_state    VARCHAR(100),
+    expiration_ts   DATETIME(6),
+    PRIMARY KEY (id),
+    UNIQUE KEY ux_ms_subscription_ms_user_id (ms_user_id),
+    UNIQUE KEY ux_ms_subscription_subscription_id (subscription_id),
+    KEY ix_ms_subscription_expiration_ts (expiration_ts),
+    CONSTRAINT fk_ms_subscription_ms_user_id FOREIGN KEY (ms_user_id) REFERENCES monitored_users (id)
+);
+
+-- 테이블이 이미 있다면 사용자별 중복 행을 먼저 정리한 뒤 키만 추가한다:
+--   SELECT ms_user_id, COUNT(*) FROM ms_subscription GROUP BY ms_user_id HAVING COUNT(*) > 1;
+--   ALTER TABLE ms_subscription ADD UNIQUE INDEX ux_ms_subscription_ms_user_id (ms_user_id);
+--   ALTER TABLE ms_subscription ADD INDEX ix_ms_subscription_expiration_ts (expiration_ts);
@@ -0,0 +1,10 @@
+-- FileWriteBatcher(write-behind 단계)가 사용하는 인덱스 (MySQL)
+
+-- stored_file.salted_hash 는 SHA-256 hex (64자) 이므로 64자 prefix 유니크 인덱스로 전체 값을 구분할 수 있다.
+-- 내용별 기존 행 조회와 INSERT ... ON DUPLICATE KEY 가 이 키를 사용한다.
+-- 이미 중복 행이 있다면 먼저 정리해야 한다:
+--   SELECT salted_hash, COUNT(*) FROM stored_file GROUP BY salted_hash HAVING COUNT(*) > 1;
+ALTER TABLE stored_file ADD UNIQUE INDEX ux_stored_file_salted_hash (salted_hash(64));
+
+-- activities 의 (saas_file_id, event_ts) 중복 검사 (NOT EXISTS) 가 테이블 전체를 읽지 않도록
+ALTER TABLE activities ADD INDEX ix_activities_saas_file_id_event_ts (saas_file_id, event_ts);
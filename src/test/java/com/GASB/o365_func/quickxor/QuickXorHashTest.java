@@ -0,0 +1,67 @@
+package com.GASB.o365_func.quickxor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuickXorHashTest {
+
+    @Test
+    void emptyInputHashesToZero() {
+        assertThat(new QuickXorHash().getBase64()).isEqualTo("AAAAAAAAAAAAAAAAAAAAAAAAAAA=");
+    }
+
+    @Test
+    void matchesBitwiseDefinition() {
+        Random random = new Random(7);
+        for (int size : new int[]{1, 11, 159, 160, 161, 320, 1000, 65_537}) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+
+            QuickXorHash hash = new QuickXorHash();
+            hash.update(data);
+
+            assertThat(hash.getBase64()).as("size %d", size).isEqualTo(reference(data));
+            assertThat(hash.getLength()).isEqualTo(size);
+        }
+    }
+
+    @Test
+    void chunkedUpdatesMatchSingleUpdate() {
+        byte[] data = new byte[10_000];
+        new Random(3).nextBytes(data);
+        QuickXorHash whole = new QuickXorHash();
+        whole.update(data);
+
+        // 레인 경계에 걸치는 크기로 나눠 넣어도 결과가 같아야 한다
+        for (int chunk : new int[]{1, 7, 159, 160, 161, 4096}) {
+            QuickXorHash chunked = new QuickXorHash();
+            for (int offset = 0; offset < data.length; offset += chunk) {
+                chunked.update(data, offset, Math.min(chunk, data.length - offset));
+            }
+            assertThat(chunked.getBase64()).as("chunk %d", chunk).isEqualTo(whole.getBase64());
+        }
+    }
+
+    // p 번째 바이트의 b 번째 비트를 160 비트 원형 벡터의 (11 * p + b) mod 160 위치에 XOR 하고, 길이를 마지막 8 바이트에 XOR
+    private static String reference(byte[] data) {
+        byte[] hash = new byte[20];
+        for (long p = 0; p < data.length; p++) {
+            int value = data[(int) p] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((value >>> bit & 1) != 0) {
+                    int position = (int) ((11 * p + bit) % 160);
+                    hash[position / 8] ^= (byte) (1 << (position % 8));
+                }
+            }
+        }
+        long length = data.length;
+        for (int i = 0; i < 8; i++) {
+            hash[12 + i] ^= (byte) (length >>> (8 * i));
+        }
+        return Base64.getEncoder().encodeToString(hash);
+    }
+}
@@ -0,0 +1,197 @@
+package com.GASB.o365_func.service.api_call;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GraphRateGovernorTest {
+
+    private static final Request REQUEST = new Request.Builder().url("https://graph.microsoft.com/v1.0/me").build();
+
+    private SimpleMeterRegistry registry;
+    private GraphRateGovernor governor;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        governor = new GraphRateGovernor(registry);
+        ReflectionTestUtils.setField(governor, "requestsPerSecond", 1000.0);
+        ReflectionTestUtils.setField(governor, "burst", 1000.0);
+        ReflectionTestUtils.setField(governor, "initialLimit", 16.0);
+        ReflectionTestUtils.setField(governor, "minLimit", 1.0);
+        ReflectionTestUtils.setField(governor, "maxLimit", 64.0);
+        ReflectionTestUtils.setField(governor, "maxRetries", 0);
+        ReflectionTestUtils.setField(governor, "retryBackoffMs", 1L);
+        ReflectionTestUtils.setField(governor, "maxWaitMs", 5_000L);
+        governor.init();
+    }
+
+    @Test
+    void parseRetryAfter_seconds() {
+        assertThat(GraphRateGovernor.parseRetryAfterMs("5")).isEqualTo(5_000);
+        assertThat(GraphRateGovernor.parseRetryAfterMs(" 2 ")).isEqualTo(2_000);
+    }
+
+    @Test
+    void parseRetryAfter_httpDate() {
+        String inTenSeconds = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(10));
+        String past = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).minusMinutes(1));
+
+        assertThat(GraphRateGovernor.parseRetryAfterMs(inTenSeconds)).isBetween(8_000L, 10_000L);
+        assertThat(GraphRateGovernor.parseRetryAfterMs(past)).isZero();
+    }
+
+    @Test
+    void parseRetryAfter_missingOrInvalid() {
+        assertThat(GraphRateGovernor.parseRetryAfterMs(null)).isZero();
+        assertThat(GraphRateGovernor.parseRetryAfterMs("  ")).isZero();
+        assertThat(GraphRateGovernor.parseRetryAfterMs("soon")).isZero();
+    }
+
+    @Test
+    void successIncreasesLimitAdditively() throws IOException {
+        Interceptor interceptor = governor.interceptor(1);
+
+        interceptor.intercept(chain(200));
+
+        assertThat(limit(1)).isEqualTo(16 + 1.0 / 16);
+    }
+
+    @Test
+    void throttlingHalvesLimitOncePerSecond() throws IOException {
+        Interceptor interceptor = governor.interceptor(1);
+
+        interceptor.intercept(chain(429)).close();
+        assertThat(limit(1)).isEqualTo(8);
+
+        // 같은 1 초 안에 돌아온 429 는 한도를 다시 줄이지 않는다
+        interceptor.intercept(chain(503)).close();
+        assertThat(limit(1)).isEqualTo(8);
+    }
+
+    @Test
+    void limitNeverDropsBelowMin() throws IOException {
+        ReflectionTestUtils.setField(governor, "initialLimit", 1.0);
+        Interceptor interceptor = governor.interceptor(2);
+
+        interceptor.intercept(chain(429)).close();
+
+        assertThat(limit(2)).isEqualTo(1);
+    }
+
+    @Test
+    void retriesThrottledAndGatewayErrors() throws IOException {
+        ReflectionTestUtils.setField(governor, "maxRetries", 3);
+        Interceptor.Chain chain = chain(503, 502, 200);
+
+        Response response = governor.interceptor(1).intercept(chain);
+
+        assertThat(response.code()).isEqualTo(200);
+        verify(chain, times(3)).proceed(any());
+    }
+
+    @Test
+    void givesUpAfterMaxRetries() throws IOException {
+        ReflectionTestUtils.setField(governor, "maxRetries", 2);
+        Interceptor.Chain chain = chain(504, 504, 504, 200);
+
+        Response response = governor.interceptor(1).intercept(chain);
+
+        assertThat(response.code()).isEqualTo(504);
+        verify(chain, times(3)).proceed(any());
+    }
+
+    @Test
+    void retryAfterBlocksWholeTenant() throws IOException {
+        Interceptor interceptor = governor.interceptor(1);
+        interceptor.intercept(chain(response(429, "1"))).close();
+
+        long start = System.nanoTime();
+        interceptor.intercept(chain(200));
+
+        assertThat((System.nanoTime() - start) / 1_000_000).isGreaterThanOrEqualTo(900);
+        // 다른 테넌트는 영향을 받지 않는다
+        start = System.nanoTime();
+        governor.interceptor(2).intercept(chain(200));
+        assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(500);
+    }
+
+    @Test
+    void reportedThrottlingLowersLimitAndBlocksTenant() throws IOException {
+        Interceptor interceptor = governor.interceptor(1);
+
+        // $batch 안의 429 step 처럼 인터셉터 밖에서 받은 스로틀링
+        governor.reportThrottled(1, 1_000);
+        assertThat(limit(1)).isEqualTo(8);
+        assertThat(registry.get("graph.governor.throttled").counter().count()).isEqualTo(1);
+
+        long start = System.nanoTime();
+        interceptor.intercept(chain(200));
+        assertThat((System.nanoTime() - start) / 1_000_000).isGreaterThanOrEqualTo(900);
+    }
+
+    @Test
+    void rejectsWhenWaitExceedsMaxWait() throws IOException {
+        ReflectionTestUtils.setField(governor, "maxWaitMs", 100L);
+        Interceptor interceptor = governor.interceptor(1);
+        interceptor.intercept(chain(response(429, "30"))).close();
+
+        assertThatThrownBy(() -> interceptor.intercept(chain(200)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("rejected");
+        assertThat(registry.get("graph.governor.rejected").counter().count()).isEqualTo(1);
+    }
+
+    private double limit(int workspaceId) {
+        return registry.get("graph.governor.limit").tag("workspace", String.valueOf(workspaceId)).gauge().value();
+    }
+
+    private static Interceptor.Chain chain(int... codes) throws IOException {
+        return chain(Arrays.stream(codes).mapToObj(code -> response(code, null)).toArray(Response[]::new));
+    }
+
+    // 호출될 때마다 주어진 응답을 차례로 돌려주는 체인
+    private static Interceptor.Chain chain(Response... responses) throws IOException {
+        Deque<Response> queue = new ArrayDeque<>(Arrays.asList(responses));
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(REQUEST);
+        when(chain.proceed(any())).thenAnswer(invocation -> queue.poll());
+        return chain;
+    }
+
+    private static Response response(int code, String retryAfter) {
+        Response.Builder builder = new Response.Builder()
+                .request(REQUEST)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("status " + code)
+                .body(ResponseBody.create("", (MediaType) null));
+        if (retryAfter != null) {
+            builder.header("Retry-After", retryAfter);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,165 @@
+package com.GASB.o365_func.service.api_call;
+
+import com.GASB.o365_func.model.entity.MonitoredUsers;
+import com.GASB.o365_func.repository.ActivitiesRepo;
+import com.GASB.o365_func.repository.MonitoredUsersRepo;
+import com.GASB.o365_func.repository.MsDeltaLinkRepo;
+import com.microsoft.graph.models.DriveItem;
+import com.microsoft.graph.requests.GraphServiceClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MsApiServiceDeltaTest {
+
+    private static final String USER = "user-1";
+    private static final String DELTA_LINK = "https://graph.microsoft.com/v1.0/delta?token=next";
+
+    private final MonitoredUsersRepo monitoredUsersRepo = mock(MonitoredUsersRepo.class);
+    private final MsDeltaLinkRepo msDeltaLinkRepo = mock(MsDeltaLinkRepo.class);
+    private final MsDriveCrawler msDriveCrawler = mock(MsDriveCrawler.class);
+    private final GraphBatchFetcher graphBatchFetcher = mock(GraphBatchFetcher.class);
+    private final GraphServiceClient<?> graphClient = mock(GraphServiceClient.class);
+
+    private SimpleMeterRegistry registry;
+    private MsApiService service;
+    // 이번 사이클에 delta 가 돌려줄 항목 ID
+    private List<String> deltaIds = List.of();
+    // 이번 사이클에 $batch 조회 결과 (없으면 200)
+    private Map<String, Integer> lookupStatus = Map.of();
+    // 처리에 실패하는 항목 ID
+    private Set<String> failingIds = Set.of();
+    private final List<String> handled = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        service = new MsApiService(monitoredUsersRepo, mock(WorkspaceTokenStore.class), msDeltaLinkRepo,
+                mock(ActivitiesRepo.class), msDriveCrawler, graphBatchFetcher, mock(GraphRateGovernor.class),
+                Runnable::run, registry);
+        ReflectionTestUtils.setField(service, "maxFailedDeltaCycles", 3);
+
+        when(monitoredUsersRepo.getIdx(USER)).thenReturn(1);
+        when(monitoredUsersRepo.findByUserId(USER)).thenReturn(Optional.of(mock(MonitoredUsers.class)));
+        when(msDeltaLinkRepo.findDeltaLinkByUserId(1)).thenReturn(Optional.of("current"));
+        when(msDeltaLinkRepo.existsByMonitoredUsers_Id(anyInt())).thenReturn(true);
+        when(msDriveCrawler.enumerateDeltaPages(any(), any(), eq("current"), any())).thenAnswer(invocation -> {
+            Consumer<List<DriveItem>> pageConsumer = invocation.getArgument(3);
+            pageConsumer.accept(deltaIds.stream().map(MsApiServiceDeltaTest::changedItem).toList());
+            return DELTA_LINK;
+        });
+        when(graphBatchFetcher.fetchDriveItems(any(), anyInt(), anyString(), anyList())).thenAnswer(invocation -> {
+            List<String> ids = invocation.getArgument(3);
+            return ids.stream().map(id -> {
+                int status = lookupStatus.getOrDefault(id, 200);
+                return new GraphBatchFetcher.ItemResult(status, status == 200 ? changedItem(id) : null);
+            }).toList();
+        });
+    }
+
+    @Test
+    void successfulCycleSavesToken() {
+        deltaIds = List.of("a", "b");
+
+        assertThat(sync()).succeedsWithin(Duration.ofSeconds(5)).isEqualTo(2);
+
+        assertThat(handled).containsExactly("a", "b");
+        verify(msDeltaLinkRepo).updateDeltaLink(eq("next"), anyInt());
+    }
+
+    @Test
+    void deletedItemIsSkippedAndTokenSaved() {
+        deltaIds = List.of("a", "gone");
+        lookupStatus = Map.of("gone", 404);
+
+        assertThat(sync()).succeedsWithin(Duration.ofSeconds(5));
+
+        assertThat(handled).containsExactly("a");
+        verify(msDeltaLinkRepo).updateDeltaLink(eq("next"), anyInt());
+    }
+
+    @Test
+    void failedLookupKeepsToken() {
+        deltaIds = List.of("a", "b");
+        lookupStatus = Map.of("b", 500);
+
+        assertThat(sync()).failsWithin(Duration.ofSeconds(5));
+
+        // 조회된 항목은 처리하지만 토큰은 넘기지 않는다
+        assertThat(handled).containsExactly("a");
+        verify(msDeltaLinkRepo, never()).updateDeltaLink(anyString(), anyInt());
+    }
+
+    @Test
+    void itemFailingMaxCyclesIsDeadLetteredAndTokenAdvances() {
+        deltaIds = List.of("a", "bad");
+        failingIds = Set.of("bad");
+
+        assertThat(sync()).failsWithin(Duration.ofSeconds(5));
+        assertThat(sync()).failsWithin(Duration.ofSeconds(5));
+        verify(msDeltaLinkRepo, never()).updateDeltaLink(anyString(), anyInt());
+
+        assertThat(sync()).succeedsWithin(Duration.ofSeconds(5));
+        verify(msDeltaLinkRepo, times(1)).updateDeltaLink(eq("next"), anyInt());
+        assertThat(registry.get("o365.delta.dead_lettered").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void newFailureStillKeepsTokenAlongsideDeadLetteredItem() {
+        deltaIds = List.of("bad");
+        failingIds = Set.of("bad");
+        sync();
+        sync();
+
+        // "bad" 는 세 번째 실패지만 새로 실패한 "other" 때문에 토큰을 넘기지 않는다
+        deltaIds = List.of("bad", "other");
+        failingIds = Set.of("bad", "other");
+        assertThat(sync()).failsWithin(Duration.ofSeconds(5));
+
+        verify(msDeltaLinkRepo, never()).updateDeltaLink(anyString(), anyInt());
+    }
+
+    private CompletableFuture<Integer> sync() {
+        Function<Map<DriveItem, String>, CompletableFuture<Void>> handler = changes -> {
+            DriveItem item = changes.keySet().iterator().next();
+            if (failingIds.contains(item.id)) {
+                return CompletableFuture.failedFuture(new IllegalStateException("processing failed: " + item.id));
+            }
+            handled.add(item.id);
+            return CompletableFuture.completedFuture(null);
+        };
+        return service.syncDelta(USER, 7, graphClient, handler);
+    }
+
+    private static DriveItem changedItem(String id) {
+        DriveItem item = new DriveItem();
+        item.id = id;
+        item.createdDateTime = OffsetDateTime.parse("2024-01-01T00:00:00Z");
+        item.lastModifiedDateTime = OffsetDateTime.parse("2024-01-02T00:00:00Z");
+        return item;
+    }
+}
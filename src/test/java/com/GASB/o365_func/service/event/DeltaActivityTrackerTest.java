@@ -0,0 +1,99 @@
+package com.GASB.o365_func.service.event;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeltaActivityTrackerTest {
+
+    private static final long MIN = 60_000;
+    private static final long MAX = 480_000;
+
+    private DeltaActivityTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new DeltaActivityTracker();
+        ReflectionTestUtils.setField(tracker, "minIntervalMs", MIN);
+        ReflectionTestUtils.setField(tracker, "maxIntervalMs", MAX);
+    }
+
+    @Test
+    void newUserBecomesDueWithinMinInterval() {
+        long now = System.currentTimeMillis();
+
+        tracker.isDue("user", now);
+
+        assertThat(tracker.isDue("user", now + MIN)).isTrue();
+    }
+
+    @Test
+    void quietCyclesDoubleIntervalUpToMax() {
+        tracker.record("user", 0);
+        assertDueAfter("user", 2 * MIN);
+
+        tracker.record("user", 0);
+        assertDueAfter("user", 4 * MIN);
+
+        for (int i = 0; i < 5; i++) {
+            tracker.record("user", 0);
+        }
+        assertDueAfter("user", MAX);
+    }
+
+    @Test
+    void changesResetIntervalToMin() {
+        for (int i = 0; i < 3; i++) {
+            tracker.record("user", 0);
+        }
+
+        tracker.record("user", 5);
+
+        assertDueAfter("user", MIN);
+    }
+
+    @Test
+    void failuresBackOff() {
+        tracker.recordFailure("user");
+        assertDueAfter("user", 2 * MIN);
+
+        tracker.recordFailure("user");
+        assertDueAfter("user", 4 * MIN);
+    }
+
+    @Test
+    void markPolledDefersNextPollByCurrentInterval() {
+        long now = System.currentTimeMillis();
+        tracker.record("user", 0);
+
+        tracker.markPolled("user", now);
+
+        assertThat(tracker.isDue("user", now + 2 * MIN - 1)).isFalse();
+        assertThat(tracker.isDue("user", now + 2 * MIN)).isTrue();
+    }
+
+    @Test
+    void retainDropsUntrackedUsers() {
+        tracker.record("kept", 0);
+        tracker.record("dropped", 0);
+
+        tracker.retain(List.of("kept"));
+
+        long now = System.currentTimeMillis();
+        assertThat(tracker.isDue("kept", now + MIN)).isFalse();
+        // 다시 처음 보는 사용자로 취급되어 늘어난 간격 대신 min-interval 안에 폴링된다
+        tracker.isDue("dropped", now);
+        assertThat(tracker.isDue("dropped", now + MIN)).isTrue();
+    }
+
+    // record 직후 기준으로 interval 이 지나기 전에는 폴링하지 않고, 지나면 폴링한다
+    private void assertDueAfter(String userId, long interval) {
+        long now = System.currentTimeMillis();
+        assertThat(tracker.isDue(userId, now + interval - 1_000)).isFalse();
+        assertThat(tracker.isDue(userId, now + interval + 1_000)).isTrue();
+    }
+}
@@ -0,0 +1,117 @@
+package com.GASB.o365_func.service.event;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeltaCoalescerTest {
+
+    private DeltaCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new DeltaCoalescer(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(coalescer, "debounceMs", 50L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.shutdown();
+    }
+
+    @Test
+    void runsImmediatelyWhenIdle() {
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletableFuture<Void> future = coalescer.submit("user", () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertThat(future).isCompleted();
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void notificationsDuringCycleCoalesceIntoOneFollowUp() throws Exception {
+        CopyOnWriteArrayList<CompletableFuture<Void>> cycles = new CopyOnWriteArrayList<>();
+        Supplier<CompletableFuture<Void>> cycle = () -> {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            cycles.add(future);
+            return future;
+        };
+
+        coalescer.submit("user", cycle);
+        for (int i = 0; i < 5; i++) {
+            // 실행 중에 들어온 알림은 완료된 future 를 바로 받는다
+            assertThat(coalescer.submit("user", cycle)).isCompleted();
+        }
+        assertThat(cycles).hasSize(1);
+
+        cycles.get(0).complete(null);
+        CompletableFuture<Void> followUp = awaitCycle(cycles, 2);
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(cycles).hasSize(2);
+
+        // 후속 실행이 끝나고 대기 중인 알림이 없으면 다음 알림은 바로 실행된다
+        followUp.complete(null);
+        TimeUnit.MILLISECONDS.sleep(100);
+        coalescer.submit("user", cycle);
+        assertThat(cycles).hasSize(3);
+    }
+
+    @Test
+    void failedCycleStillReleasesUser() {
+        AtomicInteger runs = new AtomicInteger();
+
+        coalescer.submit("user", () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException("boom"));
+        });
+        coalescer.submit("user", () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("boom");
+        });
+        coalescer.submit("user", () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertThat(runs).hasValue(3);
+    }
+
+    @Test
+    void usersDoNotBlockEachOther() {
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        AtomicInteger otherRuns = new AtomicInteger();
+
+        coalescer.submit("user-1", () -> first);
+        coalescer.submit("user-2", () -> {
+            otherRuns.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertThat(otherRuns).hasValue(1);
+        first.complete(null);
+    }
+
+    private static CompletableFuture<Void> awaitCycle(CopyOnWriteArrayList<CompletableFuture<Void>> cycles, int count)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cycles.size() < count && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertThat(cycles).hasSizeGreaterThanOrEqualTo(count);
+        return cycles.get(count - 1);
+    }
+}
@@ -0,0 +1,361 @@
+package com.GASB.o365_func.service.persistence;
+
+import com.GASB.o365_func.model.entity.Activities;
+import com.GASB.o365_func.model.entity.FileUploadTable;
+import com.GASB.o365_func.model.entity.MonitoredUsers;
+import com.GASB.o365_func.model.entity.OrgSaaS;
+import com.GASB.o365_func.model.entity.StoredFile;
+import com.GASB.o365_func.model.entity.TypeScan;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FileWriteBatcherTest {
+
+    private static final LocalDateTime EVENT_TS = LocalDateTime.of(2024, 8, 1, 12, 0);
+
+    private final FakeDatabase database = new FakeDatabase();
+    private FileWriteBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        batcher = new FileWriteBatcher(database.jdbcTemplate(), new SimpleMeterRegistry());
+        batchOf(1);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        batcher.shutdown();
+    }
+
+    @Test
+    void writesNewFileAndReturnsGeneratedIds() throws Exception {
+        FileWriteResult result = await(writeFile("hash-1", "file-1"));
+
+        assertThat(result.isStoredFileInserted()).isTrue();
+        assertThat(result.getUploadId()).isEqualTo(1L);
+        assertThat(result.getActivityId()).isEqualTo(1L);
+        assertThat(database.storedHashes).containsExactly("hash-1");
+        assertThat(database.uploads).containsEntry("file-1", 1L);
+    }
+
+    @Test
+    void sameContentInOneBatchIsStoredOnce() throws Exception {
+        batchOf(2);
+
+        CompletableFuture<FileWriteResult> first = writeFile("hash-1", "file-1");
+        CompletableFuture<FileWriteResult> second = writeFile("hash-1", "file-2");
+
+        assertThat(await(first).isStoredFileInserted()).isTrue();
+        assertThat(await(second).isStoredFileInserted()).isFalse();
+        assertThat(await(first).getUploadId()).isEqualTo(1L);
+        assertThat(await(second).getUploadId()).isEqualTo(2L);
+        assertThat(database.storedFileInserts).isEqualTo(1);
+        // 두 요청이 한 트랜잭션에서 기록된다
+        assertThat(database.commits).isEqualTo(1);
+    }
+
+    @Test
+    void existingRowsAreNotWrittenAgain() throws Exception {
+        database.storedHashes.add("hash-1");
+        database.uploads.put("file-1", 42L);
+        database.activities.add(activityKey("file-1", EVENT_TS));
+
+        FileWriteResult result = await(writeFile("hash-1", "file-1"));
+
+        assertThat(result.isStoredFileInserted()).isFalse();
+        assertThat(result.getUploadId()).isNull();
+        assertThat(result.getActivityId()).isNull();
+        assertThat(database.storedFileInserts).isZero();
+    }
+
+    @Test
+    void failedBatchIsRetriedOneByOne() throws Exception {
+        batchOf(2);
+        database.failingHash = "bad-hash";
+
+        CompletableFuture<FileWriteResult> good = writeFile("hash-1", "file-1");
+        CompletableFuture<FileWriteResult> bad = writeFile("bad-hash", "file-2");
+
+        FileWriteResult result = await(good);
+        assertThat(result.isStoredFileInserted()).isTrue();
+        assertThat(result.getUploadId()).isNotNull();
+        assertThatThrownBy(() -> await(bad)).hasCauseInstanceOf(DataAccessException.class);
+        // 실패한 배치는 롤백되고 성공한 건만 남는다
+        assertThat(database.storedHashes).containsExactly("hash-1");
+        assertThat(database.uploads).containsOnlyKeys("file-1");
+    }
+
+    @Test
+    void activityBatchWithoutPerRowCountsFallsBackToSingleWrites() throws Exception {
+        batchOf(2);
+        database.activityBatchWithoutCounts = true;
+
+        CompletableFuture<FileWriteResult> first = writeFile("hash-1", "file-1");
+        CompletableFuture<FileWriteResult> second = writeFile("hash-2", "file-2");
+
+        assertThat(await(first).getActivityId()).isNotNull();
+        assertThat(await(second).getActivityId()).isNotNull();
+        assertThat(await(first).getActivityId()).isNotEqualTo(await(second).getActivityId());
+        assertThat(database.activities).hasSize(2);
+    }
+
+    @Test
+    void writesTypeScan() throws Exception {
+        TypeScan typeScan = TypeScan.builder().correct(true).mimetype("application/pdf").signature("pdf").extension("pdf").build();
+
+        await(batcher.writeTypeScan(7L, typeScan));
+
+        assertThat(database.typeScans).containsExactly(List.of(7L, true, "application/pdf", "pdf", "pdf"));
+    }
+
+    @Test
+    void rejectsWritesAfterShutdown() throws InterruptedException {
+        batcher.shutdown();
+
+        assertThatThrownBy(() -> await(writeFile("hash-1", "file-1")))
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    // batchSize 개가 모일 때까지 기다렸다가 한 배치로 기록하도록 설정
+    private void batchOf(int size) {
+        if (ReflectionTestUtils.getField(batcher, "writer") != null) {
+            try {
+                batcher.shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batcher = new FileWriteBatcher(database.jdbcTemplate(), new SimpleMeterRegistry());
+        }
+        ReflectionTestUtils.setField(batcher, "batchSize", size);
+        ReflectionTestUtils.setField(batcher, "lingerMs", 5_000L);
+        batcher.init();
+    }
+
+    private CompletableFuture<FileWriteResult> writeFile(String hash, String saasFileId) {
+        MonitoredUsers user = MonitoredUsers.builder().userId("user").build();
+        ReflectionTestUtils.setField(user, "id", 3);
+        StoredFile storedFile = StoredFile.builder().saltedHash(hash).size(10).type("pdf").savePath("s3://bucket/" + hash).build();
+        FileUploadTable fileUpload = FileUploadTable.builder()
+                .orgSaaS(OrgSaaS.builder().id(1).build())
+                .saasFileId(saasFileId)
+                .hash(hash)
+                .timestamp(EVENT_TS)
+                .build();
+        Activities activity = Activities.builder()
+                .user(user)
+                .eventType("file_upload")
+                .saasFileId(saasFileId)
+                .fileName(saasFileId + ".pdf")
+                .eventTs(EVENT_TS)
+                .uploadChannel("onedrive")
+                .build();
+        return batcher.writeFile(storedFile, fileUpload, activity);
+    }
+
+    private static FileWriteResult await(CompletableFuture<FileWriteResult> future)
+            throws ExecutionException, InterruptedException {
+        try {
+            return future.get(10, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new AssertionError("write did not complete", e);
+        }
+    }
+
+    private static String activityKey(Object saasFileId, Object eventTs) {
+        return saasFileId + "|" + eventTs;
+    }
+
+    /**
+     * FileWriteBatcher 가 보내는 SQL 만 흉내 내는 메모리 DB.
+     * 트랜잭션은 setAutoCommit(false) 시점의 상태를 저장해 두었다가 rollback 때 되돌린다.
+     */
+    private static final class FakeDatabase {
+        final Set<String> storedHashes = new HashSet<>();
+        final Map<String, Long> uploads = new LinkedHashMap<>();
+        final Set<String> activities = new HashSet<>();
+        final List<List<Object>> typeScans = new ArrayList<>();
+        int storedFileInserts;
+        int commits;
+        String failingHash;
+        boolean activityBatchWithoutCounts;
+
+        private long nextUploadId = 1;
+        private long nextActivityId = 1;
+        private Object[] snapshot;
+
+        JdbcTemplate jdbcTemplate() {
+            Connection connection = connection();
+            JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+            // JdbcTemplate 처럼 SQLException 을 DataAccessException 으로 바꿔 던진다
+            when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation -> {
+                try {
+                    return invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection);
+                } catch (SQLException e) {
+                    throw new UncategorizedSQLException("ConnectionCallback", null, e);
+                }
+            });
+            return jdbcTemplate;
+        }
+
+        private Connection connection() {
+            Connection connection = mock(Connection.class);
+            try {
+                when(connection.getAutoCommit()).thenReturn(true);
+                doAnswer(invocation -> {
+                    if (!invocation.<Boolean>getArgument(0)) {
+                        snapshot = new Object[]{new HashSet<>(storedHashes), new LinkedHashMap<>(uploads),
+                                new HashSet<>(activities), new ArrayList<>(typeScans), storedFileInserts};
+                    }
+                    return null;
+                }).when(connection).setAutoCommit(anyBoolean());
+                doAnswer(invocation -> commits++).when(connection).commit();
+                doAnswer(invocation -> rollback()).when(connection).rollback();
+                when(connection.prepareStatement(anyString())).thenAnswer(invocation -> statement(invocation.getArgument(0)));
+                when(connection.prepareStatement(anyString(), anyInt())).thenAnswer(invocation -> statement(invocation.getArgument(0)));
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            return connection;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object rollback() {
+            storedHashes.clear();
+            storedHashes.addAll((Set<String>) snapshot[0]);
+            uploads.clear();
+            uploads.putAll((Map<String, Long>) snapshot[1]);
+            activities.clear();
+            activities.addAll((Set<String>) snapshot[2]);
+            typeScans.clear();
+            typeScans.addAll((List<List<Object>>) snapshot[3]);
+            storedFileInserts = (int) snapshot[4];
+            return null;
+        }
+
+        private PreparedStatement statement(String sql) {
+            Map<Integer, Object> parameters = new HashMap<>();
+            List<Map<Integer, Object>> batch = new ArrayList<>();
+            List<Long> generatedKeys = new ArrayList<>();
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "setString", "setInt", "setLong", "setObject", "setBoolean" -> {
+                            parameters.put((Integer) args[0], args[1]);
+                            yield null;
+                        }
+                        case "addBatch" -> {
+                            batch.add(new HashMap<>(parameters));
+                            parameters.clear();
+                            yield null;
+                        }
+                        case "executeBatch" -> executeBatch(sql, batch, generatedKeys);
+                        case "executeQuery" -> query(sql, parameters);
+                        case "executeUpdate" -> 1;
+                        case "getGeneratedKeys" -> resultSet(generatedKeys.stream().map(key -> List.<Object>of(key)).toList(), 1);
+                        case "close" -> null;
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        private int[] executeBatch(String sql, List<Map<Integer, Object>> batch, List<Long> generatedKeys) throws SQLException {
+            int[] counts = new int[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                Map<Integer, Object> row = batch.get(i);
+                if (sql.startsWith("INSERT INTO stored_file")) {
+                    if (Objects.equals(row.get(1), failingHash)) {
+                        throw new SQLException("Data truncation: " + failingHash);
+                    }
+                    counts[i] = storedHashes.add((String) row.get(1)) ? 1 : 0;
+                    storedFileInserts += counts[i];
+                } else if (sql.startsWith("INSERT INTO file_upload")) {
+                    String saasFileId = (String) row.get(2);
+                    if (!uploads.containsKey(saasFileId)) {
+                        uploads.put(saasFileId, nextUploadId);
+                        generatedKeys.add(nextUploadId++);
+                        counts[i] = 1;
+                    }
+                } else if (sql.startsWith("INSERT INTO activities")) {
+                    if (activities.add(activityKey(row.get(8), row.get(9)))) {
+                        generatedKeys.add(nextActivityId++);
+                        counts[i] = 1;
+                    }
+                    if (activityBatchWithoutCounts && batch.size() > 1) {
+                        counts[i] = Statement.SUCCESS_NO_INFO;
+                    }
+                } else if (sql.startsWith("INSERT INTO type_scan")) {
+                    typeScans.add(List.of(row.get(1), row.get(2), row.get(3), row.get(4), row.get(5)));
+                    counts[i] = 1;
+                } else {
+                    throw new UnsupportedOperationException(sql);
+                }
+            }
+            batch.clear();
+            return counts;
+        }
+
+        private ResultSet query(String sql, Map<Integer, Object> parameters) {
+            List<List<Object>> rows = new ArrayList<>();
+            if (sql.startsWith("SELECT salted_hash FROM stored_file")) {
+                parameters.values().stream().filter(storedHashes::contains).forEach(hash -> rows.add(List.of(hash)));
+                return resultSet(rows, 1);
+            }
+            if (sql.startsWith("SELECT saas_file_id, id FROM file_upload")) {
+                parameters.values().stream().filter(uploads::containsKey).forEach(id -> rows.add(List.of(id, uploads.get(id))));
+                return resultSet(rows, 2);
+            }
+            throw new UnsupportedOperationException(sql);
+        }
+
+        private static ResultSet resultSet(List<List<Object>> rows, int columns) {
+            ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(),
+                    new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> columns);
+            int[] cursor = {-1};
+            return (ResultSet) Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "next" -> ++cursor[0] < rows.size();
+                        case "getString" -> (String) rows.get(cursor[0]).get((Integer) args[0] - 1);
+                        case "getLong" -> (Long) rows.get(cursor[0]).get((Integer) args[0] - 1);
+                        case "getMetaData" -> metaData;
+                        case "close" -> null;
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
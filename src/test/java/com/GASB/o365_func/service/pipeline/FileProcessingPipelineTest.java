@@ -0,0 +1,179 @@
+package com.GASB.o365_func.service.pipeline;
+
+import com.GASB.o365_func.config.PipelineProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileProcessingPipelineTest {
+
+    private FileProcessingPipeline pipeline;
+
+    @AfterEach
+    void tearDown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    void tenantsAreServedRoundRobin() throws Exception {
+        start(1, 100, 100);
+        CountDownLatch release = blockWorker();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        // 테넌트 1 이 먼저 여러 건을 넣어도 테넌트 2 가 뒤로 밀리지 않는다
+        pipeline.submit(1, () -> order.add("a1"));
+        pipeline.submit(1, () -> order.add("a2"));
+        pipeline.submit(1, () -> order.add("a3"));
+        pipeline.submit(2, () -> order.add("b1"));
+        CompletableFuture<Void> last = pipeline.submit(2, () -> order.add("b2"));
+        release.countDown();
+
+        last.get(5, TimeUnit.SECONDS);
+        awaitSize(order, 5);
+        assertThat(order).containsExactly("a1", "b1", "a2", "b2", "a3");
+    }
+
+    @Test
+    void fullTenantQueueBlocksOnlyThatTenant() throws Exception {
+        start(1, 100, 2);
+        CountDownLatch release = blockWorker();
+        pipeline.submit(1, () -> { });
+        pipeline.submit(1, () -> { });
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> pipeline.submit(1, () -> { }));
+        CompletableFuture<Void> other = CompletableFuture.runAsync(() -> pipeline.submit(2, () -> { }));
+
+        other.get(5, TimeUnit.SECONDS);
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(blocked).isNotDone();
+
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void fullQueueBlocksSubmitUntilWorkerTakesTask() throws Exception {
+        start(1, 2, 100);
+        CountDownLatch release = blockWorker();
+        pipeline.submit(1, () -> { });
+        pipeline.submit(2, () -> { });
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> pipeline.submit(3, () -> { }));
+
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(blocked).isNotDone();
+        assertThat(pipeline.getQueueDepth()).isEqualTo(2);
+
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void taskFailureCompletesFutureExceptionally() {
+        start(1, 100, 100);
+
+        CompletableFuture<Void> future = pipeline.submit(1, () -> {
+            throw new IllegalStateException("boom");
+        });
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void stageLimitBoundsConcurrency() throws Exception {
+        PipelineProperties properties = properties(4, 100, 100);
+        properties.setScanConcurrency(2);
+        start(properties);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[8];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = pipeline.submit(1, () -> pipeline.runStage(PipelineStage.SCAN, () -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                sleep(20);
+                active.decrementAndGet();
+            }));
+        }
+        CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+
+        assertThat(maxActive.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shutdownRejectsPendingAndNewTasks() throws Exception {
+        start(1, 100, 100);
+        CountDownLatch release = blockWorker();
+        CompletableFuture<Void> pending = pipeline.submit(1, () -> { });
+
+        pipeline.shutdown();
+        release.countDown();
+
+        assertThatThrownBy(() -> pending.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(pipeline.submit(1, () -> { })).isCompletedExceptionally();
+    }
+
+    private void start(int workers, int queueCapacity, int tenantQueueCapacity) {
+        start(properties(workers, queueCapacity, tenantQueueCapacity));
+    }
+
+    private void start(PipelineProperties properties) {
+        pipeline = new FileProcessingPipeline(properties, new SimpleMeterRegistry());
+        pipeline.init();
+    }
+
+    private static PipelineProperties properties(int workers, int queueCapacity, int tenantQueueCapacity) {
+        PipelineProperties properties = new PipelineProperties();
+        properties.setWorkers(workers);
+        properties.setQueueCapacity(queueCapacity);
+        properties.setTenantQueueCapacity(tenantQueueCapacity);
+        return properties;
+    }
+
+    // 유일한 워커를 붙잡아 두어 이후 작업이 대기열에 쌓이게 한다
+    private CountDownLatch blockWorker() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline.submit(0, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        return release;
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (list.size() < size && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.GASB.o365_func.service.scan;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContainerInspectorTest {
+
+    @Test
+    void inspectZip_detectsOoxmlSubtypes() throws IOException {
+        assertThat(inspect(zip("[Content_Types].xml", "word/document.xml"))).isEqualTo(FileFormat.DOCX);
+        assertThat(inspect(zip("[Content_Types].xml", "xl/workbook.xml"))).isEqualTo(FileFormat.XLSX);
+        assertThat(inspect(zip("[Content_Types].xml", "ppt/presentation.xml"))).isEqualTo(FileFormat.PPTX);
+    }
+
+    @Test
+    void inspectZip_detectsJarAndApk() throws IOException {
+        assertThat(inspect(zip("META-INF/MANIFEST.MF", "com/example/Main.class"))).isEqualTo(FileFormat.JAR);
+        assertThat(inspect(zip("META-INF/MANIFEST.MF", "AndroidManifest.xml"))).isEqualTo(FileFormat.APK);
+    }
+
+    @Test
+    void inspectZip_returnsPlainZipWhenAllEntriesWereSeen() throws IOException {
+        byte[] header = zip("readme.txt", "data/values.csv");
+
+        assertThat(inspect(header)).isEqualTo(FileFormat.PLAIN_ZIP);
+        assertThat(FileFormat.PLAIN_ZIP.resolveExtension("docx")).isEqualTo("zip");
+    }
+
+    @Test
+    void inspectZip_returnsPlainZipForEmptyArchive() throws IOException {
+        assertThat(inspect(zip())).isEqualTo(FileFormat.PLAIN_ZIP);
+    }
+
+    @Test
+    void inspectZip_returnsGenericZipWhenHeaderEndsBeforeCentralDirectory() throws IOException {
+        byte[] archive = zip("readme.txt", "data/values.csv", "word/document.xml");
+        // 마지막 항목 전에 header 가 끝나면 하위 형식을 정할 수 없다
+        int cut = indexOf(archive, "word/document.xml".getBytes()) - 30;
+
+        FileFormat format = ContainerInspector.inspectZip(archive, cut);
+
+        assertThat(format).isEqualTo(FileFormat.ZIP);
+        assertThat(format.resolveExtension("docx")).isEqualTo("docx");
+    }
+
+    @Test
+    void inspectCfb_keepsGenericFormatWhenDirectoryIsOutsideHeader() {
+        byte[] header = new byte[512];
+        System.arraycopy(new byte[]{(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1}, 0, header, 0, 8);
+        header[0x1E] = 9;
+        header[0x30] = 10;
+
+        assertThat(ContainerInspector.inspectCfb(header, header.length)).isEqualTo(FileFormat.CFB);
+    }
+
+    private static FileFormat inspect(byte[] archive) {
+        return ContainerInspector.inspectZip(archive, archive.length);
+    }
+
+    // ZipOutputStream 은 압축한 항목의 크기를 data descriptor 에 적는다
+    static byte[] zip(String... names) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (String name : names) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(("content of " + name).getBytes());
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle) {
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            if (Arrays.equals(haystack, i, i + needle.length, needle, 0, needle.length)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("not found");
+    }
+}
@@ -0,0 +1,70 @@
+package com.GASB.o365_func.service.scan;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MagicDetectorTest {
+
+    private final MagicDetector detector = new MagicDetector(8192);
+
+    @Test
+    void detectsSignaturesAtStart() {
+        assertThat(detector.detect(ascii("%PDF-1.7\n"))).isEqualTo(FileFormat.PDF);
+        assertThat(detector.detect(bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A))).isEqualTo(FileFormat.PNG);
+        assertThat(detector.detect(bytes(0xFF, 0xD8, 0xFF, 0xE1))).isEqualTo(FileFormat.JPG);
+        assertThat(detector.detect(ascii("GIF89a"))).isEqualTo(FileFormat.GIF);
+        assertThat(detector.detect(ascii("MZ\u0090\u0000"))).isEqualTo(FileFormat.EXE);
+    }
+
+    @Test
+    void prefersLongerSignatureAndIgnoresCaseWhereAllowed() {
+        assertThat(detector.detect(ascii("<!DOCTYPE HTML><html>"))).isEqualTo(FileFormat.HTML);
+        assertThat(detector.detect(ascii("RIFF\u0000\u0000\u0000\u0000WEBPVP8 "))).isEqualTo(FileFormat.WEBP);
+    }
+
+    @Test
+    void detectsSignatureAtOffset() {
+        byte[] tar = new byte[512];
+        System.arraycopy(ascii("ustar"), 0, tar, 257, 5);
+
+        assertThat(detector.detect(tar)).isEqualTo(FileFormat.TAR);
+    }
+
+    @Test
+    void refinesZipContainers() throws IOException {
+        assertThat(detector.detect(ContainerInspectorTest.zip("[Content_Types].xml", "xl/workbook.xml"))).isEqualTo(FileFormat.XLSX);
+        assertThat(detector.detect(ContainerInspectorTest.zip("notes.txt"))).isEqualTo(FileFormat.PLAIN_ZIP);
+    }
+
+    @Test
+    void returnsNullForUnknownOrShortContent() {
+        assertThat(detector.detect(ascii("just some text"))).isNull();
+        assertThat(detector.detect(bytes(0x89, 'P'))).isNull();
+        assertThat(detector.detect(new byte[0])).isNull();
+        assertThat(detector.detect(null)).isNull();
+    }
+
+    @Test
+    void onlyLooksAtTheGivenLength() {
+        byte[] pdf = ascii("%PDF-1.7");
+
+        assertThat(detector.detect(pdf, 3)).isNull();
+        assertThat(detector.detect(pdf, pdf.length)).isEqualTo(FileFormat.PDF);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,73 @@
+package com.GASB.o365_func.service.scan;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 업로드마다 판별하므로 파일 처리량보다 충분히 빨라야 한다 (목표: 초당 100k 파일 이상)
+// 실행 환경에 따라 결과가 달라지므로 test 에서는 빠지고 gradle benchmark 로만 실행된다
+@Tag("benchmark")
+class MagicDetectorThroughputTest {
+
+    private static final int READ_BUDGET = 8192;
+    private static final long MIN_FILES_PER_SECOND = 100_000;
+
+    @Test
+    void detect_handlesAtLeastHundredThousandFilesPerSecond() throws IOException {
+        MagicDetector detector = new MagicDetector(READ_BUDGET);
+        byte[][] headers = sampleHeaders();
+
+        // JIT 워밍업
+        int sink = run(detector, headers, 200_000);
+
+        int iterations = 1_000_000;
+        long start = System.nanoTime();
+        sink += run(detector, headers, iterations);
+        long elapsed = System.nanoTime() - start;
+
+        double filesPerSecond = iterations / (elapsed / 1_000_000_000.0);
+        // sink 는 판별 결과가 최적화로 사라지지 않도록 남겨 둔 값
+        assertThat(filesPerSecond)
+                .as("MagicDetector files/sec (sink %d)", sink)
+                .isGreaterThanOrEqualTo(MIN_FILES_PER_SECOND);
+    }
+
+    private static int run(MagicDetector detector, byte[][] headers, int iterations) {
+        int sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            FileFormat format = detector.detect(headers[i % headers.length]);
+            sink += format == null ? 0 : format.ordinal();
+        }
+        return sink;
+    }
+
+    // 다운로드 중에 보관하는 것과 같은 크기의 header 들 (시그니처가 없는 내용 포함)
+    private static byte[][] sampleHeaders() throws IOException {
+        Random random = new Random(42);
+        byte[] unknown = new byte[READ_BUDGET];
+        random.nextBytes(unknown);
+        unknown[0] = 0x11;
+        return new byte[][]{
+                budget(ContainerInspectorTest.zip("[Content_Types].xml", "_rels/.rels", "word/document.xml")),
+                budget(ContainerInspectorTest.zip("readme.txt", "data/values.csv")),
+                budget(ContainerInspectorTest.zip("META-INF/MANIFEST.MF", "com/example/Main.class")),
+                budget("%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII)),
+                budget(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A}),
+                budget(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0}),
+                budget(new byte[]{(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1}),
+                budget("MZ".getBytes(StandardCharsets.US_ASCII)),
+                unknown
+        };
+    }
+
+    private static byte[] budget(byte[] prefix) {
+        byte[] header = new byte[Math.max(prefix.length, READ_BUDGET)];
+        System.arraycopy(prefix, 0, header, 0, prefix.length);
+        return header;
+    }
+}
@@ -0,0 +1,92 @@
+package com.GASB.o365_func.service.spool;
+
+import com.GASB.o365_func.config.SpoolProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpoolManagerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void unknownSizeReservesDefault() throws Exception {
+        SpoolManager manager = start(properties(1000, 300));
+
+        SpoolFile unknown = manager.allocate("a.bin", 0);
+        SpoolFile known = manager.allocate("b.bin", 100);
+
+        assertThat(unknown.getReservedBytes()).isEqualTo(300);
+        assertThat(manager.getReservedBytes()).isEqualTo(400);
+
+        manager.release(unknown);
+        manager.release(known);
+        assertThat(manager.getReservedBytes()).isZero();
+    }
+
+    @Test
+    void unknownSizeWaitsForQuota() throws Exception {
+        SpoolManager manager = start(properties(1000, 300));
+        SpoolFile large = manager.allocate("large.bin", 800);
+
+        // 크기를 모르는 파일도 예약 용량만큼 자리가 나야 발급된다
+        CompletableFuture<SpoolFile> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return manager.allocate("unknown.bin", -1);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(waiting).isNotDone();
+
+        manager.release(large);
+        assertThat(waiting.get(5, TimeUnit.SECONDS).getReservedBytes()).isEqualTo(300);
+    }
+
+    @Test
+    void startupKeepsRootFilesByDefault() throws IOException {
+        Path unrelated = Files.writeString(dir.resolve("report.pdf"), "keep");
+        Path orphanJob = Files.writeString(Files.createDirectories(dir.resolve("jobs")).resolve("job_a.bin"), "x");
+
+        start(properties(1000, 300));
+
+        assertThat(unrelated).exists();
+        assertThat(orphanJob).doesNotExist();
+    }
+
+    @Test
+    void startupRemovesLegacyFilesWhenEnabled() throws IOException {
+        Path legacy = Files.writeString(dir.resolve("report.pdf"), "old");
+        SpoolProperties properties = properties(1000, 300);
+        properties.setCleanupLegacyFiles(true);
+
+        start(properties);
+
+        assertThat(legacy).doesNotExist();
+        assertThat(dir.resolve("jobs")).isDirectory();
+    }
+
+    private SpoolManager start(SpoolProperties properties) {
+        SpoolManager manager = new SpoolManager(properties, new SimpleMeterRegistry());
+        manager.init();
+        return manager;
+    }
+
+    private SpoolProperties properties(long maxBytes, long unknownSizeBytes) {
+        SpoolProperties properties = new SpoolProperties();
+        properties.setPath(dir.toString());
+        properties.setMaxBytes(maxBytes);
+        properties.setUnknownSizeBytes(unknownSizeBytes);
+        return properties;
+    }
+}
@@ -0,0 +1,209 @@
+package com.GASB.o365_func.service.util;
+
+import com.GASB.o365_func.service.api_call.GraphRateGovernor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RangeDownloaderTest {
+
+    private static final int SEGMENT = 1024;
+    private static final int SIZE = 4 * SEGMENT - 100;
+
+    @TempDir
+    Path dir;
+
+    private final byte[] content = new byte[SIZE];
+    // 요청받은 구간의 시작 위치
+    private final List<Long> requestedStarts = new CopyOnWriteArrayList<>();
+    // 이 위치에서 시작하는 구간 요청은 500 으로 실패
+    private final Set<Long> failingStarts = ConcurrentHashMap.newKeySet();
+
+    private HttpServer server;
+    private SimpleMeterRegistry registry;
+    private GraphRateGovernor governor;
+    private RangeDownloader downloader;
+    private Path partial;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new Random(11).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/file", this::serveRange);
+        server.createContext("/expired", exchange -> {
+            exchange.sendResponseHeaders(410, -1);
+            exchange.close();
+        });
+        server.createContext("/throttled", exchange -> {
+            exchange.getResponseHeaders().add("Retry-After", "0");
+            exchange.sendResponseHeaders(429, -1);
+            exchange.close();
+        });
+        server.start();
+
+        registry = new SimpleMeterRegistry();
+        governor = new GraphRateGovernor(registry);
+        ReflectionTestUtils.setField(governor, "requestsPerSecond", 1000.0);
+        ReflectionTestUtils.setField(governor, "burst", 1000.0);
+        ReflectionTestUtils.setField(governor, "initialLimit", 16.0);
+        ReflectionTestUtils.setField(governor, "minLimit", 1.0);
+        ReflectionTestUtils.setField(governor, "maxLimit", 64.0);
+        ReflectionTestUtils.setField(governor, "maxRetries", 0);
+        ReflectionTestUtils.setField(governor, "retryBackoffMs", 1L);
+        ReflectionTestUtils.setField(governor, "maxWaitMs", 5_000L);
+        governor.init();
+
+        // 구간을 순서대로 하나씩 받도록 호출 스레드에서 실행
+        downloader = new RangeDownloader(Runnable::run, governor);
+        ReflectionTestUtils.setField(downloader, "segmentSize", (long) SEGMENT);
+        ReflectionTestUtils.setField(downloader, "parallelism", 1);
+        ReflectionTestUtils.setField(downloader, "maxRetries", 0);
+        ReflectionTestUtils.setField(downloader, "retryBackoffMs", 1L);
+        partial = dir.resolve("file.part");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void downloadsAllSegmentsAndRemovesCheckpoint() throws IOException {
+        downloader.download(1, "id:hash", SIZE, url("/file"), () -> null, partial);
+
+        assertThat(Files.readAllBytes(partial)).isEqualTo(content);
+        assertThat(RangeDownloader.checkpointPath(partial)).doesNotExist();
+        assertThat(requestedStarts).containsExactly(0L, 1024L, 2048L, 3072L);
+    }
+
+    @Test
+    void resumesFromCheckpointFetchingOnlyMissingSegments() throws IOException {
+        failingStarts.add(2048L);
+        assertThatThrownBy(() -> downloader.download(1, "id:hash", SIZE, url("/file"), () -> null, partial))
+                .isInstanceOf(IOException.class);
+        assertThat(RangeDownloader.checkpointPath(partial)).exists();
+
+        failingStarts.clear();
+        requestedStarts.clear();
+        // 재시작한 것처럼 새 인스턴스로 이어 받는다
+        RangeDownloader restarted = new RangeDownloader(Runnable::run, governor);
+        ReflectionTestUtils.setField(restarted, "segmentSize", (long) SEGMENT);
+        ReflectionTestUtils.setField(restarted, "parallelism", 1);
+        restarted.download(1, "id:hash", SIZE, url("/file"), () -> null, partial);
+
+        assertThat(requestedStarts).containsExactly(2048L, 3072L);
+        assertThat(Files.readAllBytes(partial)).isEqualTo(content);
+        assertThat(RangeDownloader.checkpointPath(partial)).doesNotExist();
+    }
+
+    @Test
+    void staleCheckpointStartsOver() throws IOException {
+        failingStarts.add(2048L);
+        assertThatThrownBy(() -> downloader.download(1, "id:old-hash", SIZE, url("/file"), () -> null, partial))
+                .isInstanceOf(IOException.class);
+
+        failingStarts.clear();
+        requestedStarts.clear();
+        // 같은 경로라도 파일 내용(quickXorHash)이 바뀌었으면 처음부터 다시 받는다
+        downloader.download(1, "id:new-hash", SIZE, url("/file"), () -> null, partial);
+
+        assertThat(requestedStarts).containsExactly(0L, 1024L, 2048L, 3072L);
+        assertThat(Files.readAllBytes(partial)).isEqualTo(content);
+    }
+
+    @Test
+    void missingPartialFileStartsOver() throws IOException {
+        failingStarts.add(2048L);
+        assertThatThrownBy(() -> downloader.download(1, "id:hash", SIZE, url("/file"), () -> null, partial))
+                .isInstanceOf(IOException.class);
+        Files.delete(partial);
+
+        failingStarts.clear();
+        requestedStarts.clear();
+        downloader.download(1, "id:hash", SIZE, url("/file"), () -> null, partial);
+
+        assertThat(requestedStarts).containsExactly(0L, 1024L, 2048L, 3072L);
+        assertThat(Files.readAllBytes(partial)).isEqualTo(content);
+    }
+
+    @Test
+    void refreshesExpiredUrl() throws IOException {
+        downloader.download(1, "id:hash", SIZE, url("/expired"), () -> url("/file"), partial);
+
+        assertThat(Files.readAllBytes(partial)).isEqualTo(content);
+    }
+
+    @Test
+    void failsWhenUrlCannotBeRefreshed() {
+        assertThatThrownBy(() -> downloader.download(1, "id:hash", SIZE, url("/expired"), () -> null, partial))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Could not refresh");
+        assertThat(RangeDownloader.checkpointPath(partial)).exists();
+    }
+
+    @Test
+    void withoutIdentityStartsOverEvenWithCheckpoint() throws IOException {
+        failingStarts.add(2048L);
+        assertThatThrownBy(() -> downloader.download(1, null, SIZE, url("/file"), () -> null, partial))
+                .isInstanceOf(IOException.class);
+
+        failingStarts.clear();
+        requestedStarts.clear();
+        // 내용 버전을 모르면 남은 부분 파일이 같은 내용인지 알 수 없으므로 이어 받지 않는다
+        downloader.download(1, null, SIZE, url("/file"), () -> null, partial);
+
+        assertThat(requestedStarts).containsExactly(0L, 1024L, 2048L, 3072L);
+        assertThat(Files.readAllBytes(partial)).isEqualTo(content);
+    }
+
+    @Test
+    void throttledRangeLowersTenantLimit() {
+        assertThatThrownBy(() -> downloader.download(7, "id:hash", SIZE, url("/throttled"), () -> null, partial))
+                .isInstanceOf(IOException.class);
+
+        assertThat(registry.get("graph.governor.limit").tag("workspace", "7").gauge().value()).isEqualTo(8);
+        assertThat(registry.get("graph.governor.throttled").counter().count()).isEqualTo(1);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private void serveRange(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        long start = Long.parseLong(bounds[0]);
+        int end = Integer.parseInt(bounds[1]);
+        requestedStarts.add(start);
+        if (failingStarts.contains(start)) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+        int length = end - (int) start + 1;
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + SIZE);
+        exchange.sendResponseHeaders(206, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, (int) start, length);
+        }
+    }
+}
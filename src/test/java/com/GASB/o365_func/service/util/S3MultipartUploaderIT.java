@@ -0,0 +1,226 @@
+package com.GASB.o365_func.service.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * MinIO / LocalStack 에 실제로 멀티파트 업로드를 해 보는 통합 테스트.
+ * S3_TEST_ENDPOINT 가 있을 때만 실행된다. 예:
+ * <pre>
+ * docker run -d -p 9000:9000 minio/minio server /data
+ * S3_TEST_ENDPOINT=http://localhost:9000 S3_TEST_ACCESS_KEY=minioadmin S3_TEST_SECRET_KEY=minioadmin ./gradlew test --tests '*S3MultipartUploaderIT'
+ * </pre>
+ * 파트 업로드 실패와 동시 실행 수는 실제 클라이언트를 감싼 FaultInjectingS3Client 로 주입/측정한다.
+ */
+@EnabledIfEnvironmentVariable(named = "S3_TEST_ENDPOINT", matches = ".+")
+class S3MultipartUploaderIT {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private S3Client s3Client;
+    private FaultInjectingS3Client faultyClient;
+    private ExecutorService executor;
+    private String bucket;
+
+    @BeforeEach
+    void setUp() {
+        s3Client = S3Client.builder()
+                .endpointOverride(URI.create(System.getenv("S3_TEST_ENDPOINT")))
+                .forcePathStyle(true)
+                .region(Region.of(env("S3_TEST_REGION", "us-east-1")))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(
+                        env("S3_TEST_ACCESS_KEY", "minioadmin"), env("S3_TEST_SECRET_KEY", "minioadmin"))))
+                .build();
+        bucket = "o365-func-it-" + UUID.randomUUID().toString().substring(0, 8);
+        s3Client.createBucket(CreateBucketRequest.builder().bucket(bucket).build());
+        faultyClient = new FaultInjectingS3Client(s3Client);
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        s3Client.listObjectsV2(ListObjectsV2Request.builder().bucket(bucket).build()).contents()
+                .forEach(object -> s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(object.key()).build()));
+        s3Client.deleteBucket(DeleteBucketRequest.builder().bucket(bucket).build());
+        s3Client.close();
+    }
+
+    @Test
+    void upload_retriesFailedPartAndCompletes() throws IOException {
+        S3MultipartUploader uploader = uploader(8, 3);
+        byte[] content = randomBytes(PART_SIZE * 2 + 1234);
+        faultyClient.failPart(2, 2);
+
+        uploader.upload(bucket, "retry.bin", new ByteArrayInputStream(content), content.length);
+
+        assertThat(faultyClient.attempts(2)).isEqualTo(3);
+        byte[] stored = s3Client.getObjectAsBytes(GetObjectRequest.builder().bucket(bucket).key("retry.bin").build()).asByteArray();
+        assertThat(stored).isEqualTo(content);
+        assertThat(pendingUploads("retry.bin")).isZero();
+    }
+
+    @Test
+    void upload_abortsWhenPartKeepsFailing() {
+        S3MultipartUploader uploader = uploader(8, 2);
+        byte[] content = randomBytes(PART_SIZE * 3);
+        faultyClient.failPart(2, Integer.MAX_VALUE);
+
+        assertThatThrownBy(() -> uploader.upload(bucket, "abort.bin", new ByteArrayInputStream(content), content.length))
+                .isInstanceOf(IOException.class);
+
+        assertThat(faultyClient.attempts(2)).isEqualTo(3);
+        assertThat(faultyClient.aborts.get()).isEqualTo(1);
+        assertThat(pendingUploads("abort.bin")).isZero();
+        assertThatThrownBy(() -> s3Client.headObject(HeadObjectRequest.builder().bucket(bucket).key("abort.bin").build()))
+                .isInstanceOf(NoSuchKeyException.class);
+    }
+
+    @Test
+    void upload_keepsPartsInFlightWithinCap() throws IOException {
+        S3MultipartUploader uploader = uploader(2, 0);
+        byte[] content = randomBytes(PART_SIZE * 6);
+        faultyClient.partDelayMs = 300;
+
+        uploader.upload(bucket, "cap.bin", new ByteArrayInputStream(content), content.length);
+
+        // 풀에는 스레드가 8 개 있어도 메모리에 올라가는 파트는 max-in-flight-parts 개까지
+        assertThat(faultyClient.maxConcurrentParts.get()).isEqualTo(2);
+        assertThat(s3Client.headObject(HeadObjectRequest.builder().bucket(bucket).key("cap.bin").build()).contentLength())
+                .isEqualTo(content.length);
+    }
+
+    private S3MultipartUploader uploader(int maxInFlightParts, int maxRetries) {
+        S3MultipartUploader uploader = new S3MultipartUploader(faultyClient, executor);
+        ReflectionTestUtils.setField(uploader, "partSize", PART_SIZE);
+        ReflectionTestUtils.setField(uploader, "maxInFlightParts", maxInFlightParts);
+        ReflectionTestUtils.setField(uploader, "maxRetries", maxRetries);
+        ReflectionTestUtils.setField(uploader, "retryBackoffMs", 10L);
+        uploader.init();
+        return uploader;
+    }
+
+    // MinIO 는 prefix 가 객체 키와 같을 때만 진행 중인 업로드를 돌려준다
+    private int pendingUploads(String key) {
+        return s3Client.listMultipartUploads(ListMultipartUploadsRequest.builder().bucket(bucket).prefix(key).build()).uploads().size();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+
+    // 업로더가 쓰는 호출만 실제 클라이언트로 넘기면서, 파트 실패를 주입하고 동시 실행 수를 잰다
+    private static final class FaultInjectingS3Client implements S3Client {
+
+        private final S3Client delegate;
+        private final Map<Integer, AtomicInteger> remainingFailures = new ConcurrentHashMap<>();
+        private final Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        private final AtomicInteger concurrentParts = new AtomicInteger();
+        final AtomicInteger maxConcurrentParts = new AtomicInteger();
+        final AtomicInteger aborts = new AtomicInteger();
+        volatile long partDelayMs;
+
+        FaultInjectingS3Client(S3Client delegate) {
+            this.delegate = delegate;
+        }
+
+        void failPart(int partNumber, int times) {
+            remainingFailures.put(partNumber, new AtomicInteger(times));
+        }
+
+        int attempts(int partNumber) {
+            AtomicInteger count = attempts.get(partNumber);
+            return count == null ? 0 : count.get();
+        }
+
+        @Override
+        public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody requestBody) {
+            int partNumber = request.partNumber();
+            attempts.computeIfAbsent(partNumber, key -> new AtomicInteger()).incrementAndGet();
+            int concurrent = concurrentParts.incrementAndGet();
+            maxConcurrentParts.accumulateAndGet(concurrent, Math::max);
+            try {
+                if (partDelayMs > 0) {
+                    Thread.sleep(partDelayMs);
+                }
+                AtomicInteger failures = remainingFailures.get(partNumber);
+                if (failures != null && failures.getAndDecrement() > 0) {
+                    // 재시도 대상인 503 SlowDown 을 흉내 낸다
+                    throw S3Exception.builder()
+                            .statusCode(503)
+                            .awsErrorDetails(AwsErrorDetails.builder().errorCode("SlowDown").build())
+                            .message("Injected failure for part " + partNumber)
+                            .build();
+                }
+                return delegate.uploadPart(request, requestBody);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw SdkClientException.create("Interrupted", e);
+            } finally {
+                concurrentParts.decrementAndGet();
+            }
+        }
+
+        @Override
+        public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+            return delegate.putObject(request, requestBody);
+        }
+
+        @Override
+        public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+            return delegate.createMultipartUpload(request);
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            return delegate.completeMultipartUpload(request);
+        }
+
+        @Override
+        public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborts.incrementAndGet();
+            return delegate.abortMultipartUpload(request);
+        }
+
+        @Override
+        public String serviceName() {
+            return delegate.serviceName();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.GASB.o365_func.service.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class S3MultipartUploaderTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3Client = mock(S3Client.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    // 파트 번호별로 받은 내용과 남은 실패 횟수
+    private final Map<Integer, byte[]> receivedParts = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    private final Map<Integer, RuntimeException> failures = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> remainingFailures = new ConcurrentHashMap<>();
+
+    private S3MultipartUploader uploader;
+
+    @BeforeEach
+    void setUp() {
+        uploader = new S3MultipartUploader(s3Client, executor);
+        ReflectionTestUtils.setField(uploader, "partSize", PART_SIZE);
+        ReflectionTestUtils.setField(uploader, "maxInFlightParts", 3);
+        ReflectionTestUtils.setField(uploader, "maxRetries", 3);
+        ReflectionTestUtils.setField(uploader, "retryBackoffMs", 1L);
+        uploader.init();
+
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            int partNumber = request.partNumber();
+            attempts.computeIfAbsent(partNumber, key -> new AtomicInteger()).incrementAndGet();
+            AtomicInteger remaining = remainingFailures.get(partNumber);
+            if (remaining != null && remaining.getAndDecrement() > 0) {
+                throw failures.get(partNumber);
+            }
+            receivedParts.put(partNumber, read(invocation.getArgument(1)));
+            return UploadPartResponse.builder().eTag("etag-" + partNumber).build();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void smallObjectUsesSinglePut() throws IOException {
+        byte[] content = randomBytes(1024);
+
+        uploader.upload("bucket", "small.bin", new ByteArrayInputStream(content), content.length);
+
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void largeObjectIsSplitIntoOrderedParts() throws IOException {
+        byte[] content = randomBytes(2 * PART_SIZE + 1000);
+
+        uploader.upload("bucket", "large.bin", new ByteArrayInputStream(content), content.length);
+
+        assertThat(receivedParts).containsOnlyKeys(1, 2, 3);
+        assertThat(receivedParts.get(1)).hasSize(PART_SIZE);
+        assertThat(receivedParts.get(3)).hasSize(1000);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int part = 1; part <= 3; part++) {
+            joined.writeBytes(receivedParts.get(part));
+        }
+        assertThat(joined.toByteArray()).isEqualTo(content);
+
+        verify(s3Client).completeMultipartUpload(argThat((CompleteMultipartUploadRequest request) ->
+                request.multipartUpload().parts().stream().map(CompletedPart::partNumber).toList().equals(List.of(1, 2, 3))
+                        && request.multipartUpload().parts().get(1).eTag().equals("etag-2")));
+        verify(s3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    void retryableFailureIsRetried() throws IOException {
+        failPart(2, 2, serviceException(503, "SlowDown"));
+        byte[] content = randomBytes(2 * PART_SIZE);
+
+        uploader.upload("bucket", "retry.bin", new ByteArrayInputStream(content), content.length);
+
+        assertThat(attempts.get(2)).hasValue(3);
+        verify(s3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void nonRetryableFailureAbortsWithoutRetrying() {
+        failPart(1, 10, serviceException(403, "AccessDenied"));
+        byte[] content = randomBytes(2 * PART_SIZE);
+
+        assertThatThrownBy(() -> uploader.upload("bucket", "denied.bin", new ByteArrayInputStream(content), content.length))
+                .isInstanceOf(IOException.class)
+                .hasCauseInstanceOf(S3Exception.class);
+
+        assertThat(attempts.get(1)).hasValue(1);
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void exhaustedRetriesAbortUpload() {
+        failPart(2, 10, serviceException(500, "InternalError"));
+        byte[] content = randomBytes(2 * PART_SIZE);
+
+        assertThatThrownBy(() -> uploader.upload("bucket", "broken.bin", new ByteArrayInputStream(content), content.length))
+                .isInstanceOf(IOException.class);
+
+        // 처음 시도 + max-retries 번
+        assertThat(attempts.get(2)).hasValue(4);
+        verify(s3Client, times(1)).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    void classifiesRetryableErrors() {
+        assertThat(S3MultipartUploader.isRetryable(serviceException(503, "SlowDown"))).isTrue();
+        assertThat(S3MultipartUploader.isRetryable(serviceException(500, "InternalError"))).isTrue();
+        assertThat(S3MultipartUploader.isRetryable(serviceException(429, "TooManyRequests"))).isTrue();
+        assertThat(S3MultipartUploader.isRetryable(serviceException(403, "AccessDenied"))).isFalse();
+        assertThat(S3MultipartUploader.isRetryable(serviceException(404, "NoSuchUpload"))).isFalse();
+        assertThat(S3MultipartUploader.isRetryable(serviceException(404, "NoSuchBucket"))).isFalse();
+        assertThat(S3MultipartUploader.isRetryable(SdkClientException.create("bad request"))).isFalse();
+    }
+
+    private void failPart(int partNumber, int times, RuntimeException failure) {
+        failures.put(partNumber, failure);
+        remainingFailures.put(partNumber, new AtomicInteger(times));
+    }
+
+    private static S3Exception serviceException(int status, String errorCode) {
+        return (S3Exception) S3Exception.builder()
+                .statusCode(status)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode(errorCode).errorMessage(errorCode).build())
+                .message(errorCode)
+                .build();
+    }
+
+    private static byte[] read(RequestBody body) {
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(5).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,47 @@
+package com.GASB.o365_func.service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedLocksTest {
+
+    @Test
+    void sameKeyAlwaysGetsSameLock() {
+        StripedLocks locks = new StripedLocks(64);
+
+        assertThat(locks.get("file-1")).isSameAs(locks.get(new String("file-1")));
+    }
+
+    @Test
+    void stripeCountIsRoundedUpToPowerOfTwo() {
+        assertThat(distinctLocks(new StripedLocks(64))).isEqualTo(64);
+        assertThat(distinctLocks(new StripedLocks(100))).isEqualTo(128);
+        assertThat(distinctLocks(new StripedLocks(1))).isEqualTo(1);
+        assertThat(distinctLocks(new StripedLocks(0))).isEqualTo(1);
+    }
+
+    @Test
+    void keysDifferingOnlyInHighBitsSpreadAcrossStripes() {
+        StripedLocks locks = new StripedLocks(16);
+        Set<ReentrantLock> used = new HashSet<>();
+        // 하위 16 비트가 같은 해시들 (상위 비트를 섞지 않으면 모두 같은 칸에 걸림)
+        for (int i = 0; i < 16; i++) {
+            used.add(locks.get(i << 16));
+        }
+
+        assertThat(used).hasSize(16);
+    }
+
+    private static int distinctLocks(StripedLocks locks) {
+        Set<ReentrantLock> distinct = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            distinct.add(locks.get("key-" + i));
+        }
+        return distinct.size();
+    }
+}